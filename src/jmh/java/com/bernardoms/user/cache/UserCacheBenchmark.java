@@ -0,0 +1,88 @@
+package com.bernardoms.user.cache;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.service.BoundedExecutor;
+import com.bernardoms.user.service.MongoUserLoader;
+import com.bernardoms.user.service.UserQueryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Read cost of {@link UserCache} for a cached user, for a nickname already known not to exist, and for resolving all
+ * {@code SIZE} cached users with one multi-get against a loop of single gets.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserCacheBenchmark {
+    private static final int SIZE = 512;
+
+    private final String[] cachedKeys = new String[SIZE];
+    private final String[] missingKeys = new String[SIZE];
+
+    private List<String> cachedKeyList;
+    private BoundedExecutor mongoExecutor;
+    private UserCache userCache;
+    private int index;
+
+    @Setup
+    public void setUp() {
+        var userDTO = new UserDTO("test_nick", "test", "testing", "test@test.com", "UK");
+        var userQueryService = new UserQueryService(null, null) {
+            @Override
+            public Optional<UserDTO> findPublicUserByNickname(String nickname) {
+                return nickname.startsWith("test_nick") ? Optional.of(userDTO) : Optional.empty();
+            }
+        };
+        var userNotFoundCache = new UserNotFoundCache(30, 10_000, new SimpleMeterRegistry());
+        mongoExecutor = new BoundedExecutor("mongo", 1, 10_000, 5_000, 1, new SimpleMeterRegistry());
+        userCache = new UserCache(new MongoUserLoader(userQueryService, mongoExecutor), userNotFoundCache, 10_000, 60, 600,
+                new SimpleMeterRegistry());
+
+        for (int i = 0; i < SIZE; i++) {
+            cachedKeys[i] = "test_nick" + i;
+            missingKeys[i] = "missing_nick" + i;
+            userCache.get(cachedKeys[i]);
+            userCache.get(missingKeys[i]);
+        }
+        cachedKeyList = Arrays.asList(cachedKeys);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoExecutor.shutdown();
+    }
+
+    @Benchmark
+    public Optional<UserDTO> hit() {
+        return userCache.get(cachedKeys[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public Optional<UserDTO> knownMissing() {
+        return userCache.get(missingKeys[index++ & (SIZE - 1)]);
+    }
+
+    @Benchmark
+    public Map<String, UserDTO> getAllHits() {
+        return userCache.getAll(cachedKeyList);
+    }
+
+    @Benchmark
+    public int getEachHit() {
+        var found = 0;
+        for (var key : cachedKeys) {
+            found += userCache.get(key).isPresent() ? 1 : 0;
+        }
+        return found;
+    }
+}
@@ -0,0 +1,49 @@
+package com.bernardoms.user.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Sort;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserSerializationBenchmark {
+    @Param({"10", "100"})
+    public int pageSize;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private UserDTO userDTO;
+    private Page<UserDTO> page;
+
+    @Setup
+    public void setUp() {
+        userDTO = new UserDTO("test_nick", "test", "testing", "test@test.com", "UK");
+
+        var users = new ArrayList<UserDTO>(pageSize);
+        for (int i = 0; i < pageSize; i++) {
+            users.add(new UserDTO("test_nick" + i, "test" + i, "testing" + i, "test" + i + "@test.com", i % 2 == 0 ? "UK" : "BR"));
+        }
+        page = new PageImpl<>(users, PageRequest.of(0, pageSize, Sort.unsorted()), 1_000_000);
+    }
+
+    @Benchmark
+    public byte[] userDTO() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(userDTO);
+    }
+
+    @Benchmark
+    public byte[] pageOfUserDTO() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(page);
+    }
+}
@@ -0,0 +1,59 @@
+package com.bernardoms.user.filter;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MDCFilterBenchmark {
+    private static final String[][] COMMON_HEADERS = {
+            {"host", "user-api:8080"},
+            {"user-agent", "okhttp/4.7.2"},
+            {"accept", "application/json"},
+            {"accept-encoding", "gzip"},
+            {"connection", "keep-alive"},
+            {"x-request-id", "6f1c1a5e-2b4d-4d6e-9a51-0c3b7f0e2d11"},
+            {"x-forwarded-for", "10.0.12.34"},
+            {"x-forwarded-proto", "https"}
+    };
+
+    @Param({"8", "16", "32"})
+    public int headerCount;
+
+    private final MDCFilter mdcFilter = new MDCFilter();
+
+    private final FilterChain filterChain = (request, response) -> { };
+
+    private MockHttpServletRequest request;
+    private MockHttpServletResponse response;
+
+    @Setup
+    public void setUp() {
+        request = new MockHttpServletRequest("GET", "/v1/users");
+        for (int i = 0; i < headerCount; i++) {
+            if (i < COMMON_HEADERS.length) {
+                request.addHeader(COMMON_HEADERS[i][0], COMMON_HEADERS[i][1]);
+            } else {
+                request.addHeader("x-custom-header-" + i, "value-" + i);
+            }
+        }
+        request.addParameter("country", "BR");
+        request.addParameter("limit", "100");
+        response = new MockHttpServletResponse();
+    }
+
+    @Benchmark
+    public void doFilterInternal() throws ServletException, IOException {
+        mdcFilter.doFilterInternal(request, response, filterChain);
+    }
+}
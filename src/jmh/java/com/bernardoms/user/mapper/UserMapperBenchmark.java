@@ -0,0 +1,59 @@
+package com.bernardoms.user.mapper;
+
+import com.bernardoms.user.converter.UserDTOReadConverter;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.User;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserMapperBenchmark {
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+
+    private UserDTO userDTO;
+    private User user;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        userDTO = UserDTO.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("testing")
+                .nickname("test_nick")
+                .password("$2a$10$N9qo8uLOickgx2ZMRZoMyeIjZAgcfl7p92ldGxad68LJZdL17lhWy")
+                .build();
+        user = userMapper.toUser(userDTO);
+        user.setId(new ObjectId("507f191e810c19729de860ea"));
+        document = new Document("_id", user.getId())
+                .append("nickname", user.getNickname())
+                .append("firstName", user.getFirstName())
+                .append("lastName", user.getLastName())
+                .append("email", user.getEmail())
+                .append("country", user.getCountry());
+    }
+
+    @Benchmark
+    public User userDTOToUser() {
+        return userMapper.toUser(userDTO);
+    }
+
+    @Benchmark
+    public UserDTO userToUserDTO() {
+        return userMapper.toUserDTO(user);
+    }
+
+    @Benchmark
+    public UserDTO documentToUserDTO() {
+        return UserDTOReadConverter.INSTANCE.convert(document);
+    }
+}
@@ -0,0 +1,86 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.bernardoms.user.dto.UserDTO;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the change event envelope with the whole {@link UserDTO} JSON notifications used to carry. Message sizes
+ * are printed once per fork; {@code legacy*} benchmarks are the old encoding and the old field merge by re-parsing
+ * both messages.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserChangeEventBenchmark {
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final UserChangeEventEncoder jsonEncoder = new UserChangeEventEncoder("json");
+    private final UserChangeEventEncoder cborEncoder = new UserChangeEventEncoder("cbor");
+
+    private UserDTO userDTO;
+    private UserChangeEvent event;
+    private UserChangeEvent laterEvent;
+    private String legacyMessage;
+    private String laterLegacyMessage;
+
+    @Setup
+    public void setUp() throws JsonProcessingException {
+        userDTO = UserDTO.builder()
+                .nickname("test_nick")
+                .firstName("test")
+                .lastName("testing")
+                .password("$2a$10$WzEo0d0QfQ8lC4r8qG2tEeS0yT0m8q3cW8Yk2rR1m6f6p7sD0sXbK")
+                .email("test@test.com")
+                .country("UK")
+                .build();
+        event = new UserChangeEvent(UserChangeEvent.SCHEMA_VERSION, UUID.randomUUID().toString(), "test_nick",
+                Map.of("firstName", "test", "lastName", "testing", "email", "test@test.com", "country", "UK"), System.currentTimeMillis());
+        laterEvent = new UserChangeEvent(UserChangeEvent.SCHEMA_VERSION, UUID.randomUUID().toString(), "test_nick",
+                Map.of("country", "BR"), System.currentTimeMillis());
+        legacyMessage = objectMapper.writeValueAsString(userDTO);
+        laterLegacyMessage = objectMapper.writeValueAsString(UserDTO.builder().nickname("test_nick").country("BR").build());
+
+        System.out.println("message bytes: legacy json " + legacyMessage.getBytes(StandardCharsets.UTF_8).length
+                + ", event json " + jsonEncoder.encodeToMessage(event).length()
+                + ", event cbor " + cborEncoder.encode(event).length
+                + ", event cbor as base64 " + cborEncoder.encodeToMessage(event).length());
+    }
+
+    @Benchmark
+    public String legacyJson() throws JsonProcessingException {
+        return objectMapper.writeValueAsString(userDTO);
+    }
+
+    @Benchmark
+    public String eventJson() throws JsonProcessingException {
+        return jsonEncoder.encodeToMessage(event);
+    }
+
+    @Benchmark
+    public String eventCbor() throws JsonProcessingException {
+        return cborEncoder.encodeToMessage(event);
+    }
+
+    @Benchmark
+    public String legacyMerge() throws JsonProcessingException {
+        var merged = (ObjectNode) objectMapper.readTree(legacyMessage);
+        merged.setAll((ObjectNode) objectMapper.readTree(laterLegacyMessage));
+        return objectMapper.writeValueAsString(merged);
+    }
+
+    @Benchmark
+    public UserChangeEvent eventMerge() {
+        return event.mergedWith(laterEvent);
+    }
+}
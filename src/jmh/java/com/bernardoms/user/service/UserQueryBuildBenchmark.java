@@ -0,0 +1,43 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.model.UserFilter;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Builds the listing query for every combination of the five filter fields. Bits of {@code filterMask} select,
+ * from the lowest, firstName, lastName, country, nickname and email.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserQueryBuildBenchmark {
+    @Param({"0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15",
+            "16", "17", "18", "19", "20", "21", "22", "23", "24", "25", "26", "27", "28", "29", "30", "31"})
+    public int filterMask;
+
+    private UserFilter userFilter;
+
+    @Setup
+    public void setUp() {
+        userFilter = UserFilter.builder()
+                .firstName((filterMask & 1) != 0 ? "test" : null)
+                .lastName((filterMask & 2) != 0 ? "testing" : null)
+                .country((filterMask & 4) != 0 ? "BR" : null)
+                .nickname((filterMask & 8) != 0 ? "test_nick" : null)
+                .email((filterMask & 16) != 0 ? "test@test.com" : null)
+                .offset(0)
+                .limit(100)
+                .build();
+    }
+
+    @Benchmark
+    public Document buildQuery() {
+        return UserQueryService.buildQuery(userFilter).getQueryObject();
+    }
+}
@@ -0,0 +1,149 @@
+package com.bernardoms.user.service;
+
+import com.amazonaws.services.sns.model.PublishResult;
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.types.ObjectId;
+import org.mapstruct.factory.Mappers;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.security.crypto.password.NoOpPasswordEncoder;
+
+import java.lang.reflect.Proxy;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What the save, update and delete paths cost in this service, next to the read-then-write sequence they replaced,
+ * replayed by the {@code findThen*} methods. Every stub answers at once, so the scores leave out Mongo entirely: how
+ * many round trips each path makes is checked by {@code UserServiceUnitTest}, and their latency against a real Mongo
+ * under load is measured with {@code UserLoadHarness}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class UserWriteBenchmark {
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+
+    private UserRepository userRepository;
+    private MongoOperations mongoOperations;
+    private BoundedExecutor mongoExecutor;
+    private UserCache userCache;
+    private PasswordHashingService passwordHashingService;
+    private UserService userService;
+    private User storedUser;
+    private UserDTO userDTO;
+
+    @Setup
+    public void setUp() {
+        storedUser = User.builder().id(new ObjectId("507f191e810c19729de860ea"))
+                .nickname("test_nick")
+                .firstName("test")
+                .lastName("testing")
+                .email("test@test.com")
+                .country("UK")
+                .version(1L)
+                .build();
+        userDTO = UserDTO.builder().nickname("test_nick")
+                .firstName("test")
+                .lastName("testing")
+                .email("test@test.com")
+                .country("UK")
+                .build();
+        userRepository = stub(UserRepository.class);
+        mongoOperations = stub(MongoOperations.class);
+        var userQueryService = new UserQueryService(null, null) {
+            @Override
+            public Optional<UserDTO> findPublicUserByNickname(String nickname) {
+                return Optional.of(userDTO);
+            }
+        };
+        var userNotFoundCache = new UserNotFoundCache(30, 10_000, new SimpleMeterRegistry());
+        mongoExecutor = new BoundedExecutor("mongo", 1, 10_000, 5_000, 1, new SimpleMeterRegistry());
+        userCache = new UserCache(new MongoUserLoader(userQueryService, mongoExecutor), userNotFoundCache, 10_000, 60, 600,
+                new SimpleMeterRegistry());
+        UserNotifyService userNotifyService = (key, message) -> CompletableFuture.completedFuture(new PublishResult());
+        var userOutboxService = new UserOutboxService(new MongoUserStore(mongoOperations), userNotifyService, 100, 1000, 30000, 100);
+        passwordHashingService = new PasswordHashingService(NoOpPasswordEncoder.getInstance(), new SimpleMeterRegistry(), 1, 64, 1);
+        userService = new UserService(userRepository, userQueryService, userMapper, passwordHashingService,
+                userOutboxService, userNotFoundCache, userCache, mongoOperations);
+    }
+
+    @TearDown
+    public void tearDown() {
+        mongoExecutor.shutdown();
+        passwordHashingService.shutdown();
+    }
+
+    @Benchmark
+    public String saveUser() throws NicknameAlreadyExistException, PasswordHashingRejectedException {
+        userDTO.setPassword("password");
+        return userService.saveUser(userDTO);
+    }
+
+    @Benchmark
+    public User findThenSave(Blackhole blackhole) {
+        blackhole.consume(userRepository.findByNickname(userDTO.getNickname()));
+        return userRepository.save(userMapper.toUser(userDTO));
+    }
+
+    @Benchmark
+    public void updateUser() throws PasswordHashingRejectedException {
+        userDTO.setPassword("password");
+        userService.updateUser("test_nick", userDTO);
+    }
+
+    @Benchmark
+    public User findThenUpdate() {
+        var existingUser = userRepository.findByNickname("test_nick").orElseThrow();
+        var updatedUser = userMapper.toUser(userDTO);
+        updatedUser.setId(existingUser.getId());
+        updatedUser.setVersion(existingUser.getVersion());
+        return userRepository.save(updatedUser);
+    }
+
+    @Benchmark
+    public void deleteUser() {
+        userService.deleteUser("test_nick");
+    }
+
+    @Benchmark
+    public void findThenDelete() {
+        userRepository.findByNickname("test_nick").ifPresent(user -> userRepository.deleteById(user.getId()));
+    }
+
+    /**
+     * Stands in for a repository or template, answering every call at once with the stored user.
+     */
+    private <T> T stub(Class<T> type) {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+            if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(this, args);
+            }
+            switch (method.getName()) {
+                case "save":
+                    return args[0];
+                case "findByNickname":
+                    return Optional.of(storedUser);
+                case "findAndModify":
+                    return storedUser;
+                case "deleteByNickname":
+                    return 1L;
+                default:
+                    return null;
+            }
+        }));
+    }
+}
@@ -0,0 +1,63 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.config.VirtualThreads;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time for {@code concurrency} requests that each wait {@code mongoMillis} on mongo to all complete, on a pool of 200
+ * platform threads (Tomcat's default maximum) against a virtual thread each. The {@code virtual} runs fail in setup on
+ * a JDK without virtual threads; run them on 21+.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final int PLATFORM_THREADS = 200;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200", "2000", "10000"})
+    public int concurrency;
+
+    @Param({"10"})
+    public long mongoMillis;
+
+    private BoundedExecutor executor;
+
+    @Setup
+    public void setUp() {
+        if ("virtual".equals(threads)) {
+            if (!VirtualThreads.isSupported()) {
+                throw new IllegalStateException("virtual threads need JDK 21+, running on " + Runtime.version());
+            }
+            executor = BoundedExecutor.virtual("mongo", concurrency, 60_000, 1, new SimpleMeterRegistry());
+        } else {
+            executor = new BoundedExecutor("mongo", PLATFORM_THREADS, concurrency, 60_000, 1, new SimpleMeterRegistry());
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public void slowMongoRequests() {
+        var requests = new CompletableFuture<?>[concurrency];
+        for (int i = 0; i < concurrency; i++) {
+            requests[i] = executor.submit(() -> {
+                Thread.sleep(mongoMillis);
+                return null;
+            });
+        }
+        CompletableFuture.allOf(requests).join();
+    }
+}
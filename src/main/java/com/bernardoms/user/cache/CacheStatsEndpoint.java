@@ -0,0 +1,128 @@
+package com.bernardoms.user.cache;
+
+import com.github.benmanes.caffeine.cache.Policy;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.Builder;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /actuator/usercaches}: lifetime and sliding window statistics for every {@link MonitoredCache}. The window hit
+ * ratio and the maximum size are also published as {@code cache.window.hit.ratio} and {@code cache.maximum.size}
+ * gauges. Resizing a cache at runtime is only exposed over JMX, by {@link CacheStatsJmxEndpointExtension}.
+ */
+@Component
+@Endpoint(id = "usercaches")
+public class CacheStatsEndpoint {
+    private final Map<String, MonitoredCache> caches = new TreeMap<>();
+    private final Map<String, CacheStatsWindow> windows = new LinkedHashMap<>();
+
+    public CacheStatsEndpoint(List<MonitoredCache> monitoredCaches,
+                              @Value("${user.cache.stats.window-seconds:60}") long windowSeconds,
+                              @Value("${user.cache.stats.sample-millis:10000}") long sampleMillis,
+                              MeterRegistry meterRegistry) {
+        int samples = (int) Math.max(1, TimeUnit.SECONDS.toMillis(windowSeconds) / sampleMillis);
+        for (MonitoredCache monitoredCache : monitoredCaches) {
+            var name = monitoredCache.getName();
+            caches.put(name, monitoredCache);
+            windows.put(name, new CacheStatsWindow(samples));
+
+            Gauge.builder("cache.window.hit.ratio", this, endpoint -> endpoint.windowHitRate(name))
+                    .tag("cache", name)
+                    .register(meterRegistry);
+            Gauge.builder("cache.maximum.size", monitoredCache, cache -> Objects.requireNonNullElse(maximumSize(cache), -1L))
+                    .tag("cache", name)
+                    .register(meterRegistry);
+        }
+    }
+
+    @Scheduled(fixedRateString = "${user.cache.stats.sample-millis:10000}")
+    public void sample() {
+        caches.forEach((name, cache) -> windows.get(name).record(cache.getCache().stats()));
+    }
+
+    @ReadOperation
+    public Map<String, CacheDescriptor> caches() {
+        var descriptors = new LinkedHashMap<String, CacheDescriptor>();
+        caches.keySet().forEach(name -> descriptors.put(name, cache(name)));
+        return descriptors;
+    }
+
+    @ReadOperation
+    public CacheDescriptor cache(@Selector String name) {
+        var monitoredCache = caches.get(name);
+        if (monitoredCache == null) {
+            return null;
+        }
+        var cache = monitoredCache.getCache();
+        var stats = cache.stats();
+        var windowStats = windows.get(name).windowStats(stats);
+
+        return CacheDescriptor.builder()
+                .size(cache.estimatedSize())
+                .maximumSize(maximumSize(monitoredCache))
+                .hitCount(stats.hitCount())
+                .missCount(stats.missCount())
+                .hitRate(stats.hitRate())
+                .windowRequestCount(windowStats.requestCount())
+                .windowHitRate(windowStats.hitRate())
+                .loadSuccessCount(stats.loadSuccessCount())
+                .loadFailureCount(stats.loadFailureCount())
+                .averageLoadPenaltyMillis(stats.averageLoadPenalty() / TimeUnit.MILLISECONDS.toNanos(1))
+                .evictionCount(stats.evictionCount())
+                .build();
+    }
+
+    public CacheDescriptor resize(@Selector String name, long maximumSize) {
+        var monitoredCache = caches.get(name);
+        if (monitoredCache == null) {
+            return null;
+        }
+        if (maximumSize <= 0) {
+            throw new InvalidEndpointRequestException("maximumSize must be positive", "maximumSize must be positive");
+        }
+        var eviction = monitoredCache.getCache().policy().eviction()
+                .orElseThrow(() -> new InvalidEndpointRequestException("cache " + name + " is unbounded", "cache is unbounded"));
+        eviction.setMaximum(maximumSize);
+        return cache(name);
+    }
+
+    private double windowHitRate(String name) {
+        var stats = caches.get(name).getCache().stats();
+        return windows.get(name).windowStats(stats).hitRate();
+    }
+
+    private static Long maximumSize(MonitoredCache monitoredCache) {
+        return monitoredCache.getCache().policy().eviction().map(Policy.Eviction::getMaximum).orElse(null);
+    }
+
+    @Getter
+    @Builder
+    public static class CacheDescriptor {
+        private final long size;
+        private final Long maximumSize;
+        private final long hitCount;
+        private final long missCount;
+        private final double hitRate;
+        private final long windowRequestCount;
+        private final double windowHitRate;
+        private final long loadSuccessCount;
+        private final long loadFailureCount;
+        private final double averageLoadPenaltyMillis;
+        private final long evictionCount;
+    }
+}
@@ -0,0 +1,26 @@
+package com.bernardoms.user.cache;
+
+import com.bernardoms.user.cache.CacheStatsEndpoint.CacheDescriptor;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.EndpointJmxExtension;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the {@code resize} operation to the {@code usercaches} endpoint over JMX only, so a cache's maximum size can't be
+ * changed through the unauthenticated web actuator. Needs {@code spring.jmx.enabled=true}.
+ */
+@Component
+@EndpointJmxExtension(endpoint = CacheStatsEndpoint.class)
+public class CacheStatsJmxEndpointExtension {
+    private final CacheStatsEndpoint cacheStatsEndpoint;
+
+    public CacheStatsJmxEndpointExtension(CacheStatsEndpoint cacheStatsEndpoint) {
+        this.cacheStatsEndpoint = cacheStatsEndpoint;
+    }
+
+    @WriteOperation
+    public CacheDescriptor resize(@Selector String name, long maximumSize) {
+        return cacheStatsEndpoint.resize(name, maximumSize);
+    }
+}
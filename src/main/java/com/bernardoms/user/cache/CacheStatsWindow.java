@@ -0,0 +1,31 @@
+package com.bernardoms.user.cache;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+/**
+ * Ring of periodic {@link CacheStats} snapshots; the difference between the newest and the oldest gives the stats of
+ * the last window only, so a cache that went cold shows it instead of being averaged over its whole lifetime.
+ */
+public class CacheStatsWindow {
+    private final CacheStats[] snapshots;
+    private int next;
+    private int size;
+
+    public CacheStatsWindow(int samples) {
+        this.snapshots = new CacheStats[samples + 1];
+    }
+
+    public synchronized void record(CacheStats stats) {
+        snapshots[next] = stats;
+        next = (next + 1) % snapshots.length;
+        size = Math.min(size + 1, snapshots.length);
+    }
+
+    public synchronized CacheStats windowStats(CacheStats current) {
+        if (size == 0) {
+            return current;
+        }
+        var oldest = snapshots[size < snapshots.length ? 0 : next];
+        return current.minus(oldest);
+    }
+}
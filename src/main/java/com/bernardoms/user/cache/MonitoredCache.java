@@ -0,0 +1,12 @@
+package com.bernardoms.user.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+
+/**
+ * A Caffeine cache built with {@code recordStats()}, listed by {@link CacheStatsEndpoint} and resizable at runtime.
+ */
+public interface MonitoredCache {
+    String getName();
+
+    Cache<?, ?> getCache();
+}
@@ -0,0 +1,146 @@
+package com.bernardoms.user.cache;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Public user profiles by nickname. Each nickname is loaded once while concurrent callers wait on the same future,
+ * entries older than the refresh interval are reloaded in the background on their next read, and misses go through
+ * {@link UserNotFoundCache} so unknown nicknames aren't loaded over and over. Loads go through {@link UserLoader}, so
+ * no thread waits on mongo for them.
+ */
+@Component
+public class UserCache implements MonitoredCache {
+    public static final String CACHE_NAME = "user";
+
+    private final AsyncLoadingCache<String, UserDTO> users;
+
+    public UserCache(UserLoader userLoader,
+                     UserNotFoundCache userNotFoundCache,
+                     @Value("${user.cache.maximum-size:10000}") long maximumSize,
+                     @Value("${user.cache.refresh-after-write-seconds:60}") long refreshAfterWriteSeconds,
+                     @Value("${user.cache.expire-after-write-seconds:600}") long expireAfterWriteSeconds,
+                     MeterRegistry meterRegistry) {
+        this.users = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .refreshAfterWrite(Duration.ofSeconds(refreshAfterWriteSeconds))
+                .expireAfterWrite(Duration.ofSeconds(expireAfterWriteSeconds))
+                .recordStats()
+                .buildAsync(new AsyncCacheLoader<>() {
+                    @Override
+                    public CompletableFuture<UserDTO> asyncLoad(String nickname, Executor executor) {
+                        return userNotFoundCache.findAsync(nickname, userLoader::load).thenApply(user -> user.orElse(null));
+                    }
+
+                    @Override
+                    public CompletableFuture<Map<String, UserDTO>> asyncLoadAll(Iterable<? extends String> nicknames, Executor executor) {
+                        var keys = new ArrayList<String>();
+                        nicknames.forEach(nickname -> {
+                            if (!userNotFoundCache.isMissing(nickname)) {
+                                keys.add(nickname);
+                            }
+                        });
+                        if (keys.isEmpty()) {
+                            return CompletableFuture.completedFuture(Map.of());
+                        }
+                        return userLoader.loadAll(keys).thenApply(users -> users.stream()
+                                .collect(Collectors.toMap(UserDTO::getNickname, Function.identity())));
+                    }
+                });
+        CaffeineCacheMetrics.monitor(meterRegistry, users, CACHE_NAME);
+    }
+
+    @Override
+    public String getName() {
+        return CACHE_NAME;
+    }
+
+    @Override
+    public Cache<?, ?> getCache() {
+        return users.synchronous();
+    }
+
+    public Optional<UserDTO> get(String nickname) {
+        return Optional.ofNullable(join(users.get(nickname)));
+    }
+
+    /**
+     * Like {@link #get} without blocking the caller; the future completes with null for an unknown nickname.
+     */
+    public CompletableFuture<UserDTO> getAsync(String nickname) {
+        return users.get(nickname);
+    }
+
+    /**
+     * The cached profile without loading it; empty for a nickname that isn't cached or is still loading.
+     */
+    public Optional<UserDTO> getIfPresent(String nickname) {
+        var user = users.getIfPresent(nickname);
+        if (user == null || !user.isDone() || user.isCompletedExceptionally()) {
+            return Optional.empty();
+        }
+        return Optional.ofNullable(user.join());
+    }
+
+    /**
+     * Loads every nickname not already cached with a single query, skipping those {@link UserNotFoundCache} knows to
+     * be missing; nicknames that don't exist are left out of the map.
+     */
+    public Map<String, UserDTO> getAll(Iterable<String> nicknames) {
+        return join(getAllAsync(nicknames));
+    }
+
+    public CompletableFuture<Map<String, UserDTO>> getAllAsync(Iterable<String> nicknames) {
+        return users.getAll(nicknames);
+    }
+
+    /**
+     * Writes a freshly saved profile through to the cache. A cached copy with a higher version wins, so a slower writer
+     * can't replace a newer profile; a load or refresh still in flight for the nickname is discarded by Caffeine.
+     */
+    public void put(UserDTO user) {
+        var fresh = CompletableFuture.completedFuture(user);
+        users.asMap().compute(user.getNickname(), (nickname, current) -> isNewer(current, user) ? current : fresh);
+    }
+
+    public void invalidate(String nickname) {
+        users.synchronous().invalidate(nickname);
+    }
+
+    private static boolean isNewer(CompletableFuture<UserDTO> current, UserDTO user) {
+        if (current == null || !current.isDone() || current.isCompletedExceptionally()) {
+            return false;
+        }
+        var cached = current.join();
+        return cached != null && cached.getVersion() != null && user.getVersion() != null
+                && cached.getVersion() > user.getVersion();
+    }
+
+    private static <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.bernardoms.user.cache;
+
+import com.bernardoms.user.dto.UserDTO;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Reads public profiles for {@link UserCache} without blocking the caller: on the bounded {@code mongo} executor, or
+ * on reactive mongo with the {@code reactive} profile.
+ */
+public interface UserLoader {
+    CompletableFuture<Optional<UserDTO>> load(String nickname);
+
+    /**
+     * Nicknames that don't exist are left out.
+     */
+    CompletableFuture<List<UserDTO>> loadAll(Collection<String> nicknames);
+}
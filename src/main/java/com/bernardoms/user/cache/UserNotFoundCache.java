@@ -0,0 +1,115 @@
+package com.bernardoms.user.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Short lived, bounded cache of nicknames known not to exist, so repeated lookups of unknown users don't reach mongo.
+ * Metrics are published as {@code cache.*} meters tagged {@code cache=user-not-found}.
+ */
+@Component
+public class UserNotFoundCache implements MonitoredCache {
+    public static final String CACHE_NAME = "user-not-found";
+
+    private final Cache<String, Boolean> notFound;
+    private final ConcurrentMap<String, Object> pendingMisses = new ConcurrentHashMap<>();
+
+    public UserNotFoundCache(@Value("${user.cache.not-found.ttl-seconds:30}") long ttlSeconds,
+                             @Value("${user.cache.not-found.maximum-size:100000}") long maximumSize,
+                             MeterRegistry meterRegistry) {
+        this.notFound = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .maximumSize(maximumSize)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, notFound, CACHE_NAME);
+    }
+
+    @Override
+    public String getName() {
+        return CACHE_NAME;
+    }
+
+    @Override
+    public Cache<?, ?> getCache() {
+        return notFound;
+    }
+
+    /**
+     * Runs the finder unless the nickname is already known to be missing, remembering an empty result. The finder runs
+     * outside the cache so a slow query holds no cache lock; a miss is only remembered if no {@link #invalidate} of the
+     * same nickname came in while it ran, so a user created meanwhile isn't hidden behind a stale marker.
+     */
+    public <T> Optional<T> find(String nickname, Function<String, Optional<T>> finder) {
+        if (notFound.getIfPresent(nickname) != null) {
+            return Optional.empty();
+        }
+        var pending = new Object();
+        pendingMisses.put(nickname, pending);
+        try {
+            var user = finder.apply(nickname);
+            if (user.isEmpty()) {
+                remember(nickname, pending);
+            }
+            return user;
+        } finally {
+            pendingMisses.remove(nickname, pending);
+        }
+    }
+
+    /**
+     * {@link #find} for a finder that answers later; the miss is remembered once its future completes empty.
+     */
+    public <T> CompletableFuture<Optional<T>> findAsync(String nickname, Function<String, CompletableFuture<Optional<T>>> finder) {
+        if (notFound.getIfPresent(nickname) != null) {
+            return CompletableFuture.completedFuture(Optional.empty());
+        }
+        var pending = new Object();
+        pendingMisses.put(nickname, pending);
+        CompletableFuture<Optional<T>> found;
+        try {
+            found = finder.apply(nickname);
+        } catch (RuntimeException e) {
+            pendingMisses.remove(nickname, pending);
+            throw e;
+        }
+        return found.whenComplete((user, error) -> {
+            if (error == null && user.isEmpty()) {
+                remember(nickname, pending);
+            }
+            pendingMisses.remove(nickname, pending);
+        });
+    }
+
+    public boolean isMissing(String nickname) {
+        return notFound.getIfPresent(nickname) != null;
+    }
+
+    /**
+     * Drops the pending miss before the marker: a {@link #remember} either runs first and has its marker invalidated
+     * here, or runs after and finds its pending miss gone.
+     */
+    public void invalidate(String nickname) {
+        pendingMisses.remove(nickname);
+        notFound.invalidate(nickname);
+    }
+
+    /**
+     * Stores the marker only if the lookup's pending miss is still there, checked and stored under the cache entry's
+     * lock so an {@link #invalidate} can't slip in between.
+     */
+    private void remember(String nickname, Object pending) {
+        notFound.asMap().compute(nickname, (key, marker) -> pendingMisses.remove(key, pending) ? Boolean.TRUE : marker);
+    }
+}
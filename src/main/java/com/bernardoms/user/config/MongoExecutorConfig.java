@@ -0,0 +1,33 @@
+package com.bernardoms.user.config;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.service.BoundedExecutor;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+/**
+ * The bounded {@code mongo} executor that blocking mongo work runs on, for requests and {@link UserCache} loads alike,
+ * so they share one limit, one 503 with {@code Retry-After} and one set of {@code executor.*} meters. With
+ * {@code user.virtual-threads.enabled} each piece of work gets a virtual thread, up to
+ * {@code user.async.mongo.virtual-max-in-flight} at once.
+ */
+@Configuration
+@Profile("!reactive")
+public class MongoExecutorConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public BoundedExecutor mongoExecutor(MeterRegistry meterRegistry,
+                                         @Value("${user.async.mongo.threads:32}") int threads,
+                                         @Value("${user.async.mongo.queue-capacity:256}") int queueCapacity,
+                                         @Value("${user.async.mongo.timeout-millis:5000}") long timeoutMillis,
+                                         @Value("${user.async.mongo.retry-after-seconds:1}") long retryAfterSeconds,
+                                         @Value("${user.virtual-threads.enabled:false}") boolean virtualThreads,
+                                         @Value("${user.async.mongo.virtual-max-in-flight:10000}") int virtualMaxInFlight) {
+        return virtualThreads
+                ? BoundedExecutor.virtual("mongo", virtualMaxInFlight, timeoutMillis, retryAfterSeconds, meterRegistry)
+                : new BoundedExecutor("mongo", threads, queueCapacity, timeoutMillis, retryAfterSeconds, meterRegistry);
+    }
+}
@@ -24,17 +24,26 @@ public class UserQueueConfig {
     private String secretKey;
     @Value("${sns.topic}")
     private String topic;
+    @Value("${user.virtual-threads.enabled:false}")
+    private boolean virtualThreads;
 
     @Bean
     public BasicAWSCredentials awsCredentialsProvider() {
         return new BasicAWSCredentials(accessKey, secretKey);
     }
 
+    /**
+     * The async client runs each publish, and its callback, on its executor; with virtual threads enabled that is a
+     * virtual thread per publish instead of the client's default pool of 50.
+     */
     @Bean
     public AmazonSNSAsync amazonSnsAsync() {
-        return AmazonSNSAsyncClientBuilder.standard()
+        var builder = AmazonSNSAsyncClientBuilder.standard()
                 .withCredentials(new AWSStaticCredentialsProvider(awsCredentialsProvider()))
-                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region))
-                .build();
+                .withEndpointConfiguration(new AwsClientBuilder.EndpointConfiguration(endpoint, region));
+        if (virtualThreads) {
+            builder.withExecutorFactory(() -> VirtualThreads.newThreadPerTaskExecutor("sns-"));
+        }
+        return builder.build();
     }
 }
@@ -0,0 +1,40 @@
+package com.bernardoms.user.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.embedded.tomcat.TomcatProtocolHandlerCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Profile;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * {@code user.virtual-threads.enabled} runs each Tomcat request on its own virtual thread instead of the
+ * {@code server.tomcat.threads.max} pool, so thousands of requests can wait on mongo at once without sizing a pool for
+ * it; Tomcat's {@code server.tomcat.max-connections} becomes the limit. Needs a JDK with virtual threads (21+).
+ */
+@Configuration
+@Profile("!reactive")
+@ConditionalOnProperty(name = "user.virtual-threads.enabled", havingValue = "true")
+public class VirtualThreadConfig {
+
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService tomcatVirtualThreadExecutor() {
+        return VirtualThreads.newThreadPerTaskExecutor("http-vt-");
+    }
+
+    @Bean
+    public TomcatProtocolHandlerCustomizer<?> virtualThreadProtocolHandlerCustomizer(ExecutorService tomcatVirtualThreadExecutor) {
+        return protocolHandler -> protocolHandler.setExecutor(tomcatVirtualThreadExecutor);
+    }
+
+    @Bean(destroyMethod = "close")
+    public VirtualThreadPinningMonitor virtualThreadPinningMonitor(MeterRegistry meterRegistry,
+                                                                   @Value("${user.virtual-threads.pinned-threshold-millis:20}") long thresholdMillis)
+            throws ReflectiveOperationException {
+        return new VirtualThreadPinningMonitor(meterRegistry, Duration.ofMillis(thresholdMillis));
+    }
+}
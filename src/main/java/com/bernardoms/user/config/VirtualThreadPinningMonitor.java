@@ -0,0 +1,100 @@
+package com.bernardoms.user.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jdk.jfr.EventSettings;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Streams the JFR {@code jdk.VirtualThreadPinned} event, raised when a virtual thread blocks for longer than the
+ * threshold while it can't leave its carrier, usually inside a {@code synchronized} block. Each pin is counted in
+ * {@code user.virtual.threads.pinned} under the first frame of our code, the mongo driver or the aws sdk on its stack
+ * (or else the first frame outside the jdk), and the first pin at each of those frames is logged with its stack so the
+ * hot spot can be fixed.
+ */
+@Slf4j
+public class VirtualThreadPinningMonitor implements AutoCloseable {
+    static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+    private static final String[] HOT_SPOT_PACKAGES = {"com.bernardoms.", "com.mongodb.", "com.amazonaws."};
+
+    private final MeterRegistry meterRegistry;
+    private final Set<String> loggedHotSpots = ConcurrentHashMap.newKeySet();
+    private final AutoCloseable recordingStream;
+
+    /**
+     * The JFR streaming api came after Java 11, so the stream is opened through reflection.
+     */
+    public VirtualThreadPinningMonitor(MeterRegistry meterRegistry, Duration threshold) throws ReflectiveOperationException {
+        this.meterRegistry = meterRegistry;
+        var streamType = Class.forName("jdk.jfr.consumer.RecordingStream");
+        var stream = streamType.getConstructor().newInstance();
+        var settings = (EventSettings) streamType.getMethod("enable", String.class).invoke(stream, PINNED_EVENT);
+        settings.withThreshold(threshold).withStackTrace();
+        Consumer<RecordedEvent> onPinned = this::onPinned;
+        streamType.getMethod("onEvent", String.class, Consumer.class).invoke(stream, PINNED_EVENT, onPinned);
+        streamType.getMethod("startAsync").invoke(stream);
+        this.recordingStream = (AutoCloseable) stream;
+    }
+
+    void onPinned(RecordedEvent event) {
+        var hotSpot = hotSpot(event.getStackTrace());
+        Counter.builder("user.virtual.threads.pinned")
+                .description("virtual threads that blocked while pinned to their carrier")
+                .tag("frame", hotSpot)
+                .register(meterRegistry)
+                .increment();
+        if (loggedHotSpots.add(hotSpot)) {
+            log.warn("virtual thread pinned for " + event.getDuration().toMillis() + "ms at " + hotSpot
+                    + System.lineSeparator() + stackOf(event.getStackTrace()));
+        }
+    }
+
+    static String hotSpot(RecordedStackTrace stackTrace) {
+        if (stackTrace == null || stackTrace.getFrames().isEmpty()) {
+            return "unknown";
+        }
+        for (var frame : stackTrace.getFrames()) {
+            var type = frame.getMethod().getType().getName();
+            for (var hotSpotPackage : HOT_SPOT_PACKAGES) {
+                if (type.startsWith(hotSpotPackage)) {
+                    return frameName(frame);
+                }
+            }
+        }
+        return stackTrace.getFrames().stream()
+                .filter(frame -> !isJdk(frame.getMethod().getType().getName()))
+                .findFirst()
+                .map(VirtualThreadPinningMonitor::frameName)
+                .orElse(frameName(stackTrace.getFrames().get(0)));
+    }
+
+    private static boolean isJdk(String type) {
+        return type.startsWith("java.") || type.startsWith("jdk.") || type.startsWith("sun.");
+    }
+
+    private static String stackOf(RecordedStackTrace stackTrace) {
+        if (stackTrace == null) {
+            return "";
+        }
+        var stack = new StringBuilder();
+        stackTrace.getFrames().forEach(frame -> stack.append("\tat ").append(frameName(frame)).append(System.lineSeparator()));
+        return stack.toString();
+    }
+
+    private static String frameName(RecordedFrame frame) {
+        return frame.getMethod().getType().getName() + "." + frame.getMethod().getName() + ":" + frame.getLineNumber();
+    }
+
+    @Override
+    public void close() throws Exception {
+        recordingStream.close();
+    }
+}
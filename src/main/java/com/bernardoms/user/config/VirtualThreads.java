@@ -0,0 +1,50 @@
+package com.bernardoms.user.config;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads, reached through reflection because the api is built for Java 11. They are only there when it
+ * runs on a JDK that has them (21+); {@link #isSupported()} tells.
+ */
+public final class VirtualThreads {
+
+    private VirtualThreads() {
+    }
+
+    public static boolean isSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return a factory of virtual threads named {@code prefix} followed by a counter
+     */
+    public static ThreadFactory threadFactory(String prefix) {
+        try {
+            var builderType = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            var builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, prefix, 0L);
+            return (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual threads need a JDK with Thread.ofVirtual (21+), running on " + Runtime.version(), e);
+        }
+    }
+
+    /**
+     * @return an executor starting a new virtual thread for each task
+     */
+    public static ExecutorService newThreadPerTaskExecutor(String prefix) {
+        var threadFactory = threadFactory(prefix);
+        try {
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("virtual threads need a JDK with Executors.newThreadPerTaskExecutor (21+)", e);
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package com.bernardoms.user.controller;
 
+import com.bernardoms.user.exception.ExecutorSaturatedException;
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.ImportRejectedException;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.InvalidCursorException;
 import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.exception.UnindexedQueryException;
 import com.bernardoms.user.exception.UserNotFoundException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -10,16 +19,20 @@ import org.springframework.validation.BindException;
 import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.context.request.async.AsyncRequestTimeoutException;
 
 import javax.servlet.http.HttpServletRequest;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 
 @RestControllerAdvice
+@Profile("!reactive")
 @Slf4j
 public class ExceptionController {
 
-    @ExceptionHandler({BindException.class, HttpMessageNotReadableException.class})
+    @ExceptionHandler({BindException.class, HttpMessageNotReadableException.class, InvalidCursorException.class, InvalidBatchException.class,
+            UnindexedQueryException.class})
     private ResponseEntity<Object> handleIllegalArgumentException(Exception ex, HttpServletRequest request) {
         log.error("invalid arguments/body for processing the request: " + request.getRequestURI(), ex);
         return new ResponseEntity<>(mountError(ex), HttpStatus.BAD_REQUEST);
@@ -37,6 +50,39 @@ public class ExceptionController {
         return new ResponseEntity<>(mountError(ex), HttpStatus.NOT_FOUND);
     }
 
+    @ExceptionHandler({ImportJobNotFoundException.class})
+    private ResponseEntity<Object> handleImportJobNotFoundException(ImportJobNotFoundException ex, HttpServletRequest request) {
+        log.info("import job not found! : " + request.getRequestURI(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler({ImportRejectedException.class})
+    private ResponseEntity<Object> handleImportRejectedException(ImportRejectedException ex, HttpServletRequest request) {
+        log.warn("import rejected : " + request.getRequestURI(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.SERVICE_UNAVAILABLE);
+    }
+
+    @ExceptionHandler({PasswordHashingRejectedException.class})
+    private ResponseEntity<Object> handlePasswordHashingRejectedException(PasswordHashingRejectedException ex, HttpServletRequest request) {
+        log.warn("password hashing rejected : " + request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(mountError(ex));
+    }
+
+    @ExceptionHandler({ExecutorSaturatedException.class})
+    private ResponseEntity<Object> handleExecutorSaturatedException(ExecutorSaturatedException ex, HttpServletRequest request) {
+        log.warn("executor saturated : " + request.getRequestURI());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(mountError(ex));
+    }
+
+    @ExceptionHandler({TimeoutException.class, AsyncRequestTimeoutException.class})
+    private ResponseEntity<Object> handleTimeoutException(Exception ex, HttpServletRequest request) {
+        log.warn("request timed out : " + request.getRequestURI(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.GATEWAY_TIMEOUT);
+    }
 
     @ExceptionHandler({Exception.class})
     private ResponseEntity<Object> handleException(Exception ex, HttpServletRequest request) {
@@ -0,0 +1,99 @@
+package com.bernardoms.user.controller;
+
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.InvalidCursorException;
+import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.exception.UserNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.server.reactive.ServerHttpRequest;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+import org.springframework.web.bind.support.WebExchangeBindException;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.server.ServerWebInputException;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * {@link ExceptionController} for the {@code reactive} profile, answering with the same statuses and bodies.
+ */
+@RestControllerAdvice
+@Profile("reactive")
+@Slf4j
+public class ReactiveExceptionController {
+
+    @ExceptionHandler({ServerWebInputException.class, InvalidCursorException.class, InvalidBatchException.class})
+    private ResponseEntity<Object> handleIllegalArgumentException(Exception ex, ServerHttpRequest request) {
+        log.error("invalid arguments/body for processing the request: " + request.getPath(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.BAD_REQUEST);
+    }
+
+    @ExceptionHandler({NicknameAlreadyExistException.class})
+    private ResponseEntity<Object> handleNickNameAlreadyExistException(NicknameAlreadyExistException ex, ServerHttpRequest request) {
+        log.info("nick name already exist : " + request.getPath(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.CONFLICT);
+    }
+
+    @ExceptionHandler({UserNotFoundException.class})
+    private ResponseEntity<Object> handleUserNotFoundException(UserNotFoundException ex, ServerHttpRequest request) {
+        log.info("user not found! : " + request.getPath(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler({ImportJobNotFoundException.class})
+    private ResponseEntity<Object> handleImportJobNotFoundException(ImportJobNotFoundException ex, ServerHttpRequest request) {
+        log.info("import job not found! : " + request.getPath(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.NOT_FOUND);
+    }
+
+    @ExceptionHandler({PasswordHashingRejectedException.class})
+    private ResponseEntity<Object> handlePasswordHashingRejectedException(PasswordHashingRejectedException ex, ServerHttpRequest request) {
+        log.warn("password hashing rejected : " + request.getPath());
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body(mountError(ex));
+    }
+
+    /**
+     * Errors WebFlux raises with a status of their own, such as an unsupported media type, keep that status.
+     */
+    @ExceptionHandler({ResponseStatusException.class})
+    private ResponseEntity<Object> handleResponseStatusException(ResponseStatusException ex, ServerHttpRequest request) {
+        log.info("request rejected : " + request.getPath(), ex);
+        var error = new HashMap<>();
+        error.put("description", ex.getReason());
+        return new ResponseEntity<>(error, ex.getStatus());
+    }
+
+    @ExceptionHandler({Exception.class})
+    private ResponseEntity<Object> handleException(Exception ex, ServerHttpRequest request) {
+        log.error("error on process the request: " + request.getPath(), ex);
+        return new ResponseEntity<>(mountError(ex), HttpStatus.INTERNAL_SERVER_ERROR);
+    }
+
+    @ExceptionHandler({WebExchangeBindException.class})
+    protected ResponseEntity<Object> handleWebExchangeBindException(WebExchangeBindException ex) {
+        Map<String, String> details = new HashMap<>();
+
+        var errors = new HashMap<>();
+
+        ex.getFieldErrors().forEach(field -> details.put(field.getField(), field.getDefaultMessage()));
+
+        errors.put("description", details);
+
+        return new ResponseEntity<>(errors, HttpStatus.BAD_REQUEST);
+    }
+
+    private HashMap<Object, Object> mountError(Exception e) {
+        var error = new HashMap<>();
+        error.put("description", e.getMessage());
+        return error;
+    }
+}
@@ -0,0 +1,110 @@
+package com.bernardoms.user.controller;
+
+import com.bernardoms.user.dto.BatchUserResult;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.model.CountMode;
+import com.bernardoms.user.model.UserFilter;
+import com.bernardoms.user.service.ReactiveUserService;
+import com.bernardoms.user.service.UserBatchService;
+import com.bernardoms.user.service.UserLookupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Slice;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.WebDataBinder;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.util.UriComponentsBuilder;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+import java.beans.PropertyEditorSupport;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The {@link UserController} API on WebFlux, active with the {@code reactive} profile. Batch creation still runs on
+ * the blocking {@link UserBatchService}, moved off the event loop; import and export stay servlet only.
+ */
+@RestController
+@Profile("reactive")
+@RequestMapping("/v1/users")
+@RequiredArgsConstructor
+public class ReactiveUserController {
+    private final ReactiveUserService reactiveUserService;
+    private final UserBatchService userBatchService;
+    private final UserLookupService userLookupService;
+
+    @InitBinder
+    public void initBinder(WebDataBinder binder) {
+        binder.registerCustomEditor(CountMode.class, new PropertyEditorSupport() {
+            @Override
+            public void setAsText(String text) {
+                setValue(CountMode.valueOf(text.trim().toUpperCase()));
+            }
+        });
+    }
+
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<ResponseEntity<String>> saveUser(@RequestBody @Validated UserDTO userDTO, UriComponentsBuilder uriComponentsBuilder) {
+        return reactiveUserService.saveUser(userDTO)
+                .map(savedNickname -> ResponseEntity.created(
+                        uriComponentsBuilder.path("/v1/users/{nickname}").buildAndExpand(savedNickname).toUri()).build());
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<List<BatchUserResult>> saveUsers(@RequestBody List<UserDTO> users) {
+        return Mono.fromCallable(() -> userBatchService.saveUsers(users)).subscribeOn(Schedulers.boundedElastic());
+    }
+
+    @PostMapping("/lookup")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<Map<String, UserDTO>> lookupUsers(@RequestBody List<String> nicknames) throws InvalidBatchException {
+        return Mono.fromFuture(userLookupService.getByNickNamesAsync(nicknames));
+    }
+
+    @GetMapping("/{nickname}")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<UserDTO> getUserByNickName(@PathVariable String nickname) {
+        return reactiveUserService.getByNickName(nickname);
+    }
+
+    @GetMapping
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<? extends Slice<UserDTO>> getUsers(UserFilter userFilter) {
+        if (userFilter.getCount() == CountMode.NONE) {
+            return reactiveUserService.getUsersWithoutCount(userFilter);
+        }
+        return reactiveUserService.getUsers(userFilter);
+    }
+
+    @GetMapping(params = "cursor")
+    @ResponseStatus(HttpStatus.OK)
+    public Mono<CursorPage<UserDTO>> getUsersByCursor(UserFilter userFilter) {
+        return reactiveUserService.getUsersByCursor(userFilter);
+    }
+
+    @PutMapping("/{nickname}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> updateUser(@RequestBody UserDTO userDTO, @PathVariable String nickname) {
+        return reactiveUserService.updateUser(nickname, userDTO);
+    }
+
+    @PatchMapping("/{nickname}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> patchUser(@RequestBody @Validated UserPatchDTO userPatchDTO, @PathVariable String nickname) {
+        return reactiveUserService.patchUser(nickname, userPatchDTO);
+    }
+
+    @DeleteMapping("/{nickname}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public Mono<Void> deleteUser(@PathVariable String nickname) {
+        return reactiveUserService.deleteUser(nickname);
+    }
+}
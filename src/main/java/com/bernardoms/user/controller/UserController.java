@@ -1,56 +1,150 @@
 package com.bernardoms.user.controller;
 
+import com.bernardoms.user.dto.BatchUserResult;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.ImportJobStatus;
 import com.bernardoms.user.dto.UserDTO;
-import com.bernardoms.user.exception.NicknameAlreadyExistException;
-import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.ImportRejectedException;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.model.CountMode;
 import com.bernardoms.user.model.UserFilter;
-import com.bernardoms.user.service.UserService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.bernardoms.user.service.AsyncUserService;
+import com.bernardoms.user.service.UserBatchService;
+import com.bernardoms.user.service.UserExportService;
+import com.bernardoms.user.service.UserImportService;
+import com.bernardoms.user.service.UserLookupService;
 import lombok.RequiredArgsConstructor;
-import org.springframework.data.domain.Page;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Slice;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.WebDataBinder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import javax.servlet.http.HttpServletResponse;
+import java.beans.PropertyEditorSupport;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Single user reads and writes, and lookups, return futures so the request thread goes back to tomcat while mongo or
+ * password hashing is pending; see {@link AsyncUserService}.
+ */
 @RestController
+@Profile("!reactive")
 @RequestMapping("/v1/users")
 @RequiredArgsConstructor
 public class UserController {
-    private final UserService userService;
+    private static final MediaType NDJSON = MediaType.parseMediaType("application/x-ndjson");
+
+    private final AsyncUserService asyncUserService;
+    private final UserBatchService userBatchService;
+    private final UserExportService userExportService;
+    private final UserImportService userImportService;
+    private final UserLookupService userLookupService;
+
+    @InitBinder
+    public void initBinder(WebDataBinder binder) {
+        binder.registerCustomEditor(CountMode.class, new PropertyEditorSupport() {
+            @Override
+            public void setAsText(String text) {
+                setValue(CountMode.valueOf(text.trim().toUpperCase()));
+            }
+        });
+    }
 
     @PostMapping
     @ResponseStatus(HttpStatus.CREATED)
-    public ResponseEntity<String> saveUser(@RequestBody @Validated UserDTO userDTO, UriComponentsBuilder uriComponentsBuilder) throws NicknameAlreadyExistException {
-        var savedNickname = userService.saveUser(userDTO);
+    public CompletableFuture<ResponseEntity<String>> saveUser(@RequestBody @Validated UserDTO userDTO, UriComponentsBuilder uriComponentsBuilder) {
+        return asyncUserService.saveUser(userDTO).thenApply(savedNickname -> {
+            var uriComponent = uriComponentsBuilder.path("/v1/users/{nickname}").buildAndExpand(savedNickname);
+
+            return ResponseEntity.created(uriComponent.toUri()).build();
+        });
+    }
+
+    @PostMapping("/batch")
+    @ResponseStatus(HttpStatus.OK)
+    public List<BatchUserResult> saveUsers(@RequestBody List<UserDTO> users) throws InvalidBatchException, PasswordHashingRejectedException {
+        return userBatchService.saveUsers(users);
+    }
+
+    @PostMapping("/lookup")
+    @ResponseStatus(HttpStatus.OK)
+    public CompletableFuture<Map<String, UserDTO>> lookupUsers(@RequestBody List<String> nicknames) throws InvalidBatchException {
+        return userLookupService.getByNickNamesAsync(nicknames);
+    }
 
-        var uriComponent = uriComponentsBuilder.path("/v1/users/{nickname}").buildAndExpand(savedNickname);
+    @PostMapping(value = "/import", consumes = "application/x-ndjson")
+    public ResponseEntity<ImportJobStatus> importUsers(InputStream body, UriComponentsBuilder uriComponentsBuilder) throws IOException, ImportRejectedException {
+        var importJob = userImportService.importUsers(body);
 
-        return ResponseEntity.created(uriComponent.toUri()).build();
+        var uriComponent = uriComponentsBuilder.path("/v1/users/import/{id}").buildAndExpand(importJob.getId());
+
+        return ResponseEntity.accepted().location(uriComponent.toUri()).body(importJob);
+    }
+
+    @GetMapping("/import/{id}")
+    @ResponseStatus(HttpStatus.OK)
+    public ImportJobStatus getImport(@PathVariable String id) throws ImportJobNotFoundException {
+        return userImportService.getJob(id);
+    }
+
+    @GetMapping("/export")
+    public WebAsyncTask<Void> exportUsers(UserFilter userFilter, HttpServletResponse response) {
+        return new WebAsyncTask<>(userExportService.getTimeoutMillis(), () -> {
+            response.setContentType(NDJSON.toString());
+            userExportService.export(userFilter, response.getOutputStream());
+            return null;
+        });
     }
 
     @GetMapping("/{nickname}")
     @ResponseStatus(HttpStatus.OK)
-    public UserDTO getUserByNickName(@PathVariable String nickname) throws UserNotFoundException {
-        return userService.getByNickName(nickname);
+    public CompletableFuture<UserDTO> getUserByNickName(@PathVariable String nickname) {
+        return asyncUserService.getByNickName(nickname);
     }
 
     @GetMapping
     @ResponseStatus(HttpStatus.OK)
-    public Page<UserDTO> getUsers(UserFilter userFilter) {
-        return userService.getUsers(userFilter);
+    public CompletableFuture<? extends Slice<UserDTO>> getUsers(UserFilter userFilter) {
+        if (userFilter.getCount() == CountMode.NONE) {
+            return asyncUserService.getUsersWithoutCount(userFilter);
+        }
+        return asyncUserService.getUsers(userFilter);
+    }
+
+    @GetMapping(params = "cursor")
+    @ResponseStatus(HttpStatus.OK)
+    public CompletableFuture<CursorPage<UserDTO>> getUsersByCursor(UserFilter userFilter) {
+        return asyncUserService.getUsersByCursor(userFilter);
     }
 
     @PutMapping("/{nickname}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void updateUser(@RequestBody UserDTO userDTO, @PathVariable String nickname) throws JsonProcessingException {
-        userService.updateUser(nickname, userDTO);
+    public CompletableFuture<Void> updateUser(@RequestBody UserDTO userDTO, @PathVariable String nickname) {
+        return asyncUserService.updateUser(nickname, userDTO);
+    }
+
+    @PatchMapping("/{nickname}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public CompletableFuture<Void> patchUser(@RequestBody @Validated UserPatchDTO userPatchDTO, @PathVariable String nickname) {
+        return asyncUserService.patchUser(nickname, userPatchDTO);
     }
 
     @DeleteMapping("/{nickname}")
     @ResponseStatus(HttpStatus.NO_CONTENT)
-    public void deleteUser(@PathVariable String nickname) {
-        userService.deleteUser(nickname);
+    public CompletableFuture<Void> deleteUser(@PathVariable String nickname) {
+        return asyncUserService.deleteUser(nickname);
     }
 }
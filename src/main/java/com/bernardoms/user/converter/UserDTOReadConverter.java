@@ -0,0 +1,29 @@
+package com.bernardoms.user.converter;
+
+import com.bernardoms.user.dto.UserDTO;
+import org.bson.Document;
+import org.springframework.core.convert.converter.Converter;
+
+/**
+ * Decodes a projected user document straight into a {@link UserDTO}, skipping the {@code User} entity
+ * and the mapping converter on the read paths. Only the public fields are read, so the password hash
+ * never reaches the DTO even if it was not projected out. The document version is carried along (not serialized)
+ * so cached copies can be ordered against later writes.
+ */
+public enum UserDTOReadConverter implements Converter<Document, UserDTO> {
+    INSTANCE;
+
+    public static final String[] PUBLIC_FIELDS = {"nickname", "firstName", "lastName", "email", "country", "version"};
+
+    @Override
+    public UserDTO convert(Document document) {
+        var userDTO = new UserDTO(document.getString("nickname"),
+                document.getString("firstName"),
+                document.getString("lastName"),
+                document.getString("email"),
+                document.getString("country"));
+        var version = document.get("version", Number.class);
+        userDTO.setVersion(version == null ? null : version.longValue());
+        return userDTO;
+    }
+}
@@ -0,0 +1,7 @@
+package com.bernardoms.user.dto;
+
+public enum BatchItemStatus {
+    CREATED,
+    CONFLICT,
+    INVALID
+}
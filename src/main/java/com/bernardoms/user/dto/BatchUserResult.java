@@ -0,0 +1,15 @@
+package com.bernardoms.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchUserResult {
+    private final int index;
+    private final String nickname;
+    private final BatchItemStatus status;
+    private final String description;
+}
@@ -0,0 +1,34 @@
+package com.bernardoms.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class ImportJobStatus {
+    private final String id;
+    private final State state;
+    private final long linesRead;
+    private final long created;
+    private final long failed;
+    private final List<LineError> errors;
+    private final String startedAt;
+    private final String finishedAt;
+
+    public enum State {
+        RUNNING,
+        COMPLETED,
+        FAILED
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class LineError {
+        private final long line;
+        private final String description;
+    }
+}
@@ -0,0 +1,45 @@
+package com.bernardoms.user.dto;
+
+import com.fasterxml.jackson.annotation.JsonPropertyOrder;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Envelope published when a user changes. {@code changes} holds the fields the change set, never the password, and
+ * {@code timestamp} is in epoch milliseconds. Binary encodings write the properties by position in the order below,
+ * so adding, removing or reordering one needs a new {@link #SCHEMA_VERSION}.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonPropertyOrder({"schemaVersion", "eventId", "nickname", "changes", "timestamp"})
+public class UserChangeEvent {
+    public static final int SCHEMA_VERSION = 1;
+
+    private int schemaVersion;
+    private String eventId;
+    private String nickname;
+    private Map<String, String> changes;
+    private long timestamp;
+
+    /**
+     * Takes the id, nickname and timestamp of the later event and the changes of both, later values winning, so
+     * merged partial updates still report every change.
+     */
+    public UserChangeEvent mergedWith(UserChangeEvent later) {
+        var merged = new LinkedHashMap<String, String>();
+        if (changes != null) {
+            merged.putAll(changes);
+        }
+        if (later.changes != null) {
+            merged.putAll(later.changes);
+        }
+        return new UserChangeEvent(later.schemaVersion, later.eventId, later.nickname, merged, later.timestamp);
+    }
+}
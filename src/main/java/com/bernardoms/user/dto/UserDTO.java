@@ -1,5 +1,6 @@
 package com.bernardoms.user.dto;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -27,6 +28,8 @@ public class UserDTO {
     private String email;
     @Size(max = 2, min = 2, message = "country should have two characters")
     private String country;
+    @JsonIgnore
+    private Long version;
 
     public UserDTO(String nickname, String firstName, String lastName, String email, String country) {
         this.nickname = nickname;
@@ -0,0 +1,34 @@
+package com.bernardoms.user.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.Pattern;
+import javax.validation.constraints.Size;
+
+/**
+ * Partial update of a user. Absent fields are left as stored; present ones follow the same rules as {@link UserDTO}.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class UserPatchDTO {
+    private static final String NOT_BLANK = ".*\\S.*";
+
+    @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+    private String nickname;
+    @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+    private String firstName;
+    @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+    private String lastName;
+    @Pattern(regexp = NOT_BLANK, message = "must not be blank")
+    private String password;
+    @Email
+    private String email;
+    @Size(max = 2, min = 2, message = "country should have two characters")
+    private String country;
+}
@@ -0,0 +1,13 @@
+package com.bernardoms.user.exception;
+
+import lombok.Getter;
+
+@Getter
+public class ExecutorSaturatedException extends Exception {
+    private final long retryAfterSeconds;
+
+    public ExecutorSaturatedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
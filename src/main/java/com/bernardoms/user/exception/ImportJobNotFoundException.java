@@ -0,0 +1,7 @@
+package com.bernardoms.user.exception;
+
+public class ImportJobNotFoundException extends Exception {
+    public ImportJobNotFoundException(String message) {
+        super(message);
+    }
+}
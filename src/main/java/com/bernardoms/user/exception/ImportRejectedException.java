@@ -0,0 +1,7 @@
+package com.bernardoms.user.exception;
+
+public class ImportRejectedException extends Exception {
+    public ImportRejectedException(String message) {
+        super(message);
+    }
+}
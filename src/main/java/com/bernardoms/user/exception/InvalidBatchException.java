@@ -0,0 +1,7 @@
+package com.bernardoms.user.exception;
+
+public class InvalidBatchException extends Exception {
+    public InvalidBatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.bernardoms.user.exception;
+
+public class InvalidCursorException extends Exception {
+    public InvalidCursorException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,13 @@
+package com.bernardoms.user.exception;
+
+import lombok.Getter;
+
+@Getter
+public class PasswordHashingRejectedException extends Exception {
+    private final long retryAfterSeconds;
+
+    public PasswordHashingRejectedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,7 @@
+package com.bernardoms.user.exception;
+
+public class UnindexedQueryException extends Exception {
+    public UnindexedQueryException(String message) {
+        super(message);
+    }
+}
@@ -2,6 +2,7 @@ package com.bernardoms.user.exception;
 
 public class UserNotFoundException extends Exception {
     public UserNotFoundException(String message) {
-        super(message);
+        // thrown for every unknown nickname lookup and always handled, so skip the stack trace
+        super(message, null, false, false);
     }
 }
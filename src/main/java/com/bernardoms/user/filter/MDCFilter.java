@@ -27,6 +27,14 @@ public class MDCFilter extends OncePerRequestFilter {
         filterChain.doFilter(httpServletRequest, httpServletResponse);
     }
 
+    /**
+     * Async results are written from another container thread, which needs the MDC again for the error logs.
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
     private void addHeaderToMDC(HttpServletRequest httpServletRequest) {
         var headers = Collections.list(httpServletRequest.getHeaderNames())
                 .stream()
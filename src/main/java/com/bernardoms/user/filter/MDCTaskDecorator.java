@@ -0,0 +1,35 @@
+package com.bernardoms.user.filter;
+
+import org.slf4j.MDC;
+import org.springframework.core.task.TaskDecorator;
+
+import java.util.Map;
+
+/**
+ * Carries the MDC {@link MDCFilter} put on the request thread onto the worker that runs the request's work, so the
+ * worker's logs have the same path, method and headers. The worker's own MDC is put back once the work is done.
+ */
+public class MDCTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        var context = MDC.getCopyOfContextMap();
+        return () -> {
+            var previous = MDC.getCopyOfContextMap();
+            setContext(context);
+            try {
+                runnable.run();
+            } finally {
+                setContext(previous);
+            }
+        };
+    }
+
+    private static void setContext(Map<String, String> context) {
+        if (context == null) {
+            MDC.clear();
+        } else {
+            MDC.setContextMap(context);
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.bernardoms.user.mapper;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.User;
+import org.mapstruct.Builder;
+import org.mapstruct.Mapper;
+import org.mapstruct.Mapping;
+import org.mapstruct.ReportingPolicy;
+
+/**
+ * Mapping between the {@link User} entity and {@link UserDTO} (and so {@code UserFilter}), generated at compile
+ * time by MapStruct as plain getter/setter calls. Builders are disabled so the generated code instantiates the
+ * target directly instead of going through the Lombok builder objects.
+ */
+@Mapper(componentModel = "spring", builder = @Builder(disableBuilder = true), unmappedTargetPolicy = ReportingPolicy.ERROR)
+public interface UserMapper {
+
+    @Mapping(target = "id", ignore = true)
+    @Mapping(target = "outbox", ignore = true)
+    User toUser(UserDTO userDTO);
+
+    UserDTO toUserDTO(User user);
+
+    @Mapping(target = "password", ignore = true)
+    UserDTO toPublicUserDTO(User user);
+}
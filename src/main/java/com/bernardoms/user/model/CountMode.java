@@ -0,0 +1,7 @@
+package com.bernardoms.user.model;
+
+public enum CountMode {
+    EXACT,
+    ESTIMATED,
+    NONE
+}
@@ -0,0 +1,25 @@
+package com.bernardoms.user.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * A change notification waiting to be published, kept in the {@code outbox} array of the user it describes so it is
+ * written by the same update as the change itself.
+ */
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class OutboxEvent {
+    private String eventId;
+    private String nickname;
+    private Map<String, String> changes;
+    private Instant createdAt;
+    private int attempts;
+}
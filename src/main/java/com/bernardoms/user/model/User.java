@@ -6,14 +6,22 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
+import java.util.List;
+
 @Data
 @Builder
 @AllArgsConstructor
 @NoArgsConstructor
 @Document(collection = "users")
+@CompoundIndex(name = "outbox_created_at", def = "{'outbox.createdAt': 1}", sparse = true)
+@CompoundIndex(name = "country_last_name_first_name", def = "{'country': 1, 'lastName': 1, 'firstName': 1}")
+@CompoundIndex(name = "last_name_first_name", def = "{'lastName': 1, 'firstName': 1}")
+@CompoundIndex(name = "first_name_country", def = "{'firstName': 1, 'country': 1}")
 public class User {
     @Id
     private ObjectId id;
@@ -25,5 +33,8 @@ public class User {
     @Indexed(name = "email", unique = true)
     private String email;
     private String country;
+    @Version
+    private Long version;
+    private List<OutboxEvent> outbox;
 }
 
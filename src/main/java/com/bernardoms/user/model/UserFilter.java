@@ -13,10 +13,13 @@ import java.util.Objects;
 public class UserFilter extends UserDTO {
     private Integer offset;
     private Integer limit;
+    private String cursor;
+    private CountMode count;
 
     public UserFilter(String nickname, String firstName, String lastName, String email,  String country) {
         super(nickname, firstName, lastName, email, country);
         this.limit = Objects.isNull(this.limit)  ? 100 : limit;
         this.offset = Objects.isNull(this.offset) ? 0 : offset;
+        this.count = Objects.isNull(this.count) ? CountMode.EXACT : count;
     }
 }
@@ -9,4 +9,6 @@ import java.util.Optional;
 public interface UserRepository extends CrudRepository<User, ObjectId> {
     Optional<User> findByNickname(String nickname);
 
+    long deleteByNickname(String nickname);
+
 }
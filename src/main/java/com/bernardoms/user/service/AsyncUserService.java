@@ -0,0 +1,109 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.model.UserFilter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * {@link UserService} for the servlet endpoints without holding the request thread: mongo work runs on a bounded
+ * {@code mongo} pool and password hashing on {@link PasswordHashingService}'s, and profiles come from {@link UserCache}
+ * without a pool hop when they are cached. Every future fails with a timeout after
+ * {@code user.async.mongo.timeout-millis}. A write that times out once it has started may still be applied. With
+ * {@code user.virtual-threads.enabled} mongo work gets a virtual thread each, up to
+ * {@code user.async.mongo.virtual-max-in-flight} at once.
+ */
+@Service
+@Profile("!reactive")
+public class AsyncUserService {
+    private final UserService userService;
+    private final PasswordHashingService passwordHashingService;
+    private final UserCache userCache;
+    private final UserNotFoundCache userNotFoundCache;
+    private final BoundedExecutor mongoExecutor;
+    private final long timeoutMillis;
+
+    public AsyncUserService(UserService userService,
+                            PasswordHashingService passwordHashingService,
+                            UserCache userCache,
+                            UserNotFoundCache userNotFoundCache,
+                            BoundedExecutor mongoExecutor,
+                            @Value("${user.async.mongo.timeout-millis:5000}") long timeoutMillis) {
+        this.userService = userService;
+        this.passwordHashingService = passwordHashingService;
+        this.userCache = userCache;
+        this.userNotFoundCache = userNotFoundCache;
+        this.mongoExecutor = mongoExecutor;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public CompletableFuture<UserDTO> getByNickName(String nickName) {
+        return Timeouts.within(userCache.getAsync(nickName), timeoutMillis, "user lookup").thenCompose(user -> user != null
+                ? CompletableFuture.completedFuture(user)
+                : CompletableFuture.failedFuture(new UserNotFoundException("user with nick name " + nickName + " not found!")));
+    }
+
+    public CompletableFuture<Page<UserDTO>> getUsers(UserFilter userFilter) {
+        return mongoExecutor.submit(() -> userService.getUsers(userFilter));
+    }
+
+    public CompletableFuture<Slice<UserDTO>> getUsersWithoutCount(UserFilter userFilter) {
+        return mongoExecutor.submit(() -> userService.getUsersWithoutCount(userFilter));
+    }
+
+    public CompletableFuture<CursorPage<UserDTO>> getUsersByCursor(UserFilter userFilter) {
+        return mongoExecutor.submit(() -> userService.getUsersByCursor(userFilter));
+    }
+
+    public CompletableFuture<String> saveUser(UserDTO userDTO) {
+        return passwordHashingService.encodeAsync(userDTO.getPassword())
+                .thenCompose(passwordHash -> mongoExecutor.submit(() -> userService.saveUser(userDTO, passwordHash)));
+    }
+
+    /**
+     * See {@link UserService#updateUser(String, UserDTO)}: nothing is hashed for a nickname known to be missing.
+     */
+    public CompletableFuture<Void> updateUser(String nickname, UserDTO userDTO) {
+        return unlessMissing(nickname, () -> passwordHashingService.encodeAsync(userDTO.getPassword())
+                .thenCompose(passwordHash -> mongoExecutor.submit(() -> {
+                    userService.updateUser(nickname, userDTO, passwordHash);
+                    return null;
+                })));
+    }
+
+    public CompletableFuture<Void> patchUser(String nickname, UserPatchDTO userPatchDTO) {
+        if (userPatchDTO.getPassword() == null) {
+            return mongoExecutor.submit(() -> {
+                userService.patchUser(nickname, userPatchDTO, null);
+                return null;
+            });
+        }
+        return unlessMissing(nickname, () -> passwordHashingService.encodeAsync(userPatchDTO.getPassword())
+                .thenCompose(hash -> mongoExecutor.submit(() -> {
+                    userService.patchUser(nickname, userPatchDTO, hash);
+                    return null;
+                })));
+    }
+
+    public CompletableFuture<Void> deleteUser(String nickname) {
+        return mongoExecutor.submit(() -> {
+            userService.deleteUser(nickname);
+            return null;
+        });
+    }
+
+    private CompletableFuture<Void> unlessMissing(String nickname, Supplier<CompletableFuture<Void>> write) {
+        return userNotFoundCache.isMissing(nickname) ? CompletableFuture.completedFuture(null) : write.get();
+    }
+}
@@ -0,0 +1,136 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.config.VirtualThreads;
+import com.bernardoms.user.exception.ExecutorSaturatedException;
+import com.bernardoms.user.filter.MDCTaskDecorator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A fixed pool with a bounded queue, for work a request waits on without holding its servlet thread. A full queue
+ * fails the future straight away with {@link ExecutorSaturatedException}. Work that hasn't finished within the timeout
+ * fails it with a {@link TimeoutException}, and is skipped if it is still queued by then. The submitter's MDC is
+ * carried onto the worker. Pool saturation is published as the {@code executor.*} meters tagged with the pool's name.
+ * <p>
+ * {@link #virtual} runs each piece of work on its own virtual thread instead, bounded by how many may be in flight
+ * rather than by a pool and its queue.
+ */
+public class BoundedExecutor {
+    private final String name;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final TaskDecorator taskDecorator = new MDCTaskDecorator();
+    private final long timeoutMillis;
+    private final long retryAfterSeconds;
+    private final Counter rejections;
+    private final Counter timeouts;
+
+    public BoundedExecutor(String name, int threads, int queueCapacity, long timeoutMillis, long retryAfterSeconds,
+                           MeterRegistry meterRegistry) {
+        this(name, fixedPool(name, threads, queueCapacity), null, timeoutMillis, retryAfterSeconds, meterRegistry);
+    }
+
+    private BoundedExecutor(String name, ExecutorService executor, Semaphore permits, long timeoutMillis,
+                            long retryAfterSeconds, MeterRegistry meterRegistry) {
+        this.name = name;
+        this.executor = executor;
+        this.permits = permits;
+        this.timeoutMillis = timeoutMillis;
+        this.retryAfterSeconds = retryAfterSeconds;
+        new ExecutorServiceMetrics(executor, name, Tags.empty()).bindTo(meterRegistry);
+        this.rejections = Counter.builder("user.executor.rejected")
+                .description("work refused because the executor's queue, or its in-flight limit, was full")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.timeouts = Counter.builder("user.executor.timeouts")
+                .description("work that didn't complete within the executor's timeout")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Requires virtual threads, see {@link VirtualThreads#isSupported()}.
+     */
+    public static BoundedExecutor virtual(String name, int maxInFlight, long timeoutMillis, long retryAfterSeconds,
+                                          MeterRegistry meterRegistry) {
+        var permits = new Semaphore(maxInFlight);
+        Gauge.builder("user.executor.in.flight", permits, available -> maxInFlight - available.availablePermits())
+                .description("work started or waiting on a virtual thread")
+                .tag("name", name)
+                .register(meterRegistry);
+        return new BoundedExecutor(name, VirtualThreads.newThreadPerTaskExecutor(name + "-"), permits, timeoutMillis,
+                retryAfterSeconds, meterRegistry);
+    }
+
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        if (permits != null && !permits.tryAcquire()) {
+            return rejected();
+        }
+        var future = new CompletableFuture<T>();
+        try {
+            executor.execute(taskDecorator.decorate(() -> {
+                try {
+                    if (!future.isDone()) {
+                        future.complete(task.call());
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    release();
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            release();
+            return rejected();
+        }
+        return future.orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).handle((result, e) -> {
+            if (e instanceof TimeoutException) {
+                timeouts.increment();
+                throw new CompletionException(new TimeoutException(name + " work didn't complete within " + timeoutMillis + "ms"));
+            }
+            if (e != null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return result;
+        });
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private <T> CompletableFuture<T> rejected() {
+        rejections.increment();
+        return CompletableFuture.failedFuture(new ExecutorSaturatedException(
+                "too many " + name + " requests in progress, retry in " + retryAfterSeconds + "s", retryAfterSeconds));
+    }
+
+    private void release() {
+        if (permits != null) {
+            permits.release();
+        }
+    }
+
+    private static ThreadPoolExecutor fixedPool(String name, int threads, int queueCapacity) {
+        var threadFactory = new CustomizableThreadFactory(name + "-");
+        threadFactory.setDaemon(true);
+        return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+}
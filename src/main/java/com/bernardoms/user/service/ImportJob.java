@@ -0,0 +1,71 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.dto.ImportJobStatus;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Progress of one import, updated by every pipeline stage. Only the first {@code maxErrors} line errors are kept;
+ * the rest are only counted.
+ */
+class ImportJob {
+    private final String id;
+    private final int maxErrors;
+    private final Instant startedAt = Instant.now();
+    private final AtomicLong linesRead = new AtomicLong();
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final List<ImportJobStatus.LineError> errors = new ArrayList<>();
+
+    private volatile ImportJobStatus.State state = ImportJobStatus.State.RUNNING;
+    private volatile Instant finishedAt;
+
+    ImportJob(String id, int maxErrors) {
+        this.id = id;
+        this.maxErrors = maxErrors;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    void lineRead() {
+        linesRead.incrementAndGet();
+    }
+
+    void created(long count) {
+        created.addAndGet(count);
+    }
+
+    void failed(long line, String description) {
+        failed.incrementAndGet();
+        synchronized (errors) {
+            if (errors.size() < maxErrors) {
+                errors.add(new ImportJobStatus.LineError(line, description));
+            }
+        }
+    }
+
+    boolean isRunning() {
+        return state == ImportJobStatus.State.RUNNING;
+    }
+
+    void finish(ImportJobStatus.State finalState) {
+        if (isRunning()) {
+            finishedAt = Instant.now();
+            state = finalState;
+        }
+    }
+
+    ImportJobStatus toStatus() {
+        List<ImportJobStatus.LineError> errorsSnapshot;
+        synchronized (errors) {
+            errorsSnapshot = List.copyOf(errors);
+        }
+        return new ImportJobStatus(id, state, linesRead.get(), created.get(), failed.get(), errorsSnapshot,
+                startedAt.toString(), finishedAt == null ? null : finishedAt.toString());
+    }
+}
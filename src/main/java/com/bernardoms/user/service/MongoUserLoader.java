@@ -0,0 +1,34 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserLoader;
+import com.bernardoms.user.dto.UserDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs {@link UserQueryService} reads on the bounded {@code mongo} executor, so a saturated pool refuses cache loads
+ * with the same 503 as any other mongo work.
+ */
+@Component
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class MongoUserLoader implements UserLoader {
+    private final UserQueryService userQueryService;
+    private final BoundedExecutor mongoExecutor;
+
+    @Override
+    public CompletableFuture<Optional<UserDTO>> load(String nickname) {
+        return mongoExecutor.submit(() -> userQueryService.findPublicUserByNickname(nickname));
+    }
+
+    @Override
+    public CompletableFuture<List<UserDTO>> loadAll(Collection<String> nicknames) {
+        return mongoExecutor.submit(() -> userQueryService.findPublicUsersByNicknames(nicknames));
+    }
+}
@@ -0,0 +1,57 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.model.User;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+@Component
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class MongoUserStore implements UserStore {
+    private final MongoOperations mongoOperations;
+
+    @Override
+    public List<User> find(Query query) {
+        return mongoOperations.find(query, User.class);
+    }
+
+    @Override
+    public long updateMulti(Query query, Update update) {
+        return mongoOperations.updateMulti(query, update, User.class).getModifiedCount();
+    }
+
+    @Override
+    public void updateFirst(Query query, Update update) {
+        mongoOperations.updateFirst(query, update, User.class);
+    }
+
+    @Override
+    public Set<String> findExistingNicknames(Collection<String> nicknames) {
+        return mongoOperations.find(existingNicknames(nicknames), Document.class, mongoOperations.getCollectionName(User.class)).stream()
+                .map(document -> document.getString(UserService.NICKNAME))
+                .collect(Collectors.toSet());
+    }
+
+    @Override
+    public void insertUnordered(List<User> users) {
+        mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class).insert(users).execute();
+    }
+
+    static Query existingNicknames(Collection<String> nicknames) {
+        var query = new Query(Criteria.where(UserService.NICKNAME).in(nicknames));
+        query.fields().include(UserService.NICKNAME).exclude("_id");
+        return query;
+    }
+}
@@ -0,0 +1,90 @@
+package com.bernardoms.user.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Splits a byte stream into lines without decoding it, keeping at most {@code maxLineLength} bytes of a line so a
+ * malformed upload can't grow the heap. Bytes past the limit are skipped and the line is flagged as too long.
+ */
+class NdjsonLineReader {
+    private final InputStream inputStream;
+    private final int maxLineLength;
+    private final byte[] buffer = new byte[8192];
+    private int position;
+    private int limit;
+
+    private byte[] line = new byte[512];
+    private int lineLength;
+    private boolean tooLong;
+    private long lineNumber;
+
+    NdjsonLineReader(InputStream inputStream, int maxLineLength) {
+        this.inputStream = inputStream;
+        this.maxLineLength = maxLineLength;
+    }
+
+    /**
+     * Advances to the next line, returning false at the end of the stream.
+     */
+    boolean next() throws IOException {
+        lineLength = 0;
+        tooLong = false;
+        boolean read = false;
+        while (true) {
+            if (position == limit) {
+                limit = Math.max(inputStream.read(buffer), 0);
+                position = 0;
+                if (limit == 0) {
+                    if (read) {
+                        lineNumber++;
+                    }
+                    return read;
+                }
+            }
+            read = true;
+            byte next = buffer[position++];
+            if (next == '\n') {
+                lineNumber++;
+                if (lineLength > 0 && line[lineLength - 1] == '\r') {
+                    lineLength--;
+                }
+                return true;
+            }
+            if (lineLength == maxLineLength) {
+                tooLong = true;
+            } else {
+                if (lineLength == line.length) {
+                    line = Arrays.copyOf(line, Math.min(line.length * 2, maxLineLength));
+                }
+                line[lineLength++] = next;
+            }
+        }
+    }
+
+    byte[] line() {
+        return line;
+    }
+
+    int lineLength() {
+        return lineLength;
+    }
+
+    boolean isTooLong() {
+        return tooLong;
+    }
+
+    boolean isBlank() {
+        for (int i = 0; i < lineLength; i++) {
+            if (!Character.isWhitespace(line[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    long lineNumber() {
+        return lineNumber;
+    }
+}
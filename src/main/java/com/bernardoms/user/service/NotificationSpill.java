@@ -0,0 +1,185 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Local file holding change events that couldn't go to SNS while the circuit breaker was open, one JSON line each,
+ * written with {@code DSYNC} so an acknowledged spill survives a crash. Replay first moves the file aside, so new
+ * spills never mix with the lines being replayed, and a replay interrupted by a restart resumes from that file.
+ * Appends hold a lock rather than a monitor, so a virtual thread waiting on the disk doesn't pin its carrier.
+ */
+class NotificationSpill {
+    private final Path spillFile;
+    private final Path replayFile;
+    private final ObjectMapper objectMapper;
+    private final AtomicLong size = new AtomicLong();
+    private final ReentrantLock appendLock = new ReentrantLock();
+
+    NotificationSpill(Path spillFile, ObjectMapper objectMapper) {
+        this.spillFile = spillFile;
+        this.replayFile = spillFile.resolveSibling(spillFile.getFileName() + ".replay");
+        this.objectMapper = objectMapper;
+        try {
+            Files.createDirectories(spillFile.toAbsolutePath().getParent());
+            size.set(countLines(spillFile) + countLines(replayFile));
+        } catch (IOException e) {
+            throw new UncheckedIOException("failed to open notification spill " + spillFile, e);
+        }
+    }
+
+    void append(String key, UserChangeEvent event) throws IOException {
+        append(List.of(new SpilledNotification(key, event)));
+    }
+
+    long size() {
+        return size.get();
+    }
+
+    long sizeInBytes() throws IOException {
+        return (Files.exists(spillFile) ? Files.size(spillFile) : 0) + (Files.exists(replayFile) ? Files.size(replayFile) : 0);
+    }
+
+    /**
+     * Hands the spilled notifications to {@code sender}, one first and then in chunks of {@code chunkSize}, and stops
+     * at the first chunk it returns any of as unsent. A first notification refused leaves the spill as it was, so a
+     * replay that finds SNS still down costs a single attempt; a later chunk refused is kept, with the lines not read
+     * yet, for the next replay.
+     */
+    void replay(int chunkSize, Function<List<SpilledNotification>, List<SpilledNotification>> sender) throws IOException {
+        appendLock.lock();
+        try {
+            if (!Files.exists(replayFile)) {
+                if (!Files.exists(spillFile)) {
+                    return;
+                }
+                Files.move(spillFile, replayFile, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } finally {
+            appendLock.unlock();
+        }
+        var remainingFile = replayFile.resolveSibling(replayFile.getFileName() + ".remaining");
+        var kept = false;
+        try (BufferedReader reader = Files.newBufferedReader(replayFile, StandardCharsets.UTF_8)) {
+            var chunk = new ArrayList<SpilledNotification>(chunkSize);
+            var firstChunk = true;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank()) {
+                    chunk.add(objectMapper.readValue(line, SpilledNotification.class));
+                }
+                if (chunk.size() == (firstChunk ? 1 : chunkSize)) {
+                    var unsent = send(chunk, sender);
+                    if (!unsent.isEmpty()) {
+                        if (firstChunk) {
+                            return;
+                        }
+                        keep(unsent, reader, remainingFile);
+                        kept = true;
+                        break;
+                    }
+                    firstChunk = false;
+                    chunk.clear();
+                }
+            }
+            if (!kept) {
+                var unsent = send(chunk, sender);
+                if (!unsent.isEmpty()) {
+                    keep(unsent, reader, remainingFile);
+                    kept = true;
+                }
+            }
+        }
+        if (kept) {
+            Files.move(remainingFile, replayFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } else {
+            Files.delete(replayFile);
+        }
+    }
+
+    private List<SpilledNotification> send(List<SpilledNotification> chunk,
+                                           Function<List<SpilledNotification>, List<SpilledNotification>> sender) {
+        if (chunk.isEmpty()) {
+            return List.of();
+        }
+        var unsent = sender.apply(chunk);
+        size.addAndGet(unsent.size() - chunk.size());
+        return unsent;
+    }
+
+    /**
+     * Writes what a replay didn't get through, followed by the lines it hadn't read, to {@code remainingFile}.
+     */
+    private void keep(List<SpilledNotification> unsent, BufferedReader unread, Path remainingFile) throws IOException {
+        try (var writer = Files.newBufferedWriter(remainingFile, StandardCharsets.UTF_8)) {
+            for (var notification : unsent) {
+                writer.write(objectMapper.writeValueAsString(notification));
+                writer.write('\n');
+            }
+            String line;
+            while ((line = unread.readLine()) != null) {
+                if (!line.isBlank()) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        }
+        try (var channel = FileChannel.open(remainingFile, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+    }
+
+    private void append(List<SpilledNotification> notifications) throws IOException {
+        if (notifications.isEmpty()) {
+            return;
+        }
+        var lines = new StringBuilder();
+        for (var notification : notifications) {
+            lines.append(objectMapper.writeValueAsString(notification)).append('\n');
+        }
+        appendLock.lock();
+        try {
+            Files.writeString(spillFile, lines, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND, StandardOpenOption.DSYNC);
+            size.addAndGet(notifications.size());
+        } finally {
+            appendLock.unlock();
+        }
+    }
+
+    private static long countLines(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (Stream<String> lines = Files.lines(file, StandardCharsets.UTF_8)) {
+            return lines.filter(line -> !line.isBlank()).count();
+        }
+    }
+
+    @Getter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    static class SpilledNotification {
+        private String key;
+        private UserChangeEvent event;
+    }
+}
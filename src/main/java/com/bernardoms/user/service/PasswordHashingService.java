@@ -0,0 +1,109 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.filter.MDCTaskDecorator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs password hashing on its own core-sized pool so a burst of writes can't take every request thread's CPU from
+ * the reads. Once {@code user.hashing.queue-capacity} hashes are waiting, new ones are refused straight away instead
+ * of queueing request threads behind them.
+ */
+@Service
+@Slf4j
+public class PasswordHashingService {
+    private final PasswordEncoder passwordEncoder;
+    private final ThreadPoolExecutor hashingExecutor;
+    private final TaskDecorator taskDecorator = new MDCTaskDecorator();
+    private final long retryAfterSeconds;
+    private final Timer hashTimer;
+    private final Counter rejections;
+
+    public PasswordHashingService(PasswordEncoder passwordEncoder,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${user.hashing.threads:0}") int threads,
+                                  @Value("${user.hashing.queue-capacity:64}") int queueCapacity,
+                                  @Value("${user.hashing.retry-after-seconds:1}") long retryAfterSeconds) {
+        this.passwordEncoder = passwordEncoder;
+        this.retryAfterSeconds = retryAfterSeconds;
+        var poolSize = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        var threadFactory = new CustomizableThreadFactory("password-hashing-");
+        threadFactory.setDaemon(true);
+        this.hashingExecutor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+        this.hashTimer = Timer.builder("user.password.hashing")
+                .description("time spent hashing a password, excluding the wait in queue")
+                .register(meterRegistry);
+        this.rejections = Counter.builder("user.password.hashing.rejected")
+                .description("hashes refused because the queue was full")
+                .register(meterRegistry);
+        Gauge.builder("user.password.hashing.queue.depth", hashingExecutor, executor -> executor.getQueue().size())
+                .description("hashes waiting for a hashing thread")
+                .register(meterRegistry);
+        new ExecutorServiceMetrics(hashingExecutor, "password-hashing", Tags.empty()).bindTo(meterRegistry);
+    }
+
+    public String encode(String rawPassword) throws PasswordHashingRejectedException {
+        try {
+            return hashingExecutor.submit(() -> hashTimer.record(() -> passwordEncoder.encode(rawPassword))).get();
+        } catch (RejectedExecutionException e) {
+            throw rejected();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while hashing password", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to hash password", e.getCause());
+        }
+    }
+
+    private PasswordHashingRejectedException rejected() {
+        rejections.increment();
+        return new PasswordHashingRejectedException("too many password changes in progress, retry in " + retryAfterSeconds + "s", retryAfterSeconds);
+    }
+
+    /**
+     * Like {@link #encode} without blocking the caller; a full queue fails the future with
+     * {@link PasswordHashingRejectedException}. The queue bound also caps how long a hash can wait, so there is no
+     * timeout on top of it.
+     */
+    public CompletableFuture<String> encodeAsync(String rawPassword) {
+        try {
+            return CompletableFuture.supplyAsync(() -> hashTimer.record(() -> passwordEncoder.encode(rawPassword)),
+                    command -> hashingExecutor.execute(taskDecorator.decorate(command)));
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(rejected());
+        }
+    }
+
+    /**
+     * Hashes that can run at once; bulk callers keep at most this many in flight so the queue stays free for single
+     * writes.
+     */
+    public int getThreads() {
+        return hashingExecutor.getMaximumPoolSize();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        hashingExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,61 @@
+package com.bernardoms.user.service;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code /actuator/queryshapes}: the plan {@link QueryShapeGuard} explained for every users query shape seen so far and
+ * the latency of its reads. Forgetting the plans so they are explained again is only exposed over JMX, by
+ * {@link QueryShapeJmxEndpointExtension}.
+ */
+@Component
+@Profile("!reactive")
+@Endpoint(id = "queryshapes")
+@RequiredArgsConstructor
+public class QueryShapeEndpoint {
+    private final QueryShapeGuard queryShapeGuard;
+
+    @ReadOperation
+    public QueryShapesDescriptor shapes() {
+        var shapes = new TreeMap<String, ShapeDescriptor>();
+        queryShapeGuard.getShapes().forEach(shape -> shapes.put(shape.getShape(), ShapeDescriptor.builder()
+                .plan(shape.getPlan())
+                .collectionScan(shape.isCollectionScan())
+                .reads(shape.getTimer().count())
+                .meanMillis(shape.getTimer().mean(TimeUnit.MILLISECONDS))
+                .maxMillis(shape.getTimer().max(TimeUnit.MILLISECONDS))
+                .rejected((long) shape.getRejections().count())
+                .build()));
+        return QueryShapesDescriptor.builder()
+                .collectionScanPolicy(queryShapeGuard.getPolicy())
+                .shapes(shapes)
+                .build();
+    }
+
+    @Getter
+    @Builder
+    public static class QueryShapesDescriptor {
+        private final QueryShapeGuard.Policy collectionScanPolicy;
+        private final Map<String, ShapeDescriptor> shapes;
+    }
+
+    @Getter
+    @Builder
+    public static class ShapeDescriptor {
+        private final String plan;
+        private final boolean collectionScan;
+        private final long reads;
+        private final double meanMillis;
+        private final double maxMillis;
+        private final long rejected;
+    }
+}
@@ -0,0 +1,171 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.exception.UnindexedQueryException;
+import com.bernardoms.user.model.User;
+import com.mongodb.MongoExecutionTimeoutException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.Getter;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Explains each new shape of user query (the fields it filters on and sorts by, not their values) once, and keeps the
+ * winning plan. A shape that scans the whole collection is refused with {@link UnindexedQueryException} under the
+ * {@code REJECT} policy, or under {@code MAX_TIME} runs with {@code user.query-shape.max-time-millis} as its
+ * {@code maxTimeMS} and fails with a {@link TimeoutException} when mongo stops it. An unfiltered listing is neither
+ * refused nor capped, there is no index to choose for it and its exact count has always scanned the whole collection.
+ * Reads of each shape are timed as {@code user.query.shape}.
+ */
+@Component
+@Profile("!reactive")
+public class QueryShapeGuard {
+    public enum Policy {REJECT, MAX_TIME}
+
+    private final MongoOperations mongoOperations;
+    private final MeterRegistry meterRegistry;
+    private final Policy policy;
+    private final long maxTimeMillis;
+    private final Map<String, QueryShape> shapes = new ConcurrentHashMap<>();
+
+    public QueryShapeGuard(MongoOperations mongoOperations,
+                           MeterRegistry meterRegistry,
+                           @Value("${user.query-shape.collection-scan:MAX_TIME}") Policy policy,
+                           @Value("${user.query-shape.max-time-millis:2000}") long maxTimeMillis) {
+        this.mongoOperations = mongoOperations;
+        this.meterRegistry = meterRegistry;
+        this.policy = policy;
+        this.maxTimeMillis = maxTimeMillis;
+    }
+
+    /**
+     * @return the query's shape, after applying the policy to the query if the shape scans the collection
+     */
+    public QueryShape check(Query query) throws UnindexedQueryException {
+        var shape = shapeFor(query);
+        if (!shape.isCollectionScan() || query.getQueryObject().isEmpty()) {
+            return shape;
+        }
+        if (policy == Policy.REJECT) {
+            shape.rejections.increment();
+            throw new UnindexedQueryException("filtering users on " + shape.getShape() + " is not supported by an index,"
+                    + " add the nickname or email to the filter");
+        }
+        query.maxTimeMsec(maxTimeMillis);
+        return shape;
+    }
+
+    public <T> T read(QueryShape shape, Supplier<T> read) throws TimeoutException {
+        try {
+            return shape.timer.record(read);
+        } catch (DataAccessException e) {
+            if (e.getCause() instanceof MongoExecutionTimeoutException) {
+                throw new TimeoutException("users query on " + shape.getShape() + " didn't complete within " + maxTimeMillis + "ms");
+            }
+            throw e;
+        }
+    }
+
+    public Collection<QueryShape> getShapes() {
+        return shapes.values();
+    }
+
+    /**
+     * Forgets every plan, so each shape is explained again on its next read; for after indexes change.
+     */
+    public void forgetShapes() {
+        shapes.clear();
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * The explain is a round trip to mongo, so it runs outside the map rather than holding a bin lock in
+     * {@code computeIfAbsent}; two first reads of a shape may both explain it, and the first plan stored wins.
+     */
+    private QueryShape shapeFor(Query query) {
+        var key = shapeOf(query);
+        var shape = shapes.get(key);
+        if (shape != null) {
+            return shape;
+        }
+        var explained = explain(key, query);
+        var stored = shapes.putIfAbsent(key, explained);
+        return stored == null ? explained : stored;
+    }
+
+    static String shapeOf(Query query) {
+        var shape = new TreeSet<>(query.getQueryObject().keySet()).toString();
+        return query.getSortObject().isEmpty() ? shape : shape + " sort " + query.getSortObject().keySet();
+    }
+
+    private QueryShape explain(String shape, Query query) {
+        var find = new Document("find", mongoOperations.getCollectionName(User.class))
+                .append("filter", query.getQueryObject())
+                .append("sort", query.getSortObject());
+        var explain = mongoOperations.executeCommand(new Document("explain", find).append("verbosity", "queryPlanner"));
+        var winningPlan = explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+
+        var stages = new ArrayList<String>();
+        collectStages(winningPlan.containsKey("queryPlan") ? winningPlan.get("queryPlan", Document.class) : winningPlan, stages);
+        var timer = Timer.builder("user.query.shape")
+                .description("users reads by the fields they filter on")
+                .tag("shape", shape)
+                .register(meterRegistry);
+        var rejections = Counter.builder("user.query.shape.rejected")
+                .description("users reads refused because their shape scans the collection")
+                .tag("shape", shape)
+                .register(meterRegistry);
+        return new QueryShape(shape, String.join(" <- ", stages), stages.stream().anyMatch(stage -> stage.startsWith("COLLSCAN")),
+                timer, rejections);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void collectStages(Document stage, List<String> stages) {
+        var indexName = stage.getString("indexName");
+        stages.add(indexName == null ? stage.getString("stage") : stage.getString("stage") + "(" + indexName + ")");
+        if (stage.containsKey("inputStage")) {
+            collectStages(stage.get("inputStage", Document.class), stages);
+        }
+        if (stage.containsKey("inputStages")) {
+            ((List<Document>) stage.get("inputStages")).forEach(input -> collectStages(input, stages));
+        }
+        if (stage.containsKey("shards")) {
+            ((List<Document>) stage.get("shards")).forEach(shard -> collectStages(shard.get("winningPlan", Document.class), stages));
+        }
+    }
+
+    @Getter
+    public static class QueryShape {
+        private final String shape;
+        private final String plan;
+        private final boolean collectionScan;
+        private final Timer timer;
+        private final Counter rejections;
+
+        QueryShape(String shape, String plan, boolean collectionScan, Timer timer, Counter rejections) {
+            this.shape = shape;
+            this.plan = plan;
+            this.collectionScan = collectionScan;
+            this.timer = timer;
+            this.rejections = rejections;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.bernardoms.user.service;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.jmx.annotation.EndpointJmxExtension;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Adds the {@code forget} operation to the {@code queryshapes} endpoint over JMX only, so every plan can't be dropped
+ * through the unauthenticated web actuator. Needs {@code spring.jmx.enabled=true}.
+ */
+@Component
+@Profile("!reactive")
+@EndpointJmxExtension(endpoint = QueryShapeEndpoint.class)
+@RequiredArgsConstructor
+public class QueryShapeJmxEndpointExtension {
+    private final QueryShapeGuard queryShapeGuard;
+
+    @DeleteOperation
+    public void forget() {
+        queryShapeGuard.forgetShapes();
+    }
+}
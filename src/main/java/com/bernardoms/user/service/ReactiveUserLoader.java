@@ -0,0 +1,36 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserLoader;
+import com.bernardoms.user.dto.UserDTO;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * {@link UserLoader} for the {@code reactive} profile: loads complete on the reactive driver's threads, so no thread
+ * waits on mongo for them.
+ */
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserLoader implements UserLoader {
+    private final ReactiveUserQueryService reactiveUserQueryService;
+
+    @Override
+    public CompletableFuture<Optional<UserDTO>> load(String nickname) {
+        return reactiveUserQueryService.findPublicUserByNickname(nickname)
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<List<UserDTO>> loadAll(Collection<String> nicknames) {
+        return reactiveUserQueryService.findPublicUsersByNicknames(nicknames).collectList().toFuture();
+    }
+}
@@ -0,0 +1,110 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.converter.UserDTOReadConverter;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidCursorException;
+import com.bernardoms.user.model.CountMode;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.model.UserFilter;
+import com.github.benmanes.caffeine.cache.AsyncCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+
+/**
+ * {@link UserQueryService} for the {@code reactive} profile: the same queries and page shapes, run on
+ * {@link ReactiveMongoOperations} so no thread waits on mongo.
+ */
+@Service
+@Profile("reactive")
+public class ReactiveUserQueryService {
+    private final ReactiveMongoOperations reactiveMongoOperations;
+
+    private final AsyncCache<String, Long> estimatedCountCache = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(UserQueryService.ESTIMATED_COUNT_TTL)
+            .buildAsync();
+
+    public ReactiveUserQueryService(ReactiveMongoOperations reactiveMongoOperations) {
+        this.reactiveMongoOperations = reactiveMongoOperations;
+    }
+
+    public Mono<UserDTO> findPublicUserByNickname(String nickname) {
+        return findPublicUsers(new Query(Criteria.where("nickname").is(nickname))).next();
+    }
+
+    public Flux<UserDTO> findPublicUsersByNicknames(Collection<String> nicknames) {
+        return findPublicUsers(new Query(Criteria.where("nickname").in(nicknames)));
+    }
+
+    /**
+     * Counts and reads the page at the same time, from two copies of the query since the read adds paging to it.
+     */
+    public Mono<Page<UserDTO>> returnPageableFilteredUser(UserFilter userFilter) {
+        var pageable = PageRequest.of(userFilter.getOffset(), userFilter.getLimit(), Sort.unsorted());
+
+        var count = countFilteredUser(UserQueryService.buildQuery(userFilter), userFilter.getCount());
+
+        var users = findPublicUsers(UserQueryService.buildQuery(userFilter).with(pageable)).collectList();
+
+        return Mono.zip(count, users, (total, content) -> new PageImpl<>(content, pageable, total));
+    }
+
+    public Mono<Slice<UserDTO>> returnSlicedFilteredUser(UserFilter userFilter) {
+        var query = UserQueryService.buildQuery(userFilter);
+
+        var pageable = PageRequest.of(userFilter.getOffset(), userFilter.getLimit(), Sort.unsorted());
+
+        query.skip(pageable.getOffset()).limit(pageable.getPageSize() + 1);
+
+        return findPublicUsers(query).collectList().map(users -> UserQueryService.sliceOf(users, pageable));
+    }
+
+    public Mono<CursorPage<UserDTO>> returnCursorFilteredUser(UserFilter userFilter) {
+        Query query;
+        try {
+            query = UserQueryService.buildCursorQuery(userFilter);
+        } catch (InvalidCursorException e) {
+            return Mono.error(e);
+        }
+
+        return findPublicDocuments(query).collectList().map(documents -> UserQueryService.cursorPageOf(documents, userFilter.getLimit()));
+    }
+
+    private Mono<Long> countFilteredUser(Query query, CountMode countMode) {
+        if (countMode != CountMode.ESTIMATED) {
+            return reactiveMongoOperations.count(query, User.class);
+        }
+
+        if (query.getQueryObject().isEmpty()) {
+            return reactiveMongoOperations.getCollection(reactiveMongoOperations.getCollectionName(User.class))
+                    .flatMap(collection -> Mono.from(collection.estimatedDocumentCount()));
+        }
+
+        return Mono.fromFuture(estimatedCountCache.get(query.getQueryObject().toJson(),
+                (key, executor) -> reactiveMongoOperations.count(query, User.class).toFuture()));
+    }
+
+    private Flux<UserDTO> findPublicUsers(Query query) {
+        return findPublicDocuments(query).map(UserDTOReadConverter.INSTANCE::convert);
+    }
+
+    private Flux<Document> findPublicDocuments(Query query) {
+        return reactiveMongoOperations.find(UserQueryService.publicFields(query), Document.class,
+                reactiveMongoOperations.getCollectionName(User.class));
+    }
+}
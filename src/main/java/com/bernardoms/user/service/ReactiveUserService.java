@@ -0,0 +1,191 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.model.UserFilter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+
+/**
+ * {@link UserService} for the {@code reactive} profile, with the same writes, errors and cache updates. Mongo is
+ * reached through {@link ReactiveMongoOperations} and password hashing completes on its own pool, so a request only
+ * holds a thread while it is doing work. {@link UserCache} loads through {@link ReactiveUserLoader} too, so the profile
+ * opens no blocking mongo client.
+ */
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveUserService {
+    private final ReactiveMongoOperations reactiveMongoOperations;
+    private final ReactiveUserQueryService reactiveUserQueryService;
+    private final UserMapper userMapper;
+    private final PasswordHashingService passwordHashingService;
+    private final UserOutboxService userOutboxService;
+    private final UserNotFoundCache userNotFoundCache;
+    private final UserCache userCache;
+
+    public Mono<UserDTO> getByNickName(String nickName) {
+        return Mono.fromFuture(userCache.getAsync(nickName))
+                .switchIfEmpty(Mono.defer(() -> Mono.error(new UserNotFoundException("user with nick name " + nickName + " not found!"))));
+    }
+
+    public Mono<Page<UserDTO>> getUsers(UserFilter userFilter) {
+        return reactiveUserQueryService.returnPageableFilteredUser(userFilter);
+    }
+
+    public Mono<Slice<UserDTO>> getUsersWithoutCount(UserFilter userFilter) {
+        return reactiveUserQueryService.returnSlicedFilteredUser(userFilter);
+    }
+
+    public Mono<CursorPage<UserDTO>> getUsersByCursor(UserFilter userFilter) {
+        return reactiveUserQueryService.returnCursorFilteredUser(userFilter);
+    }
+
+    public Mono<String> saveUser(UserDTO userDTO) {
+        return encode(userDTO.getPassword())
+                .flatMap(passwordHash -> {
+                    userDTO.setPassword(passwordHash);
+                    return reactiveMongoOperations.insert(userMapper.toUser(userDTO));
+                })
+                .onErrorMap(DuplicateKeyException.class, e -> nicknameConflictOrSame(e, userDTO.getNickname()))
+                .map(savedUser -> {
+                    userNotFoundCache.invalidate(savedUser.getNickname());
+                    userCache.put(userMapper.toPublicUserDTO(savedUser));
+                    return savedUser.getNickname();
+                });
+    }
+
+    public Mono<Void> deleteUser(String nickname) {
+        return reactiveMongoOperations.remove(byNickname(nickname), User.class)
+                .doOnNext(result -> {
+                    userCache.invalidate(nickname);
+                    log.info("user " + nickname + " deleted!");
+                })
+                .then();
+    }
+
+    /**
+     * See {@link UserService#updateUser(String, UserDTO)}: nothing is hashed for a nickname known to be missing.
+     */
+    public Mono<Void> updateUser(String nickname, UserDTO userDTO) {
+        return unlessMissing(nickname)
+                .flatMap(unused -> encode(userDTO.getPassword()))
+                .flatMap(passwordHash -> {
+                    userDTO.setPassword(passwordHash);
+                    var stored = Mono.justOrEmpty(userCache.getIfPresent(nickname)).switchIfEmpty(storedUser(nickname));
+                    return replace(nickname, userDTO, userMapper.toUser(userDTO), stored);
+                })
+                .doOnNext(savedUser -> cacheSavedUser(nickname, savedUser))
+                .then();
+    }
+
+    /**
+     * See {@link UserService#patchUser}.
+     */
+    public Mono<Void> patchUser(String nickname, UserPatchDTO userPatchDTO) {
+        var passwordHash = userPatchDTO.getPassword() == null
+                ? Mono.just(Optional.<String>empty())
+                : unlessMissing(nickname).flatMap(unused -> encode(userPatchDTO.getPassword())).map(Optional::of);
+        return passwordHash
+                .flatMap(hash -> {
+                    var changes = UserService.patchedFields(userPatchDTO, hash.orElse(null));
+                    var update = UserService.changesOf(changes);
+                    if (update.getUpdateObject().isEmpty()) {
+                        return Mono.<User>empty();
+                    }
+                    userOutboxService.queue(update.inc(UserService.VERSION, 1), nickname, changes);
+                    return modifyByNickname(nickname, update)
+                            .onErrorMap(DuplicateKeyException.class, e -> nicknameConflictOrSame(e, userPatchDTO.getNickname()));
+                })
+                .doOnNext(savedUser -> cacheSavedUser(nickname, savedUser))
+                .then();
+    }
+
+    /**
+     * Empty when the nickname is known to be missing, so the writes chained on it, hashing included, are skipped.
+     */
+    private Mono<String> unlessMissing(String nickname) {
+        return Mono.fromSupplier(() -> userNotFoundCache.isMissing(nickname) ? null : nickname);
+    }
+
+    /**
+     * See {@link UserService#updateUser(String, UserDTO, String)}: writes only over the version of the stored user the
+     * changes were found against, reading it again and retrying if another write got in first.
+     */
+    private Mono<User> replace(String nickname, UserDTO userDTO, User replacement, Mono<UserDTO> stored) {
+        return stored.flatMap(user -> {
+            var update = UserService.replacementOf(replacement);
+            userOutboxService.queue(update, nickname, UserService.changedFields(user, userDTO));
+            return reactiveMongoOperations.findAndModify(UserService.byNicknameAndVersion(nickname, user.getVersion()), update,
+                    FindAndModifyOptions.options().returnNew(true), User.class)
+                    .switchIfEmpty(Mono.defer(() -> replace(nickname, userDTO, replacement, storedUser(nickname))));
+        });
+    }
+
+    private Mono<UserDTO> storedUser(String nickname) {
+        return Mono.defer(() -> Mono.fromFuture(userNotFoundCache.findAsync(nickname, key -> reactiveUserQueryService.findPublicUserByNickname(key)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .toFuture())))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * See {@link UserService}: applies {@code update} to the user with {@code nickname}, remembering a nickname it
+     * doesn't find.
+     */
+    private Mono<User> modifyByNickname(String nickname, Update update) {
+        return Mono.defer(() -> Mono.fromFuture(userNotFoundCache.findAsync(nickname, key -> reactiveMongoOperations
+                        .findAndModify(byNickname(key), update, FindAndModifyOptions.options().returnNew(true), User.class)
+                        .map(Optional::of)
+                        .defaultIfEmpty(Optional.empty())
+                        .toFuture())))
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    private Mono<String> encode(String rawPassword) {
+        return Mono.defer(() -> Mono.fromFuture(passwordHashingService.encodeAsync(rawPassword)));
+    }
+
+    private void cacheSavedUser(String nickname, User savedUser) {
+        userNotFoundCache.invalidate(savedUser.getNickname());
+        if (!nickname.equals(savedUser.getNickname())) {
+            userCache.invalidate(nickname);
+        }
+        if (savedUser.getNickname() != null) {
+            userCache.put(userMapper.toPublicUserDTO(savedUser));
+        }
+    }
+
+    private static Query byNickname(String nickname) {
+        return new Query(Criteria.where(UserService.NICKNAME).is(nickname));
+    }
+
+    private static Exception nicknameConflictOrSame(DuplicateKeyException e, String nickname) {
+        if (!UserService.isNicknameConflict(e)) {
+            return e;
+        }
+        return new NicknameAlreadyExistException("user with nick name " + nickname + " already exist!");
+    }
+}
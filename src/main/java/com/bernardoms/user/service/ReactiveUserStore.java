@@ -0,0 +1,74 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.model.User;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.UpdateResult;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * {@link UserStore} on reactive mongo for the {@code reactive} profile. Its callers run on the scheduler and on
+ * {@code boundedElastic}, never on the event loop, so each call waits there for the reactive result.
+ */
+@Component
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveUserStore implements UserStore {
+    private final ReactiveMongoOperations reactiveMongoOperations;
+
+    @Override
+    public List<User> find(Query query) {
+        return reactiveMongoOperations.find(query, User.class).collectList().block();
+    }
+
+    @Override
+    public long updateMulti(Query query, Update update) {
+        return reactiveMongoOperations.updateMulti(query, update, User.class).map(UpdateResult::getModifiedCount).block();
+    }
+
+    @Override
+    public void updateFirst(Query query, Update update) {
+        reactiveMongoOperations.updateFirst(query, update, User.class).block();
+    }
+
+    @Override
+    public Set<String> findExistingNicknames(Collection<String> nicknames) {
+        return reactiveMongoOperations.find(MongoUserStore.existingNicknames(nicknames), Document.class,
+                reactiveMongoOperations.getCollectionName(User.class))
+                .map(document -> document.getString(UserService.NICKNAME))
+                .collect(Collectors.toSet())
+                .block();
+    }
+
+    /**
+     * Writes to the collection directly, as {@link ReactiveMongoOperations} has no unordered bulk insert, and reports
+     * the users that weren't inserted like {@link MongoUserStore} does.
+     */
+    @Override
+    public void insertUnordered(List<User> users) {
+        var documents = users.stream().map(this::toDocument).collect(Collectors.toList());
+        reactiveMongoOperations.getCollection(reactiveMongoOperations.getCollectionName(User.class))
+                .flatMap(collection -> Mono.from(collection.insertMany(documents, new InsertManyOptions().ordered(false))))
+                .onErrorMap(MongoBulkWriteException.class, e -> new BulkOperationException(e.getMessage(), e))
+                .block();
+    }
+
+    private Document toDocument(User user) {
+        var document = new Document();
+        reactiveMongoOperations.getConverter().write(user, document);
+        return document;
+    }
+}
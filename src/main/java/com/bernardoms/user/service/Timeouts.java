@@ -0,0 +1,28 @@
+package com.bernardoms.user.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Bounds the wait on a future that wasn't submitted to a {@link BoundedExecutor}, such as a cache load, like the
+ * executor bounds its own work. The wait is put on a copy, so a load shared with other callers isn't failed with it.
+ */
+final class Timeouts {
+
+    private Timeouts() {
+    }
+
+    static <T> CompletableFuture<T> within(CompletableFuture<T> future, long timeoutMillis, String work) {
+        return future.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).handle((result, e) -> {
+            if (e instanceof TimeoutException) {
+                throw new CompletionException(new TimeoutException(work + " didn't complete within " + timeoutMillis + "ms"));
+            }
+            if (e != null) {
+                throw e instanceof CompletionException ? (CompletionException) e : new CompletionException(e);
+            }
+            return result;
+        });
+    }
+}
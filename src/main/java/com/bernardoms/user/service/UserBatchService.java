@@ -0,0 +1,168 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.BatchItemStatus;
+import com.bernardoms.user.dto.BatchUserResult;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Collectors;
+
+/**
+ * Creates many users at once: one {@code $in} query for taken nicknames, BCrypt through {@link PasswordHashingService}
+ * and a single unordered bulk insert, reporting created, conflict or invalid for every item in request order. Hashes
+ * are sent a pool's worth at a time; if the hashing queue is full anyway the whole batch is refused and nothing is
+ * inserted.
+ */
+@Service
+@Slf4j
+public class UserBatchService {
+    private static final int DUPLICATE_KEY = 11000;
+
+    private final UserMapper userMapper;
+    private final PasswordHashingService passwordHashingService;
+    private final UserStore userStore;
+    private final UserNotFoundCache userNotFoundCache;
+    private final Validator validator;
+    private final int maxSize;
+
+    public UserBatchService(UserMapper userMapper,
+                            PasswordHashingService passwordHashingService,
+                            UserStore userStore,
+                            UserNotFoundCache userNotFoundCache,
+                            Validator validator,
+                            @Value("${user.batch.max-size:10000}") int maxSize) {
+        this.userMapper = userMapper;
+        this.passwordHashingService = passwordHashingService;
+        this.userStore = userStore;
+        this.userNotFoundCache = userNotFoundCache;
+        this.validator = validator;
+        this.maxSize = maxSize;
+    }
+
+    public List<BatchUserResult> saveUsers(List<UserDTO> users) throws InvalidBatchException, PasswordHashingRejectedException {
+        if (users.isEmpty() || users.size() > maxSize) {
+            throw new InvalidBatchException("batch should have between 1 and " + maxSize + " users");
+        }
+
+        var results = new BatchUserResult[users.size()];
+        var candidates = new ArrayList<Integer>();
+        var nicknames = new HashSet<String>();
+        var emails = new HashSet<String>();
+
+        for (int i = 0; i < users.size(); i++) {
+            var userDTO = users.get(i);
+            var violations = userDTO == null ? "user is required" : describe(validator.validate(userDTO));
+            if (violations != null) {
+                results[i] = result(i, userDTO, BatchItemStatus.INVALID, violations);
+            } else if (!nicknames.add(userDTO.getNickname())) {
+                results[i] = result(i, userDTO, BatchItemStatus.CONFLICT, "nick name " + userDTO.getNickname() + " repeated in batch");
+            } else if (userDTO.getEmail() != null && !emails.add(userDTO.getEmail())) {
+                results[i] = result(i, userDTO, BatchItemStatus.CONFLICT, "email " + userDTO.getEmail() + " repeated in batch");
+            } else {
+                candidates.add(i);
+            }
+        }
+
+        var existing = candidates.isEmpty() ? Set.<String>of() : userStore.findExistingNicknames(
+                candidates.stream().map(i -> users.get(i).getNickname()).collect(Collectors.toList()));
+        candidates.removeIf(i -> {
+            var nickname = users.get(i).getNickname();
+            if (existing.contains(nickname)) {
+                results[i] = result(i, users.get(i), BatchItemStatus.CONFLICT, "user with nick name " + nickname + " already exist!");
+                return true;
+            }
+            return false;
+        });
+
+        if (!candidates.isEmpty()) {
+            insert(users, candidates, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    private void insert(List<UserDTO> users, List<Integer> candidates, BatchUserResult[] results) throws PasswordHashingRejectedException {
+        var newUsers = new ArrayList<User>(candidates.size());
+        var window = passwordHashingService.getThreads();
+        for (int from = 0; from < candidates.size(); from += window) {
+            var hashing = candidates.subList(from, Math.min(from + window, candidates.size())).stream()
+                    .map(i -> toUser(users.get(i)))
+                    .collect(Collectors.toList());
+            for (var user : hashing) {
+                newUsers.add(join(user));
+            }
+        }
+
+        var failed = new HashSet<Integer>();
+        try {
+            userStore.insertUnordered(newUsers);
+        } catch (BulkOperationException e) {
+            for (var error : e.getErrors()) {
+                if (error.getCode() != DUPLICATE_KEY) {
+                    throw e;
+                }
+                int i = candidates.get(error.getIndex());
+                failed.add(i);
+                results[i] = result(i, users.get(i), BatchItemStatus.CONFLICT, error.getMessage());
+            }
+        }
+
+        for (int i : candidates) {
+            if (!failed.contains(i)) {
+                results[i] = result(i, users.get(i), BatchItemStatus.CREATED, null);
+                userNotFoundCache.invalidate(users.get(i).getNickname());
+            }
+        }
+        log.info("batch created " + (candidates.size() - failed.size()) + " of " + results.length + " users");
+    }
+
+    private CompletableFuture<User> toUser(UserDTO userDTO) {
+        var user = userMapper.toUser(userDTO);
+        user.setVersion(0L);
+        return passwordHashingService.encodeAsync(userDTO.getPassword()).thenApply(hash -> {
+            user.setPassword(hash);
+            return user;
+        });
+    }
+
+    private static User join(CompletableFuture<User> user) throws PasswordHashingRejectedException {
+        try {
+            return user.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof PasswordHashingRejectedException) {
+                throw (PasswordHashingRejectedException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    private String describe(Set<ConstraintViolation<UserDTO>> violations) {
+        if (violations.isEmpty()) {
+            return null;
+        }
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private BatchUserResult result(int index, UserDTO userDTO, BatchItemStatus status, String description) {
+        return new BatchUserResult(index, userDTO == null ? null : userDTO.getNickname(), status, description);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Locale;
+
+/**
+ * Encodes {@link UserChangeEvent}s in the format picked by {@code user.notify.format}: {@code json}, or {@code cbor}
+ * for a compact binary message that writes the envelope as an array in schema order and is base64 encoded, since SNS
+ * messages have to be text. The writer is built once and Jackson recycles its output buffers per thread, so encoding
+ * only allocates the result.
+ */
+@Component
+public class UserChangeEventEncoder {
+    public enum Format {
+        JSON("application/json"),
+        CBOR("application/cbor");
+
+        private final String contentType;
+
+        Format(String contentType) {
+            this.contentType = contentType;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+    }
+
+    private final Format format;
+    private final ObjectWriter writer;
+
+    public UserChangeEventEncoder(@Value("${user.notify.format:json}") String format) {
+        this.format = Format.valueOf(format.trim().toUpperCase(Locale.ROOT));
+        this.writer = this.format == Format.CBOR
+                ? new ObjectMapper(new CBORFactory()).addMixIn(UserChangeEvent.class, Positional.class).writerFor(UserChangeEvent.class)
+                : new ObjectMapper().writerFor(UserChangeEvent.class);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    public byte[] encode(UserChangeEvent event) throws JsonProcessingException {
+        return writer.writeValueAsBytes(event);
+    }
+
+    /**
+     * @return the event as an SNS message body, base64 encoded when the format is binary
+     */
+    public String encodeToMessage(UserChangeEvent event) throws JsonProcessingException {
+        var encoded = encode(event);
+        return format == Format.JSON ? new String(encoded, StandardCharsets.UTF_8) : Base64.getEncoder().encodeToString(encoded);
+    }
+
+    @JsonFormat(shape = JsonFormat.Shape.ARRAY)
+    private abstract static class Positional {
+    }
+}
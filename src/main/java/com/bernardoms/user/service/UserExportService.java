@@ -0,0 +1,70 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.UserFilter;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes public users as newline-delimited JSON straight from a mongo cursor. Output is flushed once per cursor batch,
+ * and a slow client blocks the write, which stops the cursor from fetching the next batch, so memory stays flat no
+ * matter how many users are exported. An export may take up to {@code user.export.timeout-millis}, an hour by default,
+ * well past the timeout of other requests.
+ */
+@Service
+@Profile("!reactive")
+@Slf4j
+public class UserExportService {
+    private final UserQueryService userQueryService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter userWriter;
+    private final int batchSize;
+    private final long timeoutMillis;
+
+    public UserExportService(UserQueryService userQueryService,
+                             ObjectMapper objectMapper,
+                             @Value("${user.export.batch-size:1000}") int batchSize,
+                             @Value("${user.export.timeout-millis:3600000}") long timeoutMillis) {
+        this.userQueryService = userQueryService;
+        this.objectMapper = objectMapper;
+        this.userWriter = objectMapper.writerFor(UserDTO.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        this.batchSize = batchSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    public long getTimeoutMillis() {
+        return timeoutMillis;
+    }
+
+    public long export(UserFilter userFilter, OutputStream outputStream) throws IOException {
+        long exported = 0;
+        try (var users = userQueryService.streamPublicUsers(userFilter, batchSize);
+             var generator = objectMapper.getFactory().createGenerator(outputStream)) {
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            generator.setRootValueSeparator(null);
+
+            var iterator = users.iterator();
+            while (iterator.hasNext()) {
+                userWriter.writeValue(generator, iterator.next());
+                generator.writeRaw('\n');
+                if (++exported % batchSize == 0) {
+                    generator.flush();
+                }
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        log.info("exported " + exported + " users");
+        return exported;
+    }
+}
@@ -0,0 +1,385 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.ImportJobStatus;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.ImportRejectedException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Service;
+
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users from an NDJSON stream through a pipeline of stages linked by bounded queues: the request thread reads,
+ * parses and validates each line, one worker sends passwords to {@link PasswordHashingService} and one writer
+ * bulk-inserts them. Full queues block the stage before them down to the upload itself, so the heap used doesn't
+ * depend on the file size. Progress and per-line errors are kept as a job that can be polled by id: a running job is
+ * held until it finishes however long it takes, then kept for {@code user.import.retention-minutes}.
+ */
+@Service
+@Profile("!reactive")
+@Slf4j
+public class UserImportService {
+    private static final int DUPLICATE_KEY = 11000;
+    private static final long POLL_MILLIS = 100;
+    private static final ParsedUser END_OF_PARSING = new ParsedUser(-1, null);
+    private static final HashedUser END_OF_HASHING = new HashedUser(-1, null);
+
+    private final ObjectReader userReader;
+    private final Validator validator;
+    private final UserMapper userMapper;
+    private final PasswordHashingService passwordHashingService;
+    private final MongoOperations mongoOperations;
+    private final UserNotFoundCache userNotFoundCache;
+    private final Map<String, ImportJob> runningJobsById = new ConcurrentHashMap<>();
+    private final Cache<String, ImportJob> finishedJobs;
+    private final Semaphore runningJobs;
+    private final int batchSize;
+    private final int queueCapacity;
+    private final int maxLineLength;
+    private final int maxErrors;
+
+    public UserImportService(ObjectMapper objectMapper,
+                             Validator validator,
+                             UserMapper userMapper,
+                             PasswordHashingService passwordHashingService,
+                             MongoOperations mongoOperations,
+                             UserNotFoundCache userNotFoundCache,
+                             @Value("${user.import.batch-size:1000}") int batchSize,
+                             @Value("${user.import.queue-capacity:1000}") int queueCapacity,
+                             @Value("${user.import.max-line-length:65536}") int maxLineLength,
+                             @Value("${user.import.max-errors:1000}") int maxErrors,
+                             @Value("${user.import.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                             @Value("${user.import.retention-minutes:60}") long retentionMinutes) {
+        this.userReader = objectMapper.readerFor(UserDTO.class);
+        this.validator = validator;
+        this.userMapper = userMapper;
+        this.passwordHashingService = passwordHashingService;
+        this.mongoOperations = mongoOperations;
+        this.userNotFoundCache = userNotFoundCache;
+        this.batchSize = batchSize;
+        this.queueCapacity = queueCapacity;
+        this.maxLineLength = maxLineLength;
+        this.maxErrors = maxErrors;
+        this.runningJobs = new Semaphore(maxConcurrentJobs);
+        this.finishedJobs = Caffeine.newBuilder()
+                .expireAfterWrite(Duration.ofMinutes(retentionMinutes))
+                .maximumSize(1_000)
+                .build();
+    }
+
+    /**
+     * Reads the whole stream on the calling thread and returns once it has been consumed; hashing and inserting of
+     * the last lines carry on in the background.
+     */
+    public ImportJobStatus importUsers(InputStream inputStream) throws IOException, ImportRejectedException {
+        if (!runningJobs.tryAcquire()) {
+            throw new ImportRejectedException("too many imports running, try again later");
+        }
+        var job = new ImportJob(UUID.randomUUID().toString(), maxErrors);
+        runningJobsById.put(job.getId(), job);
+        log.info("import job " + job.getId() + " started");
+
+        var pipeline = new Pipeline(job);
+        pipeline.start();
+        try {
+            pipeline.parse(inputStream);
+        } catch (IOException | RuntimeException e) {
+            job.finish(ImportJobStatus.State.FAILED);
+            throw e;
+        }
+        return job.toStatus();
+    }
+
+    public ImportJobStatus getJob(String id) throws ImportJobNotFoundException {
+        var job = runningJobsById.get(id);
+        if (job == null) {
+            job = finishedJobs.getIfPresent(id);
+        }
+        if (job == null) {
+            throw new ImportJobNotFoundException("import job " + id + " not found!");
+        }
+        return job.toStatus();
+    }
+
+    private class Pipeline {
+        private final ImportJob job;
+        private final BlockingQueue<ParsedUser> parsed = new ArrayBlockingQueue<>(queueCapacity);
+        private final BlockingQueue<HashedUser> hashed = new ArrayBlockingQueue<>(queueCapacity);
+
+        Pipeline(ImportJob job) {
+            this.job = job;
+        }
+
+        void start() {
+            var threadFactory = new CustomizableThreadFactory("user-import-" + job.getId().substring(0, 8) + "-");
+            threadFactory.setDaemon(true);
+            var workers = Executors.newFixedThreadPool(2, threadFactory);
+            workers.execute(this::hash);
+            workers.execute(this::insert);
+            workers.shutdown();
+        }
+
+        void parse(InputStream inputStream) throws IOException {
+            var reader = new NdjsonLineReader(inputStream, maxLineLength);
+            try {
+                while (job.isRunning() && reader.next()) {
+                    if (reader.isBlank()) {
+                        continue;
+                    }
+                    job.lineRead();
+                    var line = reader.lineNumber();
+                    if (reader.isTooLong()) {
+                        job.failed(line, "line longer than " + maxLineLength + " bytes");
+                        continue;
+                    }
+
+                    UserDTO userDTO;
+                    try {
+                        userDTO = userReader.readValue(reader.line(), 0, reader.lineLength());
+                    } catch (JsonProcessingException e) {
+                        job.failed(line, "invalid json: " + e.getOriginalMessage());
+                        continue;
+                    }
+                    if (userDTO == null) {
+                        job.failed(line, "user is required");
+                        continue;
+                    }
+
+                    var violations = validator.validate(userDTO);
+                    if (!violations.isEmpty()) {
+                        job.failed(line, describe(violations));
+                        continue;
+                    }
+                    if (!offer(parsed, new ParsedUser(line, userDTO))) {
+                        return;
+                    }
+                }
+            } finally {
+                offer(parsed, END_OF_PARSING);
+            }
+        }
+
+        /**
+         * Keeps up to a hashing pool's worth of passwords in flight and passes them on in line order. A hash refused
+         * because the hashing queue is full is retried after a pause, leaving the queue to single writes meanwhile.
+         */
+        private void hash() {
+            var inFlight = new ArrayDeque<CompletableFuture<HashedUser>>();
+            var window = passwordHashingService.getThreads();
+            try {
+                while (true) {
+                    var parsedUser = parsed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (parsedUser == END_OF_PARSING) {
+                        while (!inFlight.isEmpty()) {
+                            if (!offer(hashed, inFlight.poll().join())) {
+                                return;
+                            }
+                        }
+                        return;
+                    }
+                    if (parsedUser == null) {
+                        if (!job.isRunning()) {
+                            return;
+                        }
+                        continue;
+                    }
+                    if (inFlight.size() == window && !offer(hashed, inFlight.poll().join())) {
+                        return;
+                    }
+                    var hashing = hash(parsedUser);
+                    if (hashing == null) {
+                        return;
+                    }
+                    inFlight.add(hashing);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.finish(ImportJobStatus.State.FAILED);
+            } catch (RuntimeException e) {
+                log.error("import job " + job.getId() + " failed hashing passwords", e);
+                job.finish(ImportJobStatus.State.FAILED);
+            } finally {
+                offer(hashed, END_OF_HASHING);
+            }
+        }
+
+        /**
+         * @return the user, completing once its password is hashed, or null if the job stopped while the hashing queue was full
+         */
+        private CompletableFuture<HashedUser> hash(ParsedUser parsedUser) throws InterruptedException {
+            while (true) {
+                var hashing = passwordHashingService.encodeAsync(parsedUser.userDTO.getPassword());
+                if (!isRejected(hashing)) {
+                    return hashing.thenApply(hash -> {
+                        var user = userMapper.toUser(parsedUser.userDTO);
+                        user.setPassword(hash);
+                        user.setVersion(0L);
+                        return new HashedUser(parsedUser.line, user);
+                    });
+                }
+                if (!job.isRunning()) {
+                    return null;
+                }
+                Thread.sleep(POLL_MILLIS);
+            }
+        }
+
+        private void insert() {
+            var batch = new ArrayList<HashedUser>(batchSize);
+            try {
+                while (true) {
+                    var hashedUser = hashed.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                    if (hashedUser == END_OF_HASHING) {
+                        flush(batch);
+                        job.finish(ImportJobStatus.State.COMPLETED);
+                        return;
+                    }
+                    if (hashedUser == null) {
+                        if (!job.isRunning()) {
+                            return;
+                        }
+                        flush(batch);
+                    } else {
+                        batch.add(hashedUser);
+                        if (batch.size() == batchSize) {
+                            flush(batch);
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.finish(ImportJobStatus.State.FAILED);
+            } catch (RuntimeException e) {
+                log.error("import job " + job.getId() + " failed inserting users", e);
+                job.finish(ImportJobStatus.State.FAILED);
+            } finally {
+                finishedJobs.put(job.getId(), job);
+                runningJobsById.remove(job.getId());
+                runningJobs.release();
+                var status = job.toStatus();
+                log.info("import job " + job.getId() + " " + status.getState() + ": " + status.getCreated() + " created, "
+                        + status.getFailed() + " failed of " + status.getLinesRead() + " lines");
+            }
+        }
+
+        private void flush(List<HashedUser> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            var failed = new HashSet<Integer>();
+            try {
+                mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)
+                        .insert(batch.stream().map(hashedUser -> hashedUser.user).collect(Collectors.toList()))
+                        .execute();
+            } catch (BulkOperationException e) {
+                for (var error : e.getErrors()) {
+                    if (error.getCode() != DUPLICATE_KEY) {
+                        throw e;
+                    }
+                    failed.add(error.getIndex());
+                    job.failed(batch.get(error.getIndex()).line, error.getMessage());
+                }
+            }
+            for (int i = 0; i < batch.size(); i++) {
+                if (!failed.contains(i)) {
+                    userNotFoundCache.invalidate(batch.get(i).user.getNickname());
+                }
+            }
+            job.created(batch.size() - failed.size());
+            batch.clear();
+        }
+
+        /**
+         * Blocks while the queue is full, giving up once the job is no longer running.
+         */
+        private <T> boolean offer(BlockingQueue<T> queue, T item) {
+            try {
+                while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                    if (!job.isRunning()) {
+                        return false;
+                    }
+                }
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                job.finish(ImportJobStatus.State.FAILED);
+                return false;
+            }
+        }
+    }
+
+    private static boolean isRejected(CompletableFuture<String> hashing) {
+        if (!hashing.isCompletedExceptionally()) {
+            return false;
+        }
+        try {
+            hashing.join();
+            return false;
+        } catch (CompletionException e) {
+            return e.getCause() instanceof PasswordHashingRejectedException;
+        }
+    }
+
+    private static String describe(Set<ConstraintViolation<UserDTO>> violations) {
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private static class ParsedUser {
+        private final long line;
+        private final UserDTO userDTO;
+
+        ParsedUser(long line, UserDTO userDTO) {
+            this.line = line;
+            this.userDTO = userDTO;
+        }
+    }
+
+    private static class HashedUser {
+        private final long line;
+        private final User user;
+
+        HashedUser(long line, User user) {
+            this.line = line;
+            this.user = user;
+        }
+    }
+}
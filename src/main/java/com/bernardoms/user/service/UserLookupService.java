@@ -0,0 +1,58 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidBatchException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Resolves many nicknames at once: cached profiles are read in one multi-get and the misses are loaded, and cached,
+ * with a single {@code $in} query on the nickname index. The async lookup fails with a timeout after
+ * {@code user.async.mongo.timeout-millis}.
+ */
+@Service
+public class UserLookupService {
+    private final UserCache userCache;
+    private final int maxSize;
+    private final long timeoutMillis;
+
+    public UserLookupService(UserCache userCache,
+                             @Value("${user.lookup.max-size:500}") int maxSize,
+                             @Value("${user.async.mongo.timeout-millis:5000}") long timeoutMillis) {
+        this.userCache = userCache;
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * @return the public profile of each nickname that exists, keyed by nickname; repeated nicknames are looked up once
+     */
+    public Map<String, UserDTO> getByNickNames(List<String> nicknames) throws InvalidBatchException {
+        return userCache.getAll(distinctNicknames(nicknames));
+    }
+
+    public CompletableFuture<Map<String, UserDTO>> getByNickNamesAsync(List<String> nicknames) throws InvalidBatchException {
+        return Timeouts.within(userCache.getAllAsync(distinctNicknames(nicknames)), timeoutMillis, "users lookup");
+    }
+
+    private Set<String> distinctNicknames(List<String> nicknames) throws InvalidBatchException {
+        if (nicknames.isEmpty() || nicknames.size() > maxSize) {
+            throw new InvalidBatchException("lookup should have between 1 and " + maxSize + " nick names");
+        }
+        var distinct = new LinkedHashSet<String>(nicknames.size());
+        for (var nickname : nicknames) {
+            if (nickname == null || nickname.isBlank()) {
+                throw new InvalidBatchException("nick names to look up should not be blank");
+            }
+            distinct.add(nickname);
+        }
+        return distinct;
+    }
+}
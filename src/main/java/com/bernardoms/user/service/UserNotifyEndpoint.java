@@ -0,0 +1,43 @@
+package com.bernardoms.user.service;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+
+/**
+ * {@code /actuator/usernotify}: circuit breaker state, spill size and queue occupancy of {@link UserNotifyServiceImpl}.
+ */
+@Component
+@Endpoint(id = "usernotify")
+@RequiredArgsConstructor
+public class UserNotifyEndpoint {
+    private final UserNotifyServiceImpl userNotifyService;
+
+    @ReadOperation
+    public NotifyDescriptor status() throws IOException {
+        return NotifyDescriptor.builder()
+                .circuitBreakerState(userNotifyService.getCircuitBreakerState())
+                .consecutiveFailures(userNotifyService.getConsecutiveFailures())
+                .spilledNotifications(userNotifyService.getSpillSize())
+                .spillBytes(userNotifyService.getSpillSizeInBytes())
+                .queueDepth(userNotifyService.getQueueDepth())
+                .inFlight(userNotifyService.getInFlight())
+                .build();
+    }
+
+    @Getter
+    @Builder
+    public static class NotifyDescriptor {
+        private final NotificationCircuitBreaker.State circuitBreakerState;
+        private final int consecutiveFailures;
+        private final long spilledNotifications;
+        private final long spillBytes;
+        private final int queueDepth;
+        private final int inFlight;
+    }
+}
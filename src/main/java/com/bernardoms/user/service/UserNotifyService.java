@@ -1,9 +1,15 @@
 package com.bernardoms.user.service;
 
 
-import com.bernardoms.user.dto.UserDTO;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.amazonaws.services.sns.model.PublishResult;
+import com.bernardoms.user.dto.UserChangeEvent;
+
+import java.util.concurrent.CompletableFuture;
 
 public interface UserNotifyService {
-    void publish(UserDTO userDTO) throws JsonProcessingException;
+    /**
+     * Queues a change event for the user identified by {@code key}. An event still waiting for the same key is
+     * merged with this one, and both callers get the future of the merged publish.
+     */
+    CompletableFuture<PublishResult> publish(String key, UserChangeEvent event);
 }
@@ -1,27 +1,400 @@
 package com.bernardoms.user.service;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.amazonaws.services.sns.model.MessageAttributeValue;
 import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
 import com.bernardoms.user.config.UserQueueConfig;
-import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserChangeEvent;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Publishes change events to SNS through a bounded queue keyed by user. An event queued while another for the same user
+ * is still waiting is merged into it field by field, so a burst of updates goes out as one message with the latest
+ * values. Events are encoded by {@link UserChangeEventEncoder} only when sent, and the message carries
+ * {@code schemaVersion} and {@code contentType} attributes so subscribers can pick a decoder before reading it. At most
+ * {@code user.notify.max-in-flight} publishes run at once, and a user's next message is held until its previous one
+ * completes so they can't arrive out of order.
+ * <p>
+ * Overflow policy: once {@code user.notify.queue-capacity} users have notifications waiting, a notification for
+ * another user fails straight away with a {@link RejectedExecutionException}; the outbox keeps it and retries later.
+ * <p>
+ * Each publish gets {@code user.notify.publish-timeout-millis} to be acknowledged, and failures and timeouts feed a
+ * {@link NotificationCircuitBreaker}. While it is open, notifications fail straight away with a
+ * {@link RejectedExecutionException} instead of waiting on SNS, so their events stay in the outbox until it retries.
+ * Only when {@code user.notify.spill.path} is set are they appended to that spill file instead, and completed, so the
+ * outbox lets go of them: the path must then be on storage that outlives the instance. The spill is replayed through
+ * this same queue once the breaker closes again, and notifications replayed after an outage may reach SNS after newer
+ * ones for the same user.
+ */
 @Service
-@RequiredArgsConstructor
 @Slf4j
 public class UserNotifyServiceImpl implements UserNotifyService {
     private final UserQueueConfig userQueueConfig;
     private final AmazonSNSAsync amazonSNSAsync;
-    private final ObjectMapper objectMapper;
+    private final UserChangeEventEncoder userChangeEventEncoder;
+    private final int queueCapacity;
+    private final int maxInFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dispatchable = lock.newCondition();
+    private final Map<String, PendingNotification> pending = new LinkedHashMap<>();
+    private final Set<String> inFlightKeys = new HashSet<>();
+    private final Thread dispatcher;
+    private volatile boolean running = true;
+
+    private final long publishTimeoutMillis;
+    private final int replayChunkSize;
+    private final NotificationCircuitBreaker circuitBreaker;
+    private final NotificationSpill spill;
+    private final ScheduledExecutorService timeouts;
+
+    private final Timer publishTimer;
+    private final Counter published;
+    private final Counter failed;
+    private final Counter coalesced;
+    private final Counter rejected;
+    private final Counter spilled;
+
+    public UserNotifyServiceImpl(UserQueueConfig userQueueConfig,
+                                 AmazonSNSAsync amazonSNSAsync,
+                                 UserChangeEventEncoder userChangeEventEncoder,
+                                 ObjectMapper objectMapper,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${user.notify.queue-capacity:10000}") int queueCapacity,
+                                 @Value("${user.notify.max-in-flight:64}") int maxInFlight,
+                                 @Value("${user.notify.publish-timeout-millis:2000}") long publishTimeoutMillis,
+                                 @Value("${user.notify.breaker.failure-threshold:5}") int failureThreshold,
+                                 @Value("${user.notify.breaker.open-millis:30000}") long openMillis,
+                                 @Value("${user.notify.spill.path:}") String spillPath,
+                                 @Value("${user.notify.spill.replay-chunk-size:500}") int replayChunkSize) {
+        this.userQueueConfig = userQueueConfig;
+        this.amazonSNSAsync = amazonSNSAsync;
+        this.userChangeEventEncoder = userChangeEventEncoder;
+        this.queueCapacity = queueCapacity;
+        this.maxInFlight = maxInFlight;
+        this.publishTimeoutMillis = publishTimeoutMillis;
+        this.replayChunkSize = replayChunkSize;
+        this.circuitBreaker = new NotificationCircuitBreaker(failureThreshold, openMillis, System::nanoTime);
+        this.spill = spillPath.isBlank() ? null : new NotificationSpill(Path.of(spillPath), objectMapper);
+        var threadFactory = new CustomizableThreadFactory("user-notify-timeout-");
+        threadFactory.setDaemon(true);
+        this.timeouts = Executors.newSingleThreadScheduledExecutor(threadFactory);
+        this.publishTimer = Timer.builder("user.notify.publish")
+                .description("time from handing a notification to SNS until it is acknowledged")
+                .register(meterRegistry);
+        this.published = Counter.builder("user.notify.published").register(meterRegistry);
+        this.failed = Counter.builder("user.notify.failed").register(meterRegistry);
+        this.coalesced = Counter.builder("user.notify.coalesced")
+                .description("notifications merged into one already waiting for the same user")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("user.notify.rejected")
+                .description("notifications refused because the queue was full, or the circuit breaker open without a spill")
+                .register(meterRegistry);
+        Gauge.builder("user.notify.queue.depth", this, UserNotifyServiceImpl::queueDepth)
+                .description("users with a notification waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("user.notify.in.flight", this, UserNotifyServiceImpl::inFlight)
+                .register(meterRegistry);
+        this.spilled = Counter.builder("user.notify.spilled")
+                .description("notifications written to the spill file while the circuit breaker was open")
+                .register(meterRegistry);
+        Gauge.builder("user.notify.spill.size", this, UserNotifyServiceImpl::getSpillSize)
+                .description("notifications in the spill file waiting to be replayed")
+                .register(meterRegistry);
+        Gauge.builder("user.notify.breaker.state", circuitBreaker, breaker -> breaker.getState().ordinal())
+                .description("0 closed, 1 open, 2 half open")
+                .register(meterRegistry);
+        this.dispatcher = new Thread(this::dispatch, "user-notify-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
 
     @Override
-    public void publish(UserDTO userDTO) throws JsonProcessingException {
-        log.info("user was updated, notifying to sns " + userDTO);
-        var publishRequest = new PublishRequest(userQueueConfig.getTopic(), objectMapper.writeValueAsString(userDTO));
-        amazonSNSAsync.publish(publishRequest);
+    public CompletableFuture<PublishResult> publish(String key, UserChangeEvent event) {
+        lock.lock();
+        try {
+            var waiting = pending.get(key);
+            if (waiting != null) {
+                waiting.event = waiting.event.mergedWith(event);
+                coalesced.increment();
+                return waiting.future;
+            }
+            if (!running || pending.size() >= queueCapacity) {
+                rejected.increment();
+                return CompletableFuture.failedFuture(new RejectedExecutionException("notification queue is full"));
+            }
+            var notification = new PendingNotification(key, event);
+            pending.put(key, notification);
+            dispatchable.signal();
+            return notification.future;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public NotificationCircuitBreaker.State getCircuitBreakerState() {
+        return circuitBreaker.getState();
+    }
+
+    public int getConsecutiveFailures() {
+        return circuitBreaker.getConsecutiveFailures();
+    }
+
+    public long getSpillSize() {
+        return spill == null ? 0 : spill.size();
+    }
+
+    public long getSpillSizeInBytes() throws IOException {
+        return spill == null ? 0 : spill.sizeInBytes();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth();
+    }
+
+    public int getInFlight() {
+        return inFlight();
+    }
+
+    /**
+     * Replays the spill a chunk at a time through the queue, waiting for each chunk so a replay never floods SNS
+     * faster than it acknowledges. Once the breaker's open period is over the replay's first notification also serves
+     * as its trial, so it recovers without waiting for new updates; a replay stops at the first notification refused.
+     */
+    @Scheduled(fixedDelayString = "${user.notify.spill.replay-millis:5000}")
+    public void replaySpill() {
+        if (getSpillSize() == 0 || !circuitBreaker.isCallPermitted()) {
+            return;
+        }
+        try {
+            spill.replay(replayChunkSize, this::publishSpilled);
+        } catch (IOException e) {
+            log.error("failed to replay notification spill", e);
+        }
+    }
+
+    private List<NotificationSpill.SpilledNotification> publishSpilled(List<NotificationSpill.SpilledNotification> notifications) {
+        var futures = new ArrayList<CompletableFuture<PublishResult>>(notifications.size());
+        notifications.forEach(notification -> futures.add(publish(notification.getKey(), notification.getEvent())));
+        var unsent = new ArrayList<NotificationSpill.SpilledNotification>();
+        for (int i = 0; i < notifications.size(); i++) {
+            try {
+                futures.get(i).get(publishTimeoutMillis * 2, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                unsent.add(notifications.get(i));
+            } catch (Exception e) {
+                unsent.add(notifications.get(i));
+            }
+        }
+        return unsent;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        dispatcher.interrupt();
+        timeouts.shutdownNow();
+        lock.lock();
+        try {
+            pending.values().forEach(notification -> notification.future.completeExceptionally(
+                    new RejectedExecutionException("notification service is shutting down")));
+            pending.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void dispatch() {
+        while (running) {
+            PendingNotification notification;
+            lock.lock();
+            try {
+                while ((notification = nextDispatchable()) == null) {
+                    dispatchable.await();
+                }
+                pending.remove(notification.key);
+                inFlightKeys.add(notification.key);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                lock.unlock();
+            }
+            if (circuitBreaker.tryAcquire()) {
+                send(notification);
+            } else if (spill != null) {
+                spill(notification);
+            } else {
+                refuse(notification);
+            }
+        }
+    }
+
+    private void spill(PendingNotification notification) {
+        try {
+            spill.append(notification.key, notification.event);
+            spilled.increment();
+            release(notification);
+            notification.future.complete(new PublishResult());
+        } catch (IOException e) {
+            log.error("failed to spill notification for " + notification.key, e);
+            release(notification);
+            notification.future.completeExceptionally(e);
+        }
+    }
+
+    private void refuse(PendingNotification notification) {
+        rejected.increment();
+        release(notification);
+        notification.future.completeExceptionally(new RejectedExecutionException("sns circuit breaker is open"));
+    }
+
+    private PendingNotification nextDispatchable() {
+        if (inFlightKeys.size() >= maxInFlight) {
+            return null;
+        }
+        for (var notification : pending.values()) {
+            if (!inFlightKeys.contains(notification.key)) {
+                return notification;
+            }
+        }
+        return null;
+    }
+
+    private void send(PendingNotification notification) {
+        log.info("user " + notification.event.getNickname() + " was updated, notifying to sns event " + notification.event.getEventId());
+        var started = System.nanoTime();
+        PublishRequest request;
+        try {
+            request = newPublishRequest(notification.event);
+        } catch (JsonProcessingException e) {
+            settle(notification, started, null, e);
+            return;
+        }
+        var timeout = timeouts.schedule(() -> settle(notification, started, null,
+                new TimeoutException("sns publish not acknowledged in " + publishTimeoutMillis + "ms")), publishTimeoutMillis, TimeUnit.MILLISECONDS);
+        notification.future.whenComplete((result, error) -> timeout.cancel(false));
+        try {
+            amazonSNSAsync.publishAsync(request, new AsyncHandler<>() {
+                @Override
+                public void onError(Exception exception) {
+                    settle(notification, started, null, exception);
+                }
+
+                @Override
+                public void onSuccess(PublishRequest request, PublishResult result) {
+                    settle(notification, started, result, null);
+                }
+            });
+        } catch (RuntimeException e) {
+            settle(notification, started, null, e);
+        }
+    }
+
+    private PublishRequest newPublishRequest(UserChangeEvent event) throws JsonProcessingException {
+        var request = new PublishRequest(userQueueConfig.getTopic(), userChangeEventEncoder.encodeToMessage(event))
+                .addMessageAttributesEntry("schemaVersion", new MessageAttributeValue()
+                        .withDataType("Number")
+                        .withStringValue(String.valueOf(event.getSchemaVersion())))
+                .addMessageAttributesEntry("contentType", new MessageAttributeValue()
+                        .withDataType("String")
+                        .withStringValue(userChangeEventEncoder.getFormat().getContentType()));
+        request.setSdkClientExecutionTimeout((int) publishTimeoutMillis);
+        return request;
+    }
+
+    /**
+     * Completes a publish exactly once, whichever of the SNS callback and the timeout comes first.
+     */
+    private void settle(PendingNotification notification, long started, PublishResult result, Exception error) {
+        if (!notification.settled.compareAndSet(false, true)) {
+            return;
+        }
+        publishTimer.record(System.nanoTime() - started, TimeUnit.NANOSECONDS);
+        if (error == null) {
+            published.increment();
+            circuitBreaker.onSuccess();
+        } else {
+            failed.increment();
+            circuitBreaker.onFailure();
+        }
+        release(notification);
+        if (error == null) {
+            notification.future.complete(result);
+        } else {
+            notification.future.completeExceptionally(error);
+        }
+    }
+
+    private void release(PendingNotification notification) {
+        lock.lock();
+        try {
+            inFlightKeys.remove(notification.key);
+            dispatchable.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int queueDepth() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int inFlight() {
+        lock.lock();
+        try {
+            return inFlightKeys.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class PendingNotification {
+        private final String key;
+        private final CompletableFuture<PublishResult> future = new CompletableFuture<>();
+        private final AtomicBoolean settled = new AtomicBoolean();
+        private UserChangeEvent event;
+
+        private PendingNotification(String key, UserChangeEvent event) {
+            this.key = key;
+            this.event = event;
+        }
     }
 }
@@ -0,0 +1,223 @@
+package com.bernardoms.user.service;
+
+import com.amazonaws.services.sns.model.PublishResult;
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.OutboxEvent;
+import com.bernardoms.user.model.User;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Relays the change notifications queued in each user's {@code outbox} to SNS. Writers push an event in the same
+ * update that changes the user, and the relay publishes pending events in batches, pulling each one only once SNS has
+ * accepted it. A failed or timed-out publish leaves the event in place with its attempt count bumped, so it is retried
+ * on the next poll and delivery is at least once.
+ * <p>
+ * Every replica runs the relay, so a batch is claimed before it is published: its users are stamped with a claim
+ * token and a lease of {@code user.outbox.lease-millis}, and another relay skips them until the claim is released or
+ * the lease runs out. The lease must outlast {@code user.outbox.publish-timeout-millis}, which bounds a whole batch.
+ */
+@Service
+@Slf4j
+public class UserOutboxService {
+    static final String OUTBOX = "outbox";
+    private static final String OUTBOX_CREATED_AT = OUTBOX + ".createdAt";
+    private static final String CLAIMED_BY = "outboxClaimedBy";
+    private static final String CLAIMED_UNTIL = "outboxClaimedUntil";
+    private static final String ID = "_id";
+
+    private final UserStore userStore;
+    private final UserNotifyService userNotifyService;
+    private final int batchSize;
+    private final long publishTimeoutMillis;
+    private final long leaseMillis;
+    private final int maxEvents;
+
+    public UserOutboxService(UserStore userStore,
+                             UserNotifyService userNotifyService,
+                             @Value("${user.outbox.batch-size:100}") int batchSize,
+                             @Value("${user.outbox.publish-timeout-millis:10000}") long publishTimeoutMillis,
+                             @Value("${user.outbox.lease-millis:30000}") long leaseMillis,
+                             @Value("${user.outbox.max-events:100}") int maxEvents) {
+        this.userStore = userStore;
+        this.userNotifyService = userNotifyService;
+        this.batchSize = batchSize;
+        this.publishTimeoutMillis = publishTimeoutMillis;
+        this.leaseMillis = leaseMillis;
+        this.maxEvents = maxEvents;
+    }
+
+    /**
+     * Queues an event for the {@code changes} made to the user called {@code nickname} in {@code update}. Only the
+     * newest {@code user.outbox.max-events} events are kept, so a user rewritten while SNS is unreachable doesn't grow
+     * without bound.
+     */
+    public void queue(Update update, String nickname, UserDTO changes) {
+        update.push(OUTBOX).slice(-maxEvents).each(newEvent(nickname, changes));
+    }
+
+    /**
+     * Records the fields set on {@code changes}, and the new nickname if it differs from {@code nickname}, which the
+     * event is published under. The password is left out so its hash never leaves the database.
+     */
+    public OutboxEvent newEvent(String nickname, UserDTO changes) {
+        var changed = new LinkedHashMap<String, String>();
+        if (!nickname.equals(changes.getNickname())) {
+            putIfPresent(changed, "nickname", changes.getNickname());
+        }
+        putIfPresent(changed, "firstName", changes.getFirstName());
+        putIfPresent(changed, "lastName", changes.getLastName());
+        putIfPresent(changed, "email", changes.getEmail());
+        putIfPresent(changed, "country", changes.getCountry());
+        return OutboxEvent.builder()
+                .eventId(UUID.randomUUID().toString())
+                .nickname(nickname)
+                .changes(changed)
+                .createdAt(Instant.now())
+                .build();
+    }
+
+    /**
+     * Publishes pending events until a batch comes back short or with a failure, so a backlog drains in one run
+     * while a failing topic is only tried once per poll.
+     */
+    @Scheduled(fixedDelayString = "${user.outbox.poll-millis:1000}")
+    public void drain() {
+        while (drainBatch() == batchSize) {
+            log.debug("outbox batch full, draining the next one");
+        }
+    }
+
+    /**
+     * @return how many events were published, or -1 if any of the batch failed
+     */
+    private int drainBatch() {
+        var claim = UUID.randomUUID().toString();
+        var pending = claimPending(claim);
+        var publishing = new LinkedHashMap<OutboxEvent, Future<PublishResult>>();
+        var owners = new LinkedHashMap<OutboxEvent, ObjectId>();
+        for (var user : pending) {
+            for (var event : user.getOutbox()) {
+                if (publishing.size() == batchSize) {
+                    break;
+                }
+                publishing.put(event, publish(user.getId().toHexString(), event));
+                owners.put(event, user.getId());
+            }
+        }
+
+        var deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(publishTimeoutMillis);
+        var published = new LinkedHashMap<ObjectId, List<String>>();
+        var failed = false;
+        for (Map.Entry<OutboxEvent, Future<PublishResult>> entry : publishing.entrySet()) {
+            var event = entry.getKey();
+            var userId = owners.get(event);
+            if (awaitPublished(event, entry.getValue(), deadline)) {
+                published.computeIfAbsent(userId, id -> new ArrayList<>()).add(event.getEventId());
+            } else {
+                failed = true;
+                userStore.updateFirst(claimedBy(claim, userId).addCriteria(Criteria.where(OUTBOX + ".eventId").is(event.getEventId())),
+                        new Update().inc(OUTBOX + ".$.attempts", 1));
+            }
+        }
+        for (var user : pending) {
+            var release = new Update().unset(CLAIMED_BY).unset(CLAIMED_UNTIL);
+            var eventIds = published.get(user.getId());
+            if (eventIds != null) {
+                release.pull(OUTBOX, new Document("eventId", new Document("$in", eventIds)));
+            }
+            userStore.updateFirst(claimedBy(claim, user.getId()), release);
+        }
+        return failed ? -1 : publishing.size();
+    }
+
+    /**
+     * Picks the users with the oldest pending events that no other relay holds, then claims them in one write that
+     * re-checks they are still free, so of two relays racing for a user only one gets it.
+     */
+    private List<User> claimPending(String claim) {
+        var now = Instant.now();
+        var candidates = new Query(unclaimed(now)).with(Sort.by(OUTBOX_CREATED_AT)).limit(batchSize);
+        candidates.fields().include(ID);
+        var ids = userStore.find(candidates).stream().map(User::getId).collect(Collectors.toList());
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        var lease = new Update().set(CLAIMED_BY, claim).set(CLAIMED_UNTIL, now.plusMillis(leaseMillis));
+        if (userStore.updateMulti(new Query(unclaimed(now).and(ID).in(ids)), lease) == 0) {
+            return List.of();
+        }
+        var claimed = new Query(Criteria.where(ID).in(ids).and(CLAIMED_BY).is(claim)).with(Sort.by(OUTBOX_CREATED_AT));
+        claimed.fields().include(OUTBOX);
+        return userStore.find(claimed);
+    }
+
+    private static Criteria unclaimed(Instant now) {
+        return Criteria.where(OUTBOX_CREATED_AT).exists(true)
+                .orOperator(Criteria.where(CLAIMED_UNTIL).exists(false), Criteria.where(CLAIMED_UNTIL).lt(now));
+    }
+
+    private static Query claimedBy(String claim, ObjectId userId) {
+        return new Query(Criteria.where(ID).is(userId).and(CLAIMED_BY).is(claim));
+    }
+
+    private Future<PublishResult> publish(String key, OutboxEvent event) {
+        try {
+            return userNotifyService.publish(key, toChangeEvent(event));
+        } catch (RuntimeException e) {
+            log.warn("failed to publish outbox event " + event.getEventId(), e);
+            return null;
+        }
+    }
+
+    private static UserChangeEvent toChangeEvent(OutboxEvent event) {
+        return UserChangeEvent.builder()
+                .schemaVersion(UserChangeEvent.SCHEMA_VERSION)
+                .eventId(event.getEventId())
+                .nickname(event.getNickname())
+                .changes(event.getChanges())
+                .timestamp(event.getCreatedAt().toEpochMilli())
+                .build();
+    }
+
+    private static void putIfPresent(Map<String, String> changes, String field, String value) {
+        if (value != null) {
+            changes.put(field, value);
+        }
+    }
+
+    private boolean awaitPublished(OutboxEvent event, Future<PublishResult> future, long deadline) {
+        if (future == null) {
+            return false;
+        }
+        try {
+            future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (Exception e) {
+            log.warn("failed to publish outbox event " + event.getEventId() + " after " + (event.getAttempts() + 1) + " attempts", e);
+            return false;
+        }
+    }
+}
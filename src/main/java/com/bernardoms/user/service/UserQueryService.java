@@ -1,37 +1,144 @@
 package com.bernardoms.user.service;
 
+import com.bernardoms.user.converter.UserDTOReadConverter;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidCursorException;
+import com.bernardoms.user.exception.UnindexedQueryException;
+import com.bernardoms.user.model.CountMode;
 import com.bernardoms.user.model.User;
 import com.bernardoms.user.model.UserFilter;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.model.CountOptions;
 import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.context.annotation.Profile;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.StreamUtils;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class UserQueryService {
+    static final Duration ESTIMATED_COUNT_TTL = Duration.ofSeconds(30);
+
     private final MongoOperations mongoOperations;
+    private final QueryShapeGuard queryShapeGuard;
+
+    private final Cache<String, Long> estimatedCountCache = Caffeine.newBuilder()
+            .maximumSize(1_000)
+            .expireAfterWrite(ESTIMATED_COUNT_TTL)
+            .build();
+
+    public Optional<UserDTO> findPublicUserByNickname(String nickname) {
+        var query = publicFields(new Query(Criteria.where("nickname").is(nickname)));
+
+        return Optional.ofNullable(mongoOperations.findOne(query, Document.class, mongoOperations.getCollectionName(User.class)))
+                .map(UserDTOReadConverter.INSTANCE::convert);
+    }
+
+    public List<UserDTO> findPublicUsersByNicknames(Collection<String> nicknames) {
+        return findPublicUsers(new Query(Criteria.where("nickname").in(nicknames)));
+    }
+
+    public Page<UserDTO> returnPageableFilteredUser(UserFilter userFilter) throws UnindexedQueryException, TimeoutException {
+        var query = buildQuery(userFilter);
+
+        var shape = queryShapeGuard.check(query);
+
+        var pageable = PageRequest.of(userFilter.getOffset(), userFilter.getLimit(), Sort.unsorted());
+
+        return queryShapeGuard.read(shape, () -> {
+            var count = countFilteredUser(query, userFilter.getCount());
+
+            var users = findPublicUsers(query.with(pageable));
 
-    public Page<User> returnPageableFilteredUser(UserFilter userFilter) {
+            return new PageImpl<>(users, pageable, count);
+        });
+    }
+
+    public Slice<UserDTO> returnSlicedFilteredUser(UserFilter userFilter) throws UnindexedQueryException, TimeoutException {
         var query = buildQuery(userFilter);
 
+        var shape = queryShapeGuard.check(query);
+
         var pageable = PageRequest.of(userFilter.getOffset(), userFilter.getLimit(), Sort.unsorted());
 
-        var count = mongoOperations.count(query, User.class);
+        query.skip(pageable.getOffset()).limit(pageable.getPageSize() + 1);
+
+        return queryShapeGuard.read(shape, () -> sliceOf(findPublicUsers(query), pageable));
+    }
+
+    public CursorPage<UserDTO> returnCursorFilteredUser(UserFilter userFilter)
+            throws InvalidCursorException, UnindexedQueryException, TimeoutException {
+        var query = buildCursorQuery(userFilter);
+
+        var shape = queryShapeGuard.check(query);
 
-        var users = mongoOperations.find(query.with(pageable), User.class);
+        return queryShapeGuard.read(shape, () -> cursorPageOf(findPublicDocuments(query), userFilter.getLimit()));
+    }
+
+    /**
+     * Public users matching the filter, read lazily from a mongo cursor {@code batchSize} documents at a time. Paging
+     * fields are ignored; the stream must be closed to release the cursor. An export is expected to read for long, so
+     * it isn't checked by the {@link QueryShapeGuard}.
+     */
+    public Stream<UserDTO> streamPublicUsers(UserFilter userFilter, int batchSize) {
+        var query = publicFields(buildQuery(userFilter)).cursorBatchSize(batchSize);
 
-        return new PageImpl<>(users, pageable, count);
+        return StreamUtils.createStreamFromIterator(
+                mongoOperations.stream(query, Document.class, mongoOperations.getCollectionName(User.class)))
+                .map(UserDTOReadConverter.INSTANCE::convert);
     }
 
-    private Query buildQuery(UserFilter userFilter) {
+    private long countFilteredUser(Query query, CountMode countMode) {
+        if (countMode != CountMode.ESTIMATED) {
+            return count(query);
+        }
+
+        if (query.getQueryObject().isEmpty()) {
+            return mongoOperations.getCollection(mongoOperations.getCollectionName(User.class)).estimatedDocumentCount();
+        }
+
+        return estimatedCountCache.get(query.getQueryObject().toJson(), key -> count(query));
+    }
+
+    /**
+     * {@link MongoOperations#count} drops the query's {@code maxTimeMS}, so a count the {@link QueryShapeGuard} capped
+     * is issued with it on the collection.
+     */
+    private long count(Query query) {
+        var maxTimeMsec = query.getMeta().getMaxTimeMsec();
+        if (maxTimeMsec == null) {
+            return mongoOperations.count(query, User.class);
+        }
+        return mongoOperations.execute(User.class, collection -> collection.countDocuments(query.getQueryObject(),
+                new CountOptions().maxTime(maxTimeMsec, TimeUnit.MILLISECONDS)));
+    }
+
+    static Query buildQuery(UserFilter userFilter) {
         var query = new Query();
 
         Optional.ofNullable(userFilter.getFirstName()).ifPresent(name->query.addCriteria(Criteria.where("firstName").is(name)));
@@ -46,4 +153,72 @@ public class UserQueryService {
 
         return query;
     }
+
+    /**
+     * The filter's query, continuing after the cursor's user and reading one user past the limit to tell whether
+     * there is a next page.
+     */
+    static Query buildCursorQuery(UserFilter userFilter) throws InvalidCursorException {
+        if (userFilter.getLimit() < 1) {
+            throw new InvalidCursorException("invalid limit " + userFilter.getLimit() + ", it must be at least 1");
+        }
+
+        var query = buildQuery(userFilter);
+
+        if (!userFilter.getCursor().isBlank()) {
+            query.addCriteria(Criteria.where("_id").gt(decodeCursor(userFilter.getCursor())));
+        }
+
+        return query.with(Sort.by(Sort.Direction.ASC, "_id")).limit(userFilter.getLimit() + 1);
+    }
+
+    static Slice<UserDTO> sliceOf(List<UserDTO> users, Pageable pageable) {
+        var hasNext = users.size() > pageable.getPageSize();
+
+        return new SliceImpl<>(hasNext ? users.subList(0, pageable.getPageSize()) : users, pageable, hasNext);
+    }
+
+    static CursorPage<UserDTO> cursorPageOf(List<Document> documents, int limit) {
+        var hasNext = documents.size() > limit;
+
+        var page = hasNext ? documents.subList(0, limit) : documents;
+
+        return new CursorPage<>(toPublicUsers(page), hasNext ? encodeCursor(page.get(page.size() - 1).getObjectId("_id")) : null);
+    }
+
+    private List<UserDTO> findPublicUsers(Query query) {
+        return toPublicUsers(findPublicDocuments(query));
+    }
+
+    private List<Document> findPublicDocuments(Query query) {
+        return mongoOperations.find(publicFields(query), Document.class, mongoOperations.getCollectionName(User.class));
+    }
+
+    private static List<UserDTO> toPublicUsers(List<Document> documents) {
+        return documents.stream().map(UserDTOReadConverter.INSTANCE::convert).collect(Collectors.toList());
+    }
+
+    static Query publicFields(Query query) {
+        var fields = query.fields();
+        for (String field : UserDTOReadConverter.PUBLIC_FIELDS) {
+            fields.include(field);
+        }
+        return query;
+    }
+
+    private static String encodeCursor(ObjectId lastId) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(lastId.toByteArray());
+    }
+
+    private static ObjectId decodeCursor(String cursor) throws InvalidCursorException {
+        try {
+            var bytes = Base64.getUrlDecoder().decode(cursor);
+            if (bytes.length != 12) {
+                throw new InvalidCursorException("invalid cursor " + cursor);
+            }
+            return new ObjectId(bytes);
+        } catch (IllegalArgumentException e) {
+            throw new InvalidCursorException("invalid cursor " + cursor);
+        }
+    }
 }
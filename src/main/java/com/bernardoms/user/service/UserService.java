@@ -1,69 +1,298 @@
 package com.bernardoms.user.service;
 
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.CursorPage;
 import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.InvalidCursorException;
 import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.exception.UnindexedQueryException;
 import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.mapper.UserMapper;
 import com.bernardoms.user.model.User;
 import com.bernardoms.user.model.UserFilter;
 import com.bernardoms.user.repository.UserRepository;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoWriteException;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.modelmapper.ModelMapper;
-import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Service;
 
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
 @Slf4j
 public class UserService {
+    static final String NICKNAME = "nickname";
+    static final String VERSION = "version";
+    private static final String KEY_PATTERN = "keyPattern";
+    private static final String ERROR_MESSAGE = "errmsg";
+    private static final Pattern DUPLICATE_KEY_INDEX = Pattern.compile("index: (\\S+) dup key");
+
     private final UserRepository userRepository;
     private final UserQueryService userQueryService;
-    private final ModelMapper modelMapper;
-    private final PasswordEncoder passwordEncoder;
-    private final UserNotifyService userNotifyService;
+    private final UserMapper userMapper;
+    private final PasswordHashingService passwordHashingService;
+    private final UserOutboxService userOutboxService;
+    private final UserNotFoundCache userNotFoundCache;
+    private final UserCache userCache;
+    private final MongoOperations mongoOperations;
 
-    @Cacheable(cacheNames = "user")
     public UserDTO getByNickName(String nickName) throws UserNotFoundException {
-        User user = userRepository.findByNickname(nickName).orElseThrow(() -> new UserNotFoundException("user with nick name " + nickName + " not found!"));
-        return modelMapper.map(user, UserDTO.class);
+        return userCache.get(nickName).orElseThrow(() -> new UserNotFoundException("user with nick name " + nickName + " not found!"));
+    }
+
+    public Page<UserDTO> getUsers(UserFilter userFilter) throws UnindexedQueryException, TimeoutException {
+        return userQueryService.returnPageableFilteredUser(userFilter);
+    }
+
+    public Slice<UserDTO> getUsersWithoutCount(UserFilter userFilter) throws UnindexedQueryException, TimeoutException {
+        return userQueryService.returnSlicedFilteredUser(userFilter);
+    }
+
+    public CursorPage<UserDTO> getUsersByCursor(UserFilter userFilter)
+            throws InvalidCursorException, UnindexedQueryException, TimeoutException {
+        return userQueryService.returnCursorFilteredUser(userFilter);
     }
 
-    public Page<UserDTO> getUsers(UserFilter userFilter) {
-        var users = userQueryService.returnPageableFilteredUser(userFilter);
-        return users.map(u -> new UserDTO(u.getNickname(), u.getFirstName(), u.getLastName(), u.getEmail(), u.getCountry()));
+    public String saveUser(UserDTO userDTO) throws NicknameAlreadyExistException, PasswordHashingRejectedException {
+        return saveUser(userDTO, passwordHashingService.encode(userDTO.getPassword()));
     }
 
-    public String saveUser(UserDTO userDTO) throws NicknameAlreadyExistException {
-        var optionalUser = userRepository.findByNickname(userDTO.getNickname());
-        if (optionalUser.isPresent()) {
+    /**
+     * {@link #saveUser(UserDTO)} with the password already hashed.
+     */
+    public String saveUser(UserDTO userDTO, String passwordHash) throws NicknameAlreadyExistException {
+        userDTO.setPassword(passwordHash);
+        User savedUser;
+        try {
+            savedUser = userRepository.save(userMapper.toUser(userDTO));
+        } catch (DuplicateKeyException e) {
+            if (!isNicknameConflict(e)) {
+                throw e;
+            }
             throw new NicknameAlreadyExistException("user with nick name " + userDTO.getNickname() + " already exist!");
         }
-        userDTO.setPassword(passwordEncoder.encode(userDTO.getPassword()));
-        return userRepository.save(modelMapper.map(userDTO, User.class)).getNickname();
+        userNotFoundCache.invalidate(savedUser.getNickname());
+        userCache.put(userMapper.toPublicUserDTO(savedUser));
+        return savedUser.getNickname();
     }
 
-    @CacheEvict(cacheNames = "user")
     public void deleteUser(String nickname) {
-        Optional<User> optionalUser = userRepository.findByNickname(nickname);
-        optionalUser.ifPresent(user -> userRepository.deleteById(user.getId()));
+        userRepository.deleteByNickname(nickname);
+        userCache.invalidate(nickname);
         log.info("user " + nickname + " deleted!");
     }
 
-    @CacheEvict(cacheNames = "user", key = "#nickname")
-    public void updateUser(String nickname, UserDTO userDTO) throws JsonProcessingException {
-        var userOptional = userRepository.findByNickname(nickname);
-        if (userOptional.isPresent()) {
-            userDTO.setPassword(passwordEncoder.encode(userDTO.getPassword()));
-            User updatedUser = modelMapper.map(userDTO, User.class);
-            updatedUser.setId(userOptional.get().getId());
-            userRepository.save(updatedUser);
-            userNotifyService.publish(userDTO);
+    /**
+     * Only a nickname already known to be missing is turned away before the password is hashed.
+     */
+    public void updateUser(String nickname, UserDTO userDTO) throws PasswordHashingRejectedException {
+        if (userNotFoundCache.isMissing(nickname)) {
+            return;
+        }
+        updateUser(nickname, userDTO, passwordHashingService.encode(userDTO.getPassword()));
+    }
+
+    /**
+     * {@link #updateUser(String, UserDTO)} with the password already hashed. The notification lists only the fields
+     * that differ from the stored user, taken from {@link UserCache} or else one indexed read, and the write only
+     * applies to the version they were compared with. If another write got in first the user is read again and the
+     * PUT retried, so the listed fields are exactly the ones it changed.
+     */
+    public void updateUser(String nickname, UserDTO userDTO, String passwordHash) {
+        userDTO.setPassword(passwordHash);
+        var replacement = userMapper.toUser(userDTO);
+        var stored = userCache.getIfPresent(nickname);
+        while (true) {
+            if (stored.isEmpty()) {
+                stored = userNotFoundCache.find(nickname, userQueryService::findPublicUserByNickname);
+                if (stored.isEmpty()) {
+                    return;
+                }
+            }
+            var update = replacementOf(replacement);
+            userOutboxService.queue(update, nickname, changedFields(stored.get(), userDTO));
+            var savedUser = mongoOperations.findAndModify(byNicknameAndVersion(nickname, stored.get().getVersion()),
+                    update, FindAndModifyOptions.options().returnNew(true), User.class);
+            if (savedUser != null) {
+                cacheSavedUser(nickname, savedUser);
+                return;
+            }
+            stored = Optional.empty();
+        }
+    }
+
+    /**
+     * Sets only the fields present in the patch in one write, which also finds out whether the user exists, and
+     * notifies with just those fields. As for {@link #updateUser(String, UserDTO)}, a password is hashed unless the
+     * nickname is known to be missing. An empty patch writes nothing.
+     */
+    public void patchUser(String nickname, UserPatchDTO userPatchDTO) throws NicknameAlreadyExistException, PasswordHashingRejectedException {
+        if (userPatchDTO.getPassword() == null) {
+            patchUser(nickname, userPatchDTO, null);
+        } else if (!userNotFoundCache.isMissing(nickname)) {
+            patchUser(nickname, userPatchDTO, passwordHashingService.encode(userPatchDTO.getPassword()));
+        }
+    }
+
+    /**
+     * {@link #patchUser(String, UserPatchDTO)} with the patch's password, if any, already hashed.
+     */
+    public void patchUser(String nickname, UserPatchDTO userPatchDTO, String passwordHash) throws NicknameAlreadyExistException {
+        var changes = patchedFields(userPatchDTO, passwordHash);
+        var update = changesOf(changes);
+        if (update.getUpdateObject().isEmpty()) {
+            return;
+        }
+        userOutboxService.queue(update.inc(VERSION, 1), nickname, changes);
+        Optional<User> savedUser;
+        try {
+            savedUser = modifyByNickname(nickname, update);
+        } catch (DuplicateKeyException e) {
+            if (!isNicknameConflict(e)) {
+                throw e;
+            }
+            throw new NicknameAlreadyExistException("user with nick name " + userPatchDTO.getNickname() + " already exist!");
+        }
+        savedUser.ifPresent(user -> cacheSavedUser(nickname, user));
+    }
+
+    /**
+     * Applies {@code update} to the user with {@code nickname}, remembering a nickname it doesn't find.
+     */
+    private Optional<User> modifyByNickname(String nickname, Update update) {
+        return userNotFoundCache.find(nickname, key -> Optional.ofNullable(mongoOperations.findAndModify(
+                new Query(Criteria.where(NICKNAME).is(key)), update, FindAndModifyOptions.options().returnNew(true), User.class)));
+    }
+
+    private void cacheSavedUser(String nickname, User savedUser) {
+        userNotFoundCache.invalidate(savedUser.getNickname());
+        if (!nickname.equals(savedUser.getNickname())) {
+            userCache.invalidate(nickname);
+        }
+        if (savedUser.getNickname() != null) {
+            userCache.put(userMapper.toPublicUserDTO(savedUser));
+        }
+    }
+
+    /**
+     * Replaces every field of the stored user in place and bumps its version in the same write, so concurrent PUTs
+     * each get their own version and the last one wins without a read beforehand. Fields left null are removed, as a
+     * full save would.
+     */
+    static Update replacementOf(User user) {
+        var update = new Update();
+        setOrUnset(update, NICKNAME, user.getNickname());
+        setOrUnset(update, "firstName", user.getFirstName());
+        setOrUnset(update, "lastName", user.getLastName());
+        setOrUnset(update, "password", user.getPassword());
+        setOrUnset(update, "email", user.getEmail());
+        setOrUnset(update, "country", user.getCountry());
+        return update.inc(VERSION, 1);
+    }
+
+    /**
+     * The fields of the replacement that differ from the stored user's.
+     */
+    static UserDTO changedFields(UserDTO stored, UserDTO replacement) {
+        return UserDTO.builder()
+                .nickname(changedOrNull(stored.getNickname(), replacement.getNickname()))
+                .firstName(changedOrNull(stored.getFirstName(), replacement.getFirstName()))
+                .lastName(changedOrNull(stored.getLastName(), replacement.getLastName()))
+                .email(changedOrNull(stored.getEmail(), replacement.getEmail()))
+                .country(changedOrNull(stored.getCountry(), replacement.getCountry()))
+                .build();
+    }
+
+    static Query byNicknameAndVersion(String nickname, Long version) {
+        return new Query(Criteria.where(NICKNAME).is(nickname).and(VERSION).is(version));
+    }
+
+    static UserDTO patchedFields(UserPatchDTO userPatchDTO, String passwordHash) {
+        return UserDTO.builder()
+                .nickname(userPatchDTO.getNickname())
+                .firstName(userPatchDTO.getFirstName())
+                .lastName(userPatchDTO.getLastName())
+                .password(passwordHash)
+                .email(userPatchDTO.getEmail())
+                .country(userPatchDTO.getCountry())
+                .build();
+    }
+
+    static Update changesOf(UserDTO changes) {
+        var update = new Update();
+        setIfPresent(update, NICKNAME, changes.getNickname());
+        setIfPresent(update, "firstName", changes.getFirstName());
+        setIfPresent(update, "lastName", changes.getLastName());
+        setIfPresent(update, "password", changes.getPassword());
+        setIfPresent(update, "email", changes.getEmail());
+        setIfPresent(update, "country", changes.getCountry());
+        return update;
+    }
+
+    private static String changedOrNull(String stored, String value) {
+        return Objects.equals(stored, value) ? null : value;
+    }
+
+    private static void setIfPresent(Update update, String field, Object value) {
+        if (value != null) {
+            update.set(field, value);
+        }
+    }
+
+    private static void setOrUnset(Update update, String field, Object value) {
+        if (value == null) {
+            update.unset(field);
+        } else {
+            update.set(field, value);
+        }
+    }
+
+    /**
+     * The email index is unique too; only a clash on the nickname index means the nickname is taken. The server names
+     * the clashing keys in the error's {@code keyPattern}; where the driver doesn't hand that on, as for single inserts,
+     * the index the error names is compared with the nickname index.
+     */
+    static boolean isNicknameConflict(DuplicateKeyException e) {
+        var error = duplicateKeyError(e);
+        var keyPattern = error.get(KEY_PATTERN);
+        if (keyPattern != null && keyPattern.isDocument()) {
+            return keyPattern.asDocument().containsKey(NICKNAME);
+        }
+        var errorMessage = error.get(ERROR_MESSAGE);
+        var index = DUPLICATE_KEY_INDEX.matcher(errorMessage != null && errorMessage.isString()
+                ? errorMessage.asString().getValue()
+                : String.valueOf(e.getMessage()));
+        return index.find() && NICKNAME.equals(index.group(1));
+    }
+
+    private static BsonDocument duplicateKeyError(DuplicateKeyException e) {
+        if (e.getCause() instanceof MongoCommandException) {
+            return ((MongoCommandException) e.getCause()).getResponse();
+        }
+        if (e.getCause() instanceof MongoWriteException) {
+            var writeError = ((MongoWriteException) e.getCause()).getError();
+            return writeError.getDetails().clone().append(ERROR_MESSAGE, new BsonString(writeError.getMessage()));
         }
+        return new BsonDocument();
     }
 }
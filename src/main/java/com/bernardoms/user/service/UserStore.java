@@ -0,0 +1,34 @@
+package com.bernardoms.user.service;
+
+import com.bernardoms.user.model.User;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The user reads and writes made by the outbox relay and by batch creation. Both wait for their results on threads
+ * of their own, so each profile backs them with the mongo client it already has instead of opening a second one.
+ */
+public interface UserStore {
+    List<User> find(Query query);
+
+    /**
+     * @return how many users were modified
+     */
+    long updateMulti(Query query, Update update);
+
+    void updateFirst(Query query, Update update);
+
+    Set<String> findExistingNicknames(Collection<String> nicknames);
+
+    /**
+     * Inserts every user that doesn't break a unique index, whatever fails before it.
+     *
+     * @throws BulkOperationException listing the users that weren't inserted
+     */
+    void insertUnordered(List<User> users);
+}
@@ -14,7 +14,7 @@ public abstract class IntegrationTest {
     private static boolean alreadySaved = false;
 
     @Autowired
-    MongoTemplate mongoTemplate;
+    protected MongoTemplate mongoTemplate;
 
 
     @BeforeEach
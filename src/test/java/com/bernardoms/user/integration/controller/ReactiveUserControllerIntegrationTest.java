@@ -0,0 +1,167 @@
+package com.bernardoms.user.integration.controller;
+
+import com.amazonaws.services.sns.AmazonSNSAsync;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.mongodb.client.MongoClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Runs the {@code reactive} profile on netty and checks it answers like {@link UserControllerIntegrationTest}.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+@AutoConfigureWebTestClient
+@ActiveProfiles("reactive")
+public class ReactiveUserControllerIntegrationTest {
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @MockBean
+    private AmazonSNSAsync amazonSNSAsync;
+
+    private static final String URL_PATH = "/v1/users";
+
+    @Test
+    public void should_not_open_a_blocking_mongo_client() {
+        assertEquals(0, applicationContext.getBeanNamesForType(MongoClient.class).length);
+        assertEquals(0, applicationContext.getBeanNamesForType(MongoOperations.class).length);
+    }
+
+    @Test
+    public void should_create_find_patch_and_delete_a_user() {
+        var newUser = UserDTO.builder().country("UK")
+                .email("reactiveuser@test.com")
+                .firstName("reactive")
+                .lastName("user")
+                .nickname("reactive_user")
+                .password("newpassword").build();
+
+        webTestClient.post().uri(URL_PATH).contentType(MediaType.APPLICATION_JSON).bodyValue(newUser)
+                .exchange()
+                .expectStatus().isCreated()
+                .expectHeader().value("location", location -> location.endsWith("/v1/users/reactive_user"));
+
+        webTestClient.get().uri(URL_PATH + "/reactive_user")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.firstName").isEqualTo("reactive")
+                .jsonPath("$.country").isEqualTo("UK")
+                .jsonPath("$.password").doesNotExist();
+
+        webTestClient.patch().uri(URL_PATH + "/reactive_user").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(UserPatchDTO.builder().country("BR").build())
+                .exchange()
+                .expectStatus().isNoContent();
+
+        webTestClient.get().uri(URL_PATH + "/reactive_user")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.country").isEqualTo("BR");
+
+        webTestClient.delete().uri(URL_PATH + "/reactive_user")
+                .exchange()
+                .expectStatus().isNoContent();
+
+        webTestClient.get().uri(URL_PATH + "/reactive_user")
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void should_return_conflict_when_creating_user_with_an_already_existing_nick_name() {
+        var newUser = UserDTO.builder().country("UK")
+                .email("reactiveconflict@test.com")
+                .firstName("reactive")
+                .lastName("conflict")
+                .nickname("reactive_conflict")
+                .password("newpassword").build();
+
+        webTestClient.post().uri(URL_PATH).contentType(MediaType.APPLICATION_JSON).bodyValue(newUser)
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.post().uri(URL_PATH).contentType(MediaType.APPLICATION_JSON).bodyValue(newUser)
+                .exchange()
+                .expectStatus().isEqualTo(409)
+                .expectBody()
+                .jsonPath("$.description").isEqualTo("user with nick name reactive_conflict already exist!");
+    }
+
+    @Test
+    public void should_return_bad_request_when_creating_new_user_invalid_body() {
+        var newUser = UserDTO.builder().country("UK").email("newusertest").build();
+
+        webTestClient.post().uri(URL_PATH).contentType(MediaType.APPLICATION_JSON).bodyValue(newUser)
+                .exchange()
+                .expectStatus().isBadRequest()
+                .expectBody()
+                .jsonPath("$.description.nickname").isEqualTo("must not be blank")
+                .jsonPath("$.description.email").isEqualTo("must be a well-formed email address");
+    }
+
+    @Test
+    public void should_return_not_found_when_nick_name_dont_exist() {
+        webTestClient.get().uri(URL_PATH + "/reactive_missing")
+                .exchange()
+                .expectStatus().isNotFound()
+                .expectBody()
+                .jsonPath("$.description").isEqualTo("user with nick name reactive_missing not found!");
+    }
+
+    @Test
+    public void should_return_bad_request_when_cursor_is_invalid() {
+        webTestClient.get().uri(URL_PATH + "?cursor=not-a-cursor")
+                .exchange()
+                .expectStatus().isBadRequest();
+    }
+
+    @Test
+    public void should_return_a_slice_without_total_when_count_is_none_in_any_case() {
+        webTestClient.get().uri(URL_PATH + "?count=NONE&limit=1")
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.content").isArray()
+                .jsonPath("$.totalElements").doesNotExist();
+    }
+
+    @Test
+    public void should_return_only_existing_users_when_looking_up_many_nick_names() {
+        var newUser = UserDTO.builder().country("UK")
+                .email("reactivelookup@test.com")
+                .firstName("reactive")
+                .lastName("lookup")
+                .nickname("reactive_lookup")
+                .password("newpassword").build();
+
+        webTestClient.post().uri(URL_PATH).contentType(MediaType.APPLICATION_JSON).bodyValue(newUser)
+                .exchange()
+                .expectStatus().isCreated();
+
+        webTestClient.post().uri(URL_PATH + "/lookup").contentType(MediaType.APPLICATION_JSON)
+                .bodyValue(List.of("reactive_lookup", "reactive_missing"))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.length()").isEqualTo(1)
+                .jsonPath("$.reactive_lookup.nickname").isEqualTo("reactive_lookup");
+    }
+}
@@ -3,7 +3,9 @@ package com.bernardoms.user.integration.controller;
 import com.amazonaws.services.sns.AmazonSNSAsync;
 import com.bernardoms.user.dto.UserDTO;
 import com.bernardoms.user.integration.IntegrationTest;
+import com.bernardoms.user.model.User;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
@@ -11,6 +13,12 @@ import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.util.List;
+
+import static com.bernardoms.user.support.AsyncMockMvc.perform;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.core.Is.is;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -30,7 +38,7 @@ public class UserControllerIntegrationTest extends IntegrationTest {
 
     @Test
     public void should_return_ok_when_find_existing_user_by_nick_name() throws Exception {
-        mockMvc.perform(get(URL_PATH + "/test_nick"))
+        perform(mockMvc, get(URL_PATH + "/test_nick"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("firstName", is("test")))
                 .andExpect(jsonPath("lastName", is("testing")))
@@ -41,7 +49,25 @@ public class UserControllerIntegrationTest extends IntegrationTest {
 
     @Test
     public void should_return_not_found_when_nick_name_dont_exist() throws Exception {
-        mockMvc.perform(get(URL_PATH + "/test_nick4")).andExpect(status().isNotFound());
+        perform(mockMvc, get(URL_PATH + "/test_nick4")).andExpect(status().isNotFound());
+    }
+
+    @Test
+    public void should_return_only_existing_users_when_looking_up_many_nick_names() throws Exception {
+        perform(mockMvc, post(URL_PATH + "/lookup").content(mapper.writeValueAsString(List.of("test_nick2", "test_nick3", "test_nick4", "test_nick2")))
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()", is(2)))
+                .andExpect(jsonPath("$.test_nick2.nickname", is("test_nick2")))
+                .andExpect(jsonPath("$.test_nick3.nickname", is("test_nick3")))
+                .andExpect(jsonPath("$.test_nick3.password").doesNotExist());
+    }
+
+    @Test
+    public void should_return_bad_request_when_looking_up_no_nick_names() throws Exception {
+        perform(mockMvc, post(URL_PATH + "/lookup").content("[]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.description", is("lookup should have between 1 and 500 nick names")));
     }
 
     @Test
@@ -53,7 +79,7 @@ public class UserControllerIntegrationTest extends IntegrationTest {
                 .nickname("newuser")
                 .password("newpassword").build();
 
-        mockMvc.perform(post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isCreated()).andExpect(header().stringValues("location", "http://localhost/v1/users/newuser"));
     }
 
@@ -62,7 +88,7 @@ public class UserControllerIntegrationTest extends IntegrationTest {
         var newUser = UserDTO.builder().country("UK")
                 .email("newusertest").build();
 
-        mockMvc.perform(post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.description.lastName", is("must not be blank")))
                 .andExpect(jsonPath("$.description.firstName", is("must not be blank")))
@@ -80,29 +106,122 @@ public class UserControllerIntegrationTest extends IntegrationTest {
                 .nickname("test_nick")
                 .password("newpassword").build();
 
-        mockMvc.perform(post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isConflict())
                 .andExpect(jsonPath("$.description", is("user with nick name test_nick already exist!")));
     }
 
+    @Test
+    public void should_return_result_of_each_user_when_creating_users_in_batch() throws Exception {
+        var newUser = UserDTO.builder().country("UK")
+                .email("batchusertest@test.com")
+                .firstName("batch")
+                .lastName("user")
+                .nickname("batchuser")
+                .password("batchpassword").build();
+        var existingUser = UserDTO.builder().country("UK")
+                .email("batchexisting@test.com")
+                .firstName("batch")
+                .lastName("user")
+                .nickname("test_nick")
+                .password("batchpassword").build();
+        var invalidUser = UserDTO.builder().nickname("batchinvalid").build();
+
+        mockMvc.perform(post(URL_PATH + "/batch").content(mapper.writeValueAsString(List.of(newUser, existingUser, invalidUser))).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].status", is("CONFLICT")))
+                .andExpect(jsonPath("$[2].status", is("INVALID")));
+
+        mockMvc.perform(get(URL_PATH + "/batchuser")).andExpect(status().isOk());
+    }
+
+    @Test
+    public void should_stream_filtered_users_without_password_when_exporting() throws Exception {
+        mongoTemplate.save(User.builder().id(new ObjectId("507f191e810c19729de860f0")).country("EX").email("export1@test.com")
+                .firstName("export").lastName("one").nickname("export_nick1").password("export_password").build());
+        mongoTemplate.save(User.builder().id(new ObjectId("507f191e810c19729de860f1")).country("EX").email("export2@test.com")
+                .firstName("export").lastName("two").nickname("export_nick2").password("export_password").build());
+
+        var result = mockMvc.perform(get(URL_PATH + "/export").param("country", "EX"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        var lines = mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andReturn().getResponse().getContentAsString().split("\n");
+
+        assertThat(List.of(lines), containsInAnyOrder(
+                "{\"nickname\":\"export_nick1\",\"firstName\":\"export\",\"lastName\":\"one\",\"email\":\"export1@test.com\",\"country\":\"EX\"}",
+                "{\"nickname\":\"export_nick2\",\"firstName\":\"export\",\"lastName\":\"two\",\"email\":\"export2@test.com\",\"country\":\"EX\"}"));
+    }
+
+    @Test
+    public void should_import_users_from_ndjson_and_report_progress() throws Exception {
+        var body = "{\"nickname\":\"importuser\",\"firstName\":\"import\",\"lastName\":\"user\",\"password\":\"importpassword\","
+                + "\"email\":\"importuser@test.com\",\"country\":\"UK\"}\n"
+                + "{\"nickname\":\"importinvalid\"}\n";
+
+        var location = mockMvc.perform(post(URL_PATH + "/import").content(body).contentType("application/x-ndjson"))
+                .andExpect(status().isAccepted())
+                .andExpect(jsonPath("$.linesRead", is(2)))
+                .andReturn().getResponse().getHeader("Location");
+
+        for (int i = 0; i < 100 && mockMvc.perform(get(location)).andReturn().getResponse().getContentAsString().contains("RUNNING"); i++) {
+            Thread.sleep(50);
+        }
+
+        mockMvc.perform(get(location))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.state", is("COMPLETED")))
+                .andExpect(jsonPath("$.created", is(1)))
+                .andExpect(jsonPath("$.failed", is(1)))
+                .andExpect(jsonPath("$.errors[0].line", is(2)));
+        mockMvc.perform(get(URL_PATH + "/importuser")).andExpect(status().isOk());
+    }
+
     @Test
     public void should_return_no_content_when_deleting_an_user() throws Exception {
-        mockMvc.perform(delete(URL_PATH + "/test_nick2")).andExpect(status().isNoContent());
+        perform(mockMvc, delete(URL_PATH + "/test_nick2")).andExpect(status().isNoContent());
     }
 
     @Test
     public void should_return_no_content_when_updating_user() throws Exception {
         var updateUser = UserDTO.builder().country("UK").password("passowrd")
                 .email("updateUsertest@test.com").build();
-        mockMvc.perform(put(URL_PATH + "/test_nick")
+        perform(mockMvc, put(URL_PATH + "/test_nick")
                 .content(mapper.writeValueAsString(updateUser))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void should_change_only_sent_fields_when_patching_user() throws Exception {
+        var newUser = UserDTO.builder().country("UK")
+                .email("patchusertest@test.com")
+                .firstName("patch")
+                .lastName("user")
+                .nickname("patchuser")
+                .password("newpassword").build();
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        perform(mockMvc, patch(URL_PATH + "/patchuser")
+                .content("{\"country\":\"BR\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+
+        perform(mockMvc, get(URL_PATH + "/patchuser"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("firstName", is("patch")))
+                .andExpect(jsonPath("lastName", is("user")))
+                .andExpect(jsonPath("email", is("patchusertest@test.com")))
+                .andExpect(jsonPath("country", is("BR")));
+    }
+
     @Test
     public void should_return_ok_when_get_users_with_filter() throws Exception {
-        mockMvc.perform(get(URL_PATH)
+        perform(mockMvc, get(URL_PATH)
                 .param("firstName", "test2")
                 .param("lastName", "testing2")
                 .param("nickname", "test_nick3")
@@ -117,7 +236,7 @@ public class UserControllerIntegrationTest extends IntegrationTest {
 
     @Test
     public void should_return_ok_with_all_users_when_get_users_with_no_filters() throws Exception {
-        mockMvc.perform(get(URL_PATH))
+        perform(mockMvc, get(URL_PATH))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.content[0].firstName", is("test")))
                 .andExpect(jsonPath("$.content[0].lastName", is("testing")))
@@ -138,7 +257,7 @@ public class UserControllerIntegrationTest extends IntegrationTest {
 
     @Test
     public void should_return_ok_with_all_users_when_get_users_with_paging_filter() throws Exception {
-        mockMvc.perform(get(URL_PATH).param("offset", "1").param("limit", "1"))
+        perform(mockMvc, get(URL_PATH).param("offset", "1").param("limit", "1"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("$.content[0].firstName", is("test2")))
                 .andExpect(jsonPath("$.content[0].lastName", is("testing2")))
@@ -149,4 +268,34 @@ public class UserControllerIntegrationTest extends IntegrationTest {
                 .andExpect(jsonPath("$.pageable.offset", is(1)))
                 .andExpect(jsonPath("$.last", is(false)));
     }
+
+    @Test
+    public void should_return_ok_with_next_cursor_when_get_users_with_cursor() throws Exception {
+        perform(mockMvc, get(URL_PATH).param("cursor", "").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()", is(1)))
+                .andExpect(jsonPath("$.nextCursor", notNullValue()));
+    }
+
+    @Test
+    public void should_return_bad_request_when_get_users_with_invalid_cursor() throws Exception {
+        perform(mockMvc, get(URL_PATH).param("cursor", "invalid"))
+                .andExpect(status().isBadRequest());
+    }
+
+    @Test
+    public void should_return_ok_without_total_when_get_users_with_count_none() throws Exception {
+        perform(mockMvc, get(URL_PATH).param("count", "none").param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content.length()", is(1)))
+                .andExpect(jsonPath("$.last", is(false)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    public void should_return_ok_with_total_when_get_users_with_count_estimated() throws Exception {
+        perform(mockMvc, get(URL_PATH).param("count", "estimated").param("country", "BR"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.totalElements", notNullValue()));
+    }
 }
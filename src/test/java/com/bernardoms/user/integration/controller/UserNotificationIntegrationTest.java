@@ -0,0 +1,118 @@
+package com.bernardoms.user.integration.controller;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.integration.IntegrationTest;
+import com.bernardoms.user.model.OutboxEvent;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.support.LocalSnsServer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static com.bernardoms.user.support.AsyncMockMvc.perform;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@AutoConfigureMockMvc
+public class UserNotificationIntegrationTest extends IntegrationTest {
+    private static LocalSnsServer localSnsServer;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private ObjectMapper mapper;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    private static final String URL_PATH = "/v1/users";
+
+    @DynamicPropertySource
+    static void snsProperties(DynamicPropertyRegistry registry) throws IOException {
+        localSnsServer = new LocalSnsServer();
+        var spillFile = Files.createTempDirectory("notify-spill").resolve("spill.ndjson").toString();
+        registry.add("sns.endpoint", localSnsServer::getEndpoint);
+        registry.add("user.outbox.poll-millis", () -> "100");
+        registry.add("user.notify.publish-timeout-millis", () -> "1000");
+        registry.add("user.notify.breaker.failure-threshold", () -> "2");
+        registry.add("user.notify.breaker.open-millis", () -> "500");
+        registry.add("user.notify.spill.replay-millis", () -> "200");
+        registry.add("user.notify.spill.path", () -> spillFile);
+        registry.add("management.endpoints.web.exposure.include", () -> "usernotify");
+    }
+
+    @AfterAll
+    static void stopSns() {
+        localSnsServer.close();
+    }
+
+    @Test
+    public void should_spill_updates_while_sns_fails_and_publish_them_once_it_recovers() throws Exception {
+        var user = UserDTO.builder().country("UK")
+                .email("outboxusertest@test.com")
+                .firstName("outbox")
+                .lastName("user")
+                .nickname("outboxuser")
+                .password("newpassword").build();
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(user)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isCreated());
+
+        localSnsServer.setFailureRate(1);
+        user.setCountry("BR");
+        perform(mockMvc, put(URL_PATH + "/outboxuser").content(mapper.writeValueAsString(user)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+
+        await(() -> "OPEN".equals(notifyStatus().get("circuitBreakerState").asText())
+                && notifyStatus().get("spilledNotifications").asLong() == 1);
+        await(() -> outboxOf("outboxuser").isEmpty());
+        assertTrue(localSnsServer.getMessages().isEmpty());
+
+        localSnsServer.setFailureRate(0);
+        await(() -> localSnsServer.getMessages().stream().anyMatch(message -> message.get("Message").contains("\"country\":\"BR\"")));
+        assertTrue(localSnsServer.getMessages().stream().noneMatch(message -> message.get("Message").contains("password")));
+        assertTrue(localSnsServer.getMessages().stream().noneMatch(message -> message.get("Message").contains("firstName")));
+        await(() -> "CLOSED".equals(notifyStatus().get("circuitBreakerState").asText())
+                && notifyStatus().get("spilledNotifications").asLong() == 0);
+    }
+
+    private JsonNode notifyStatus() {
+        try {
+            var response = mockMvc.perform(get("/actuator/usernotify")).andExpect(status().isOk()).andReturn().getResponse();
+            return mapper.readTree(response.getContentAsString());
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private List<OutboxEvent> outboxOf(String nickname) {
+        var stored = mongoTemplate.findOne(new Query(Criteria.where("nickname").is(nickname)), User.class);
+        return stored == null || stored.getOutbox() == null ? List.of() : stored.getOutbox();
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "condition not met in 10s");
+            Thread.sleep(50);
+        }
+    }
+}
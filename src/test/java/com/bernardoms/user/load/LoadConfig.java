@@ -0,0 +1,55 @@
+package com.bernardoms.user.load;
+
+import lombok.Builder;
+import lombok.Getter;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Harness settings, read from {@code load.*} system properties.
+ */
+@Getter
+@Builder
+public class LoadConfig {
+    private final int users;
+    private final long seed;
+    private final int rate;
+    private final Duration warmup;
+    private final Duration duration;
+    private final int maxInFlight;
+    private final Map<Operation, Integer> mix;
+    private final String profiles;
+    private final String reportDir;
+    private final long snsLatencyMillis;
+    private final double snsFailureRate;
+
+    public static LoadConfig fromSystemProperties() {
+        return LoadConfig.builder()
+                .users(Integer.getInteger("load.users", 1_000_000))
+                .seed(Long.getLong("load.seed", 42L))
+                .rate(Integer.getInteger("load.rate", 500))
+                .warmup(Duration.ofSeconds(Long.getLong("load.warmup", 10L)))
+                .duration(Duration.ofSeconds(Long.getLong("load.duration", 60L)))
+                .maxInFlight(Integer.getInteger("load.maxInFlight", 1_000))
+                .mix(parseMix(System.getProperty("load.mix", "get=60,getUnknown=5,list=15,post=10,put=8,delete=2")))
+                .profiles(System.getProperty("load.profiles", ""))
+                .reportDir(System.getProperty("load.reportDir", "target/load-report"))
+                .snsLatencyMillis(Long.getLong("load.snsLatencyMillis", 0L))
+                .snsFailureRate(Double.parseDouble(System.getProperty("load.snsFailureRate", "0")))
+                .build();
+    }
+
+    static Map<Operation, Integer> parseMix(String mix) {
+        var weights = new LinkedHashMap<Operation, Integer>();
+        for (String entry : mix.split(",")) {
+            var pair = entry.trim().split("=");
+            if (pair.length != 2) {
+                throw new IllegalArgumentException("invalid load.mix entry " + entry);
+            }
+            weights.put(Operation.fromKey(pair[0].trim()), Integer.parseInt(pair[1].trim()));
+        }
+        return weights;
+    }
+}
@@ -0,0 +1,172 @@
+package com.bernardoms.user.load;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop driver: requests are scheduled at a fixed rate regardless of how fast responses come back, and latency
+ * is measured from the scheduled time, so a stalled server shows up in the percentiles instead of slowing the load.
+ */
+@Slf4j
+public class LoadDriver {
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(30);
+
+    private final String baseUrl;
+    private final LoadConfig config;
+    private final HttpClient httpClient;
+    private final SplittableRandom random;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+    private final ConcurrentLinkedQueue<String> created = new ConcurrentLinkedQueue<>();
+    private final AtomicLong createdSequence = new AtomicLong();
+
+    public LoadDriver(String baseUrl, LoadConfig config) {
+        this.baseUrl = baseUrl;
+        this.config = config;
+        this.httpClient = HttpClient.newBuilder().connectTimeout(REQUEST_TIMEOUT).build();
+        this.random = new SplittableRandom(config.getSeed());
+
+        var mix = config.getMix();
+        this.operations = mix.keySet().toArray(new Operation[0]);
+        this.cumulativeWeights = new int[operations.length];
+        int total = 0;
+        for (int i = 0; i < operations.length; i++) {
+            total += mix.get(operations[i]);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    public LoadReport run() throws InterruptedException {
+        var report = new LoadReport();
+        var inFlight = new Semaphore(config.getMaxInFlight());
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / config.getRate();
+        long start = System.nanoTime();
+        long measureFrom = start + config.getWarmup().toNanos();
+        long end = measureFrom + config.getDuration().toNanos();
+
+        log.info("driving " + config.getRate() + " req/s for " + config.getWarmup() + " warmup + " + config.getDuration()
+                + " with mix " + config.getMix());
+
+        for (long i = 0; ; i++) {
+            long intended = start + i * intervalNanos;
+            if (intended >= end) {
+                break;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+
+            var operation = nextOperation();
+            if (!inFlight.tryAcquire()) {
+                if (intended >= measureFrom) {
+                    report.drop();
+                }
+                continue;
+            }
+
+            httpClient.sendAsync(request(operation), HttpResponse.BodyHandlers.discarding())
+                    .whenComplete((response, error) -> {
+                        inFlight.release();
+                        if (intended >= measureFrom) {
+                            boolean success = error == null && response.statusCode() == operation.getExpectedStatus();
+                            report.record(operation, System.nanoTime() - intended, success);
+                        }
+                        if (error == null && operation == Operation.CREATE_USER && response.statusCode() == 201) {
+                            response.headers().firstValue("Location").ifPresent(this::rememberCreated);
+                        }
+                    });
+        }
+
+        if (!inFlight.tryAcquire(config.getMaxInFlight(), REQUEST_TIMEOUT.toSeconds(), TimeUnit.SECONDS)) {
+            log.warn("requests still in flight after " + REQUEST_TIMEOUT + ", reporting without them");
+        }
+        return report;
+    }
+
+    /**
+     * Deletes only touch users this run created, so the seeded set stays intact for reads; until one exists a delete
+     * is sent, and recorded, as a read of a seeded user instead.
+     */
+    private Operation nextOperation() {
+        var operation = pickOperation();
+        return operation == Operation.DELETE_USER && created.isEmpty() ? Operation.GET_USER : operation;
+    }
+
+    private Operation pickOperation() {
+        int pick = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        for (int i = 0; i < cumulativeWeights.length; i++) {
+            if (pick < cumulativeWeights[i]) {
+                return operations[i];
+            }
+        }
+        return operations[operations.length - 1];
+    }
+
+    private HttpRequest request(Operation operation) {
+        switch (operation) {
+            case GET_USER:
+                return get("/v1/users/" + seededNickname());
+            case GET_UNKNOWN_USER:
+                return get("/v1/users/unknown" + random.nextInt(Integer.MAX_VALUE));
+            case LIST_USERS:
+                var country = UserSeeder.COUNTRIES[random.nextInt(UserSeeder.COUNTRIES.length)];
+                return get("/v1/users?country=" + country + "&offset=" + random.nextInt(1_000) + "&limit=20");
+            case CREATE_USER:
+                return send("POST", "/v1/users", userJson("load" + createdSequence.incrementAndGet()));
+            case UPDATE_USER:
+                var updated = seededNickname();
+                return send("PUT", "/v1/users/" + updated, userJson(updated));
+            case DELETE_USER:
+                // only this thread takes from created, so nextOperation saw it non-empty
+                return HttpRequest.newBuilder(uri("/v1/users/" + created.poll())).timeout(REQUEST_TIMEOUT).DELETE().build();
+            default:
+                throw new IllegalStateException("unsupported operation " + operation);
+        }
+    }
+
+    private void rememberCreated(String location) {
+        created.add(location.substring(location.lastIndexOf('/') + 1));
+    }
+
+    private String seededNickname() {
+        return UserSeeder.nickname(random.nextInt(config.getUsers()));
+    }
+
+    private String userJson(String nickname) {
+        return String.format("{\"nickname\":\"%s\",\"firstName\":\"%s\",\"lastName\":\"%s\",\"password\":\"password\","
+                        + "\"email\":\"%s@load.test\",\"country\":\"%s\"}",
+                nickname,
+                UserSeeder.FIRST_NAMES[random.nextInt(UserSeeder.FIRST_NAMES.length)],
+                UserSeeder.LAST_NAMES[random.nextInt(UserSeeder.LAST_NAMES.length)],
+                nickname,
+                UserSeeder.COUNTRIES[random.nextInt(UserSeeder.COUNTRIES.length)]);
+    }
+
+    private HttpRequest get(String path) {
+        return HttpRequest.newBuilder(uri(path)).timeout(REQUEST_TIMEOUT).GET().build();
+    }
+
+    private HttpRequest send(String method, String path, String body) {
+        return HttpRequest.newBuilder(uri(path))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "application/json")
+                .method(method, HttpRequest.BodyPublishers.ofString(body))
+                .build();
+    }
+
+    private URI uri(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
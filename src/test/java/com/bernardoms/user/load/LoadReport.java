@@ -0,0 +1,77 @@
+package com.bernardoms.user.load;
+
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency histograms (in nanoseconds, measured from the intended send time) and error counts per endpoint.
+ */
+@Slf4j
+public class LoadReport {
+    private static final double NANOS_PER_MILLI = 1_000_000.0;
+
+    private final Map<Operation, Histogram> histograms = new EnumMap<>(Operation.class);
+    private final Map<Operation, AtomicLong> errors = new EnumMap<>(Operation.class);
+    private final AtomicLong dropped = new AtomicLong();
+
+    public LoadReport() {
+        for (Operation operation : Operation.values()) {
+            histograms.put(operation, new ConcurrentHistogram(TimeUnit.MINUTES.toNanos(5), 3));
+            errors.put(operation, new AtomicLong());
+        }
+    }
+
+    public void record(Operation operation, long latencyNanos, boolean success) {
+        histograms.get(operation).recordValue(Math.min(latencyNanos, TimeUnit.MINUTES.toNanos(5)));
+        if (!success) {
+            errors.get(operation).incrementAndGet();
+        }
+    }
+
+    public void drop() {
+        dropped.incrementAndGet();
+    }
+
+    public void write(Path reportDir, Duration measured) throws IOException {
+        Files.createDirectories(reportDir);
+
+        var summary = new StringBuilder(String.format("%-40s %10s %8s %10s %10s %10s %10s %10s%n",
+                "endpoint", "count", "errors", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms"));
+
+        for (Operation operation : Operation.values()) {
+            var histogram = histograms.get(operation);
+            if (histogram.getTotalCount() == 0) {
+                continue;
+            }
+
+            try (var out = new PrintStream(Files.newOutputStream(reportDir.resolve(operation.getKey() + ".hgrm")))) {
+                histogram.outputPercentileDistribution(out, NANOS_PER_MILLI);
+            }
+
+            summary.append(String.format("%-40s %10d %8d %10.1f %10.2f %10.2f %10.2f %10.2f%n",
+                    operation.getEndpoint(),
+                    histogram.getTotalCount(),
+                    errors.get(operation).get(),
+                    histogram.getTotalCount() / (double) measured.toSeconds(),
+                    histogram.getValueAtPercentile(50) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99) / NANOS_PER_MILLI,
+                    histogram.getValueAtPercentile(99.9) / NANOS_PER_MILLI,
+                    histogram.getMaxValue() / NANOS_PER_MILLI));
+        }
+        summary.append("dropped (max in-flight reached): ").append(dropped.get()).append(System.lineSeparator());
+
+        Files.writeString(reportDir.resolve("summary.txt"), summary);
+        log.info("load report written to " + reportDir.toAbsolutePath() + System.lineSeparator() + summary);
+    }
+}
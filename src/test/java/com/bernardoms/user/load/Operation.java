@@ -0,0 +1,31 @@
+package com.bernardoms.user.load;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.Arrays;
+
+/**
+ * Request types the harness can drive, each reported as its own endpoint.
+ */
+@Getter
+@RequiredArgsConstructor
+public enum Operation {
+    GET_USER("get", "GET /v1/users/{nickname}", 200),
+    GET_UNKNOWN_USER("getUnknown", "GET /v1/users/{nickname} (not found)", 404),
+    LIST_USERS("list", "GET /v1/users", 200),
+    CREATE_USER("post", "POST /v1/users", 201),
+    UPDATE_USER("put", "PUT /v1/users/{nickname}", 204),
+    DELETE_USER("delete", "DELETE /v1/users/{nickname}", 204);
+
+    private final String key;
+    private final String endpoint;
+    private final int expectedStatus;
+
+    public static Operation fromKey(String key) {
+        return Arrays.stream(values())
+                .filter(operation -> operation.key.equals(key))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("unknown operation " + key));
+    }
+}
@@ -0,0 +1,65 @@
+package com.bernardoms.user.load;
+
+import com.bernardoms.user.UserApplication;
+import com.bernardoms.user.support.LocalSnsServer;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.mongodb.core.MongoTemplate;
+
+import java.nio.file.Path;
+
+/**
+ * Boots the application against embedded Mongo and {@link LocalSnsServer}, seeds a deterministic user set and
+ * drives an open-loop request mix at a fixed rate, writing one HdrHistogram file per endpoint plus a summary.
+ * <p>
+ * Run with {@code mvn -Pload test-compile exec:java} and tune through {@code load.*} system properties
+ * (see {@link LoadConfig}); any Spring property can be passed the same way, e.g. {@code -Dlogging.level.root=WARN}.
+ */
+@Slf4j
+public class UserLoadHarness {
+
+    public static void main(String[] args) throws Exception {
+        var config = LoadConfig.fromSystemProperties();
+
+        try (var sns = new LocalSnsServer()) {
+            sns.setRetainMessages(false);
+            sns.setLatencyMillis(config.getSnsLatencyMillis());
+            sns.setFailureRate(config.getSnsFailureRate());
+
+            var context = new SpringApplicationBuilder(UserApplication.class)
+                    .profiles(config.getProfiles().isBlank() ? new String[0] : config.getProfiles().split(","))
+                    .properties("server.port=0",
+                            "spring.data.mongodb.database=load",
+                            "sns.endpoint=" + sns.getEndpoint())
+                    .run(args);
+
+            try {
+                try (var mongoClient = seedClient(context.getEnvironment())) {
+                    var database = context.getEnvironment().getProperty("spring.data.mongodb.database");
+                    new UserSeeder(new MongoTemplate(mongoClient, database), config.getSeed()).seed(config.getUsers());
+                }
+
+                var port = context.getEnvironment().getProperty("local.server.port");
+                var report = new LoadDriver("http://localhost:" + port, config).run();
+                report.write(Path.of(config.getReportDir()), config.getDuration());
+
+                log.info("sns publishes: " + sns.getPublishedCount() + ", failed: " + sns.getFailedCount());
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    /**
+     * The seeder opens a client of its own, as the {@code reactive} profile has no {@link MongoTemplate}.
+     */
+    private static MongoClient seedClient(Environment environment) {
+        var embeddedPort = environment.getProperty("local.mongo.port");
+        return MongoClients.create(embeddedPort == null
+                ? environment.getProperty("spring.data.mongodb.uri")
+                : "mongodb://localhost:" + embeddedPort);
+    }
+}
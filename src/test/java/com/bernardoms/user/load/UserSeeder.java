@@ -0,0 +1,62 @@
+package com.bernardoms.user.load;
+
+import com.bernardoms.user.model.User;
+import com.mongodb.client.model.InsertManyOptions;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+
+/**
+ * Deterministic user generator: the same seed always produces the same users, so runs are comparable.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class UserSeeder {
+    static final String[] FIRST_NAMES = {"ana", "bruno", "carla", "diego", "elisa", "fabio", "gabriela", "heitor", "isabela", "joao"};
+    static final String[] LAST_NAMES = {"silva", "santos", "oliveira", "souza", "smith", "jones", "muller", "schmidt", "rossi", "tanaka"};
+    static final String[] COUNTRIES = {"BR", "BR", "BR", "BR", "US", "US", "UK", "DE", "IN", "JP"};
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final MongoTemplate mongoTemplate;
+    private final long seed;
+
+    public static String nickname(int index) {
+        return "user" + index;
+    }
+
+    public void seed(int users) {
+        var collection = mongoTemplate.getCollection(mongoTemplate.getCollectionName(User.class));
+        collection.deleteMany(new Document());
+
+        var password = new BCryptPasswordEncoder().encode("password");
+        var random = new SplittableRandom(seed);
+        var batch = new ArrayList<Document>(BATCH_SIZE);
+        var started = System.nanoTime();
+
+        for (int i = 0; i < users; i++) {
+            batch.add(new Document("nickname", nickname(i))
+                    .append("firstName", FIRST_NAMES[random.nextInt(FIRST_NAMES.length)])
+                    .append("lastName", LAST_NAMES[random.nextInt(LAST_NAMES.length)])
+                    .append("password", password)
+                    .append("email", nickname(i) + "@load.test")
+                    .append("country", COUNTRIES[random.nextInt(COUNTRIES.length)])
+                    .append("version", 0L));
+
+            if (batch.size() == BATCH_SIZE) {
+                collection.insertMany(batch, new InsertManyOptions().ordered(false));
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            collection.insertMany(batch, new InsertManyOptions().ordered(false));
+        }
+
+        log.info("seeded " + users + " users in " + (System.nanoTime() - started) / 1_000_000 + " ms");
+    }
+}
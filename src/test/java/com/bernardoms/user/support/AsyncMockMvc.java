@@ -0,0 +1,23 @@
+package com.bernardoms.user.support;
+
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.RequestBuilder;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+
+/**
+ * Performs a request and, when the handler returned a future, the async dispatch that writes its result, so tests
+ * can assert on the final response either way.
+ */
+public final class AsyncMockMvc {
+
+    private AsyncMockMvc() {
+    }
+
+    public static ResultActions perform(MockMvc mockMvc, RequestBuilder request) throws Exception {
+        var actions = mockMvc.perform(request);
+        var result = actions.andReturn();
+        return result.getRequest().isAsyncStarted() ? mockMvc.perform(asyncDispatch(result)) : actions;
+    }
+}
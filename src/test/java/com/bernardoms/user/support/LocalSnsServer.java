@@ -0,0 +1,144 @@
+package com.bernardoms.user.support;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the SNS query API, so the application can be pointed at it through {@code sns.endpoint}
+ * instead of localstack. It answers {@code Publish} with a valid response and can inject latency and failures.
+ */
+@Slf4j
+public class LocalSnsServer implements AutoCloseable {
+    private static final String NAMESPACE = "http://sns.amazonaws.com/doc/2010-03-31/";
+
+    private final HttpServer server;
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final ConcurrentLinkedQueue<Map<String, String>> messages = new ConcurrentLinkedQueue<>();
+
+    private volatile boolean retainMessages = true;
+    private volatile long latencyMillis;
+    private volatile double failureRate;
+
+    public LocalSnsServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", this::handle);
+        server.start();
+    }
+
+    public String getEndpoint() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public List<Map<String, String>> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    public void setRetainMessages(boolean retainMessages) {
+        this.retainMessages = retainMessages;
+    }
+
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    public void setFailureRate(double failureRate) {
+        this.failureRate = failureRate;
+    }
+
+    public void reset() {
+        published.set(0);
+        failed.set(0);
+        messages.clear();
+        latencyMillis = 0;
+        failureRate = 0;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            var params = parseForm(new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8));
+
+            if (latencyMillis > 0) {
+                Thread.sleep(latencyMillis);
+            }
+
+            if (failureRate > 0 && ThreadLocalRandom.current().nextDouble() < failureRate) {
+                failed.incrementAndGet();
+                respond(exchange, 500, "<ErrorResponse xmlns=\"" + NAMESPACE + "\"><Error><Type>Receiver</Type>"
+                        + "<Code>InternalFailure</Code><Message>injected failure</Message></Error>"
+                        + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+                return;
+            }
+
+            if (!"Publish".equals(params.get("Action"))) {
+                respond(exchange, 400, "<ErrorResponse xmlns=\"" + NAMESPACE + "\"><Error><Type>Sender</Type>"
+                        + "<Code>InvalidAction</Code><Message>unsupported action " + params.get("Action") + "</Message></Error>"
+                        + "<RequestId>" + UUID.randomUUID() + "</RequestId></ErrorResponse>");
+                return;
+            }
+
+            published.incrementAndGet();
+            if (retainMessages) {
+                messages.add(params);
+            }
+
+            respond(exchange, 200, "<PublishResponse xmlns=\"" + NAMESPACE + "\"><PublishResult>"
+                    + "<MessageId>" + UUID.randomUUID() + "</MessageId></PublishResult>"
+                    + "<ResponseMetadata><RequestId>" + UUID.randomUUID() + "</RequestId></ResponseMetadata></PublishResponse>");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.error("local sns failed to handle request", e);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void respond(HttpExchange exchange, int status, String body) throws IOException {
+        var bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    private Map<String, String> parseForm(String body) {
+        var params = new HashMap<String, String>();
+        for (String pair : body.split("&")) {
+            var separator = pair.indexOf('=');
+            if (separator > 0) {
+                params.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+}
@@ -0,0 +1,85 @@
+package com.bernardoms.user.unit.cache;
+
+import com.bernardoms.user.cache.CacheStatsEndpoint;
+import com.bernardoms.user.cache.CacheStatsJmxEndpointExtension;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.actuate.endpoint.InvalidEndpointRequestException;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CacheStatsEndpointUnitTest {
+
+    private UserNotFoundCache userNotFoundCache;
+    private SimpleMeterRegistry meterRegistry;
+    private CacheStatsEndpoint cacheStatsEndpoint;
+
+    @BeforeEach
+    public void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userNotFoundCache = new UserNotFoundCache(30, 100, meterRegistry);
+        cacheStatsEndpoint = new CacheStatsEndpoint(List.of(userNotFoundCache), 60, 10_000, meterRegistry);
+    }
+
+    @Test
+    public void should_return_stats_of_every_cache() {
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+
+        var descriptor = cacheStatsEndpoint.caches().get(UserNotFoundCache.CACHE_NAME);
+
+        assertEquals(1, descriptor.getHitCount());
+        assertEquals(1, descriptor.getMissCount());
+        assertEquals(0.5, descriptor.getHitRate());
+        assertEquals(100L, descriptor.getMaximumSize());
+    }
+
+    @Test
+    public void should_compute_hit_rate_over_the_window_only() {
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+        cacheStatsEndpoint.sample();
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+
+        var descriptor = cacheStatsEndpoint.cache(UserNotFoundCache.CACHE_NAME);
+
+        assertEquals(2, descriptor.getWindowRequestCount());
+        assertEquals(1.0, descriptor.getWindowHitRate());
+        assertEquals(1.0, meterRegistry.get("cache.window.hit.ratio").tag("cache", UserNotFoundCache.CACHE_NAME).gauge().value());
+    }
+
+    @Test
+    public void should_resize_cache_at_runtime_over_jmx() {
+        var descriptor = new CacheStatsJmxEndpointExtension(cacheStatsEndpoint).resize(UserNotFoundCache.CACHE_NAME, 10);
+
+        assertEquals(10L, descriptor.getMaximumSize());
+        assertEquals(10.0, meterRegistry.get("cache.maximum.size").tag("cache", UserNotFoundCache.CACHE_NAME).gauge().value());
+    }
+
+    @Test
+    public void should_reject_non_positive_maximum_size() {
+        assertThrows(InvalidEndpointRequestException.class, () -> cacheStatsEndpoint.resize(UserNotFoundCache.CACHE_NAME, 0));
+    }
+
+    @Test
+    public void should_return_null_for_unknown_cache() {
+        assertNull(cacheStatsEndpoint.cache("unknown"));
+        assertNull(cacheStatsEndpoint.resize("unknown", 10));
+    }
+
+    @Test
+    public void should_not_expose_resize_on_the_web_endpoint() {
+        assertFalse(Arrays.stream(CacheStatsEndpoint.class.getMethods())
+                .anyMatch(method -> method.isAnnotationPresent(WriteOperation.class)));
+    }
+}
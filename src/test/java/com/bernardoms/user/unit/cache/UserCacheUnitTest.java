@@ -0,0 +1,180 @@
+package com.bernardoms.user.unit.cache;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.ExecutorSaturatedException;
+import com.bernardoms.user.service.BoundedExecutor;
+import com.bernardoms.user.service.MongoUserLoader;
+import com.bernardoms.user.service.UserQueryService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserCacheUnitTest {
+
+    @Mock
+    private UserQueryService userQueryService;
+
+    private final BoundedExecutor mongoExecutor = new BoundedExecutor("mongo", 2, 100, 5_000, 1, new SimpleMeterRegistry());
+    private UserCache userCache;
+
+    @BeforeEach
+    public void setUp() {
+        var userNotFoundCache = new UserNotFoundCache(30, 100, new SimpleMeterRegistry());
+        userCache = new UserCache(new MongoUserLoader(userQueryService, mongoExecutor), userNotFoundCache, 100, 60, 600,
+                new SimpleMeterRegistry());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        mongoExecutor.shutdown();
+    }
+
+    @Test
+    public void should_load_user_once_for_concurrent_gets() throws Exception {
+        var release = new CountDownLatch(1);
+        when(userQueryService.findPublicUserByNickname("test")).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(user("test"));
+        });
+
+        var gets = new ArrayList<CompletableFuture<Optional<UserDTO>>>();
+        for (int i = 0; i < 8; i++) {
+            gets.add(CompletableFuture.supplyAsync(() -> userCache.get("test")));
+        }
+        release.countDown();
+
+        for (var get : gets) {
+            assertEquals("test", get.get(5, TimeUnit.SECONDS).get().getNickname());
+        }
+        verify(userQueryService, times(1)).findPublicUserByNickname("test");
+    }
+
+    @Test
+    public void should_refuse_a_load_when_the_mongo_executor_is_saturated() {
+        var release = new CountDownLatch(1);
+        var saturatedExecutor = new BoundedExecutor("mongo", 1, 1, 5_000, 1, new SimpleMeterRegistry());
+        var saturatedCache = new UserCache(new MongoUserLoader(userQueryService, saturatedExecutor),
+                new UserNotFoundCache(30, 100, new SimpleMeterRegistry()), 100, 60, 600, new SimpleMeterRegistry());
+        when(userQueryService.findPublicUserByNickname(anyString())).thenAnswer(invocation -> {
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(user(invocation.getArgument(0)));
+        });
+
+        saturatedCache.getAsync("running");
+        saturatedCache.getAsync("queued");
+        var exception = assertThrows(ExecutionException.class, () -> saturatedCache.getAsync("refused").get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof ExecutorSaturatedException);
+        release.countDown();
+        saturatedExecutor.shutdown();
+    }
+
+    @Test
+    public void should_not_query_again_for_a_nickname_recently_not_found() {
+        when(userQueryService.findPublicUserByNickname("test")).thenReturn(Optional.empty());
+
+        assertFalse(userCache.get("test").isPresent());
+        assertFalse(userCache.get("test").isPresent());
+
+        verify(userQueryService, times(1)).findPublicUserByNickname("test");
+    }
+
+    @Test
+    public void should_load_only_missing_nicknames_with_a_single_query_on_get_all() {
+        when(userQueryService.findPublicUserByNickname("cached")).thenReturn(Optional.of(user("cached")));
+        when(userQueryService.findPublicUsersByNicknames(anyCollection())).thenReturn(List.of(user("other")));
+
+        userCache.get("cached");
+        var users = userCache.getAll(List.of("cached", "other", "unknown"));
+
+        assertEquals(2, users.size());
+        assertEquals("cached", users.get("cached").getNickname());
+        assertEquals("other", users.get("other").getNickname());
+        assertFalse(users.containsKey("unknown"));
+        verify(userQueryService, times(1)).findPublicUsersByNicknames(List.of("other", "unknown"));
+    }
+
+    @Test
+    public void should_not_query_nicknames_known_to_be_missing_on_get_all() {
+        when(userQueryService.findPublicUserByNickname("unknown")).thenReturn(Optional.empty());
+        when(userQueryService.findPublicUsersByNicknames(anyCollection())).thenReturn(List.of(user("other")));
+
+        userCache.get("unknown");
+        var users = userCache.getAll(List.of("other", "unknown"));
+
+        assertEquals(1, users.size());
+        verify(userQueryService, times(1)).findPublicUsersByNicknames(List.of("other"));
+    }
+
+    @Test
+    public void should_load_again_after_invalidate() {
+        when(userQueryService.findPublicUserByNickname("test")).thenReturn(Optional.of(user("test")));
+
+        userCache.get("test");
+        userCache.invalidate("test");
+
+        assertTrue(userCache.get("test").isPresent());
+        verify(userQueryService, times(2)).findPublicUserByNickname("test");
+    }
+
+    @Test
+    public void should_serve_written_user_without_loading() {
+        userCache.put(user("test", 1L));
+
+        assertEquals(1L, userCache.get("test").get().getVersion());
+        verify(userQueryService, never()).findPublicUserByNickname(anyString());
+    }
+
+    @Test
+    public void should_only_return_cached_users_without_loading_when_if_present() {
+        userCache.put(user("test", 1L));
+
+        assertEquals(1L, userCache.getIfPresent("test").get().getVersion());
+        assertTrue(userCache.getIfPresent("other").isEmpty());
+        verify(userQueryService, never()).findPublicUserByNickname(anyString());
+    }
+
+    @Test
+    public void should_keep_newer_version_when_an_older_write_arrives_later() {
+        var newer = user("test", 3L);
+        newer.setFirstName("newer");
+        var older = user("test", 2L);
+        older.setFirstName("older");
+
+        userCache.put(newer);
+        userCache.put(older);
+
+        assertEquals("newer", userCache.get("test").get().getFirstName());
+    }
+
+    private UserDTO user(String nickname) {
+        return new UserDTO(nickname, "test", "unit", nickname + "@test.com", "UK");
+    }
+
+    private UserDTO user(String nickname, Long version) {
+        var user = user(nickname);
+        user.setVersion(version);
+        return user;
+    }
+}
@@ -0,0 +1,92 @@
+package com.bernardoms.user.unit.cache;
+
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.UserDTO;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class UserNotFoundCacheUnitTest {
+    private final UserNotFoundCache userNotFoundCache = new UserNotFoundCache(30, 100, new SimpleMeterRegistry());
+
+    @Test
+    public void should_remember_a_miss_and_return_found_users_without_caching_them() {
+        var queries = new AtomicInteger();
+        var user = UserDTO.builder().nickname("found").build();
+
+        assertTrue(userNotFoundCache.find("missing", nickname -> {
+            queries.incrementAndGet();
+            return Optional.empty();
+        }).isEmpty());
+        assertTrue(userNotFoundCache.find("missing", nickname -> {
+            queries.incrementAndGet();
+            return Optional.empty();
+        }).isEmpty());
+        assertEquals(Optional.of(user), userNotFoundCache.find("found", nickname -> Optional.of(user)));
+
+        assertEquals(1, queries.get());
+        assertTrue(userNotFoundCache.isMissing("missing"));
+        assertFalse(userNotFoundCache.isMissing("found"));
+    }
+
+    @Test
+    public void should_not_hold_the_cache_while_querying_nor_keep_a_miss_invalidated_meanwhile() throws Exception {
+        var querying = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var find = CompletableFuture.supplyAsync(() -> userNotFoundCache.find("created", nickname -> {
+            querying.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return Optional.empty();
+        }));
+        assertTrue(querying.await(1, TimeUnit.SECONDS));
+
+        CompletableFuture.runAsync(() -> userNotFoundCache.invalidate("created")).get(1, TimeUnit.SECONDS);
+        release.countDown();
+
+        assertTrue(find.get(1, TimeUnit.SECONDS).isEmpty());
+        assertFalse(userNotFoundCache.isMissing("created"));
+    }
+
+    @Test
+    public void should_keep_a_miss_when_another_nickname_is_invalidated_meanwhile() {
+        var user = userNotFoundCache.find("missing", nickname -> {
+            userNotFoundCache.invalidate("other");
+            return Optional.empty();
+        });
+
+        assertTrue(user.isEmpty());
+        assertTrue(userNotFoundCache.isMissing("missing"));
+    }
+
+    @Test
+    public void should_remember_an_async_miss_once_it_completes_unless_invalidated_meanwhile() {
+        var missing = new CompletableFuture<Optional<UserDTO>>();
+        var created = new CompletableFuture<Optional<UserDTO>>();
+
+        var missingUser = userNotFoundCache.findAsync("missing", nickname -> missing);
+        var createdUser = userNotFoundCache.findAsync("created", nickname -> created);
+        assertFalse(userNotFoundCache.isMissing("missing"));
+        userNotFoundCache.invalidate("created");
+        missing.complete(Optional.empty());
+        created.complete(Optional.empty());
+
+        assertTrue(missingUser.join().isEmpty());
+        assertTrue(createdUser.join().isEmpty());
+        assertTrue(userNotFoundCache.isMissing("missing"));
+        assertFalse(userNotFoundCache.isMissing("created"));
+        assertTrue(userNotFoundCache.findAsync("missing", nickname -> CompletableFuture.failedFuture(new IllegalStateException())).join().isEmpty());
+    }
+}
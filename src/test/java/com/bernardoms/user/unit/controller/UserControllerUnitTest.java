@@ -2,12 +2,25 @@ package com.bernardoms.user.unit.controller;
 
 import com.bernardoms.user.controller.ExceptionController;
 import com.bernardoms.user.controller.UserController;
+import com.bernardoms.user.dto.BatchItemStatus;
+import com.bernardoms.user.dto.BatchUserResult;
+import com.bernardoms.user.dto.CursorPage;
+import com.bernardoms.user.dto.ImportJobStatus;
 import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.ExecutorSaturatedException;
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.InvalidCursorException;
 import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
 import com.bernardoms.user.exception.UserNotFoundException;
 import com.bernardoms.user.model.UserFilter;
-import com.bernardoms.user.service.UserQueryService;
-import com.bernardoms.user.service.UserService;
+import com.bernardoms.user.service.AsyncUserService;
+import com.bernardoms.user.service.UserBatchService;
+import com.bernardoms.user.service.UserExportService;
+import com.bernardoms.user.service.UserImportService;
+import com.bernardoms.user.service.UserLookupService;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -17,15 +30,28 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.SliceImpl;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.web.PageableHandlerMethodArgumentResolver;
 import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.time.Instant;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
 
+import static com.bernardoms.user.support.AsyncMockMvc.perform;
 import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
@@ -39,7 +65,19 @@ public class UserControllerUnitTest {
     private MockMvc mockMvc;
 
     @Mock
-    private UserService userService;
+    private AsyncUserService asyncUserService;
+
+    @Mock
+    private UserBatchService userBatchService;
+
+    @Mock
+    private UserExportService userExportService;
+
+    @Mock
+    private UserImportService userImportService;
+
+    @Mock
+    private UserLookupService userLookupService;
 
     private static final String URL_PATH = "/v1/users";
 
@@ -62,13 +100,88 @@ public class UserControllerUnitTest {
                 .password("newpassword")
                 .build();
 
-        when(userService.saveUser(any(UserDTO.class))).thenReturn("newuser");
+        when(asyncUserService.saveUser(any(UserDTO.class))).thenReturn(CompletableFuture.completedFuture("newuser"));
 
-        mockMvc.perform(
+        perform(mockMvc, 
                 post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isCreated()).andExpect(header().string("Location","http://localhost/v1/users/newuser"));
     }
 
+    @Test
+    public void should_return_result_of_each_user_when_creating_users_in_batch() throws Exception {
+        var mapper = new ObjectMapper();
+
+        var newUser = UserDTO.builder().country("UK")
+                .email("newusertest@test.com")
+                .firstName("new")
+                .lastName("user")
+                .nickname("newuser")
+                .password("newpassword")
+                .build();
+
+        when(userBatchService.saveUsers(any())).thenReturn(List.of(
+                new BatchUserResult(0, "newuser", BatchItemStatus.CREATED, null),
+                new BatchUserResult(1, "newuser", BatchItemStatus.CONFLICT, "nick name newuser repeated in batch")));
+
+        mockMvc.perform(post(URL_PATH + "/batch").content(mapper.writeValueAsString(List.of(newUser, newUser))).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].status", is("CREATED")))
+                .andExpect(jsonPath("$[1].index", is(1)))
+                .andExpect(jsonPath("$[1].status", is("CONFLICT")))
+                .andExpect(jsonPath("$[1].description", is("nick name newuser repeated in batch")));
+    }
+
+    @Test
+    public void should_return_bad_request_when_batch_is_too_large() throws Exception {
+        when(userBatchService.saveUsers(any())).thenThrow(new InvalidBatchException("batch should have between 1 and 10000 users"));
+
+        mockMvc.perform(post(URL_PATH + "/batch").content("[]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.description", is("batch should have between 1 and 10000 users")));
+    }
+
+    @Test
+    public void should_return_accepted_with_job_location_when_importing_users() throws Exception {
+        when(userImportService.importUsers(any(InputStream.class))).thenReturn(new ImportJobStatus("job-id", ImportJobStatus.State.RUNNING,
+                2, 1, 0, Collections.emptyList(), Instant.now().toString(), null));
+
+        mockMvc.perform(post(URL_PATH + "/import").content("{}\n{}\n").contentType("application/x-ndjson"))
+                .andExpect(status().isAccepted())
+                .andExpect(header().string("Location", "http://localhost/v1/users/import/job-id"))
+                .andExpect(jsonPath("$.state", is("RUNNING")))
+                .andExpect(jsonPath("$.linesRead", is(2)));
+    }
+
+    @Test
+    public void should_return_not_found_when_import_job_dont_exist() throws Exception {
+        when(userImportService.getJob("unknown")).thenThrow(new ImportJobNotFoundException("import job unknown not found!"));
+
+        mockMvc.perform(get(URL_PATH + "/import/unknown"))
+                .andExpect(status().isNotFound())
+                .andExpect(jsonPath("$.description", is("import job unknown not found!")));
+    }
+
+    @Test
+    public void should_stream_users_as_ndjson_when_exporting() throws Exception {
+        when(userExportService.export(any(UserFilter.class), any(OutputStream.class))).thenAnswer(invocation -> {
+            invocation.<OutputStream>getArgument(1).write("{\"nickname\":\"test_nick\"}\n".getBytes(StandardCharsets.UTF_8));
+            return 1L;
+        });
+
+        when(userExportService.getTimeoutMillis()).thenReturn(3_600_000L);
+
+        var result = mockMvc.perform(get(URL_PATH + "/export").param("country", "UK"))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+
+        assertEquals(3_600_000L, result.getRequest().getAsyncContext().getTimeout());
+        mockMvc.perform(asyncDispatch(result))
+                .andExpect(status().isOk())
+                .andExpect(header().string("Content-Type", "application/x-ndjson"))
+                .andExpect(content().string("{\"nickname\":\"test_nick\"}\n"))
+                .andExpect(forwardedUrl(null));
+    }
+
     @Test
     public void should_return_ok_when_find_existing_user_by_nick_name() throws Exception {
 
@@ -78,9 +191,9 @@ public class UserControllerUnitTest {
                 .lastName("testing")
                 .nickname("test_nick").build();
 
-        when(userService.getByNickName("test_nick")).thenReturn(user);
+        when(asyncUserService.getByNickName("test_nick")).thenReturn(CompletableFuture.completedFuture(user));
 
-        mockMvc.perform(get(URL_PATH + "/test_nick"))
+        perform(mockMvc, get(URL_PATH + "/test_nick"))
                 .andExpect(status().isOk())
                 .andExpect(jsonPath("firstName", is("test")))
                 .andExpect(jsonPath("lastName", is("testing")))
@@ -89,10 +202,21 @@ public class UserControllerUnitTest {
                 .andExpect(jsonPath("country", is("UK")));
     }
 
+    @Test
+    public void should_return_users_found_by_nick_name_when_looking_up_many() throws Exception {
+        when(userLookupService.getByNickNamesAsync(List.of("test_nick", "unknown")))
+                .thenReturn(CompletableFuture.completedFuture(Map.of("test_nick", UserDTO.builder().nickname("test_nick").country("UK").build())));
+
+        perform(mockMvc, post(URL_PATH + "/lookup").content("[\"test_nick\",\"unknown\"]").contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.test_nick.country", is("UK")))
+                .andExpect(jsonPath("$.unknown").doesNotExist());
+    }
+
     @Test
     public void should_return_not_found_when_nick_name_dont_exist() throws Exception {
-        when(userService.getByNickName("test_nick4")).thenThrow(new UserNotFoundException("user not found"));
-        mockMvc.perform(get(URL_PATH + "/test_nick4")).andExpect(status().isNotFound());
+        when(asyncUserService.getByNickName("test_nick4")).thenReturn(CompletableFuture.failedFuture(new UserNotFoundException("user not found")));
+        perform(mockMvc, get(URL_PATH + "/test_nick4")).andExpect(status().isNotFound());
     }
 
     @Test
@@ -102,7 +226,7 @@ public class UserControllerUnitTest {
         var newUser = UserDTO.builder().country("UK")
                 .email("newusertest").build();
 
-        mockMvc.perform(post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isBadRequest())
                 .andExpect(jsonPath("$.description.lastName", is("must not be blank")))
                 .andExpect(jsonPath("$.description.firstName", is("must not be blank")))
@@ -115,7 +239,7 @@ public class UserControllerUnitTest {
     public void should_return_unprocesable_entity_when_creating_new_user_with_an_already_existing_nick_name() throws Exception {
         var mapper = new ObjectMapper();
 
-        when(userService.saveUser(any(UserDTO.class))).thenThrow(new NicknameAlreadyExistException("user with nick name test_nick already exist!"));
+        when(asyncUserService.saveUser(any(UserDTO.class))).thenReturn(CompletableFuture.failedFuture(new NicknameAlreadyExistException("user with nick name test_nick already exist!")));
 
         var newUser = UserDTO.builder().country("UK")
                 .email("newusertest@test.com")
@@ -125,14 +249,16 @@ public class UserControllerUnitTest {
                 .password("newpassword")
                 .build();
 
-        mockMvc.perform(post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+        perform(mockMvc, post(URL_PATH).content(mapper.writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isConflict())
                 .andExpect(jsonPath("$.description", is("user with nick name test_nick already exist!")));
     }
 
     @Test
     public void should_return_no_content_when_deleting_an_user() throws Exception {
-        mockMvc.perform(delete(URL_PATH + "/test_nick2")).andExpect(status().isNoContent());
+        when(asyncUserService.deleteUser("test_nick2")).thenReturn(CompletableFuture.completedFuture(null));
+
+        perform(mockMvc, delete(URL_PATH + "/test_nick2")).andExpect(status().isNoContent());
     }
 
     @Test
@@ -142,12 +268,75 @@ public class UserControllerUnitTest {
         var updateUser = UserDTO.builder().country("UK")
                 .email("updateUsertest@test.com").build();
 
-        mockMvc.perform(put(URL_PATH + "/test_nick")
+        when(asyncUserService.updateUser(any(String.class), any(UserDTO.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        perform(mockMvc, put(URL_PATH + "/test_nick")
                 .content(mapper.writeValueAsString(updateUser))
                 .contentType(MediaType.APPLICATION_JSON))
                 .andExpect(status().isNoContent());
     }
 
+    @Test
+    public void should_return_service_unavailable_with_retry_after_when_hashing_is_saturated() throws Exception {
+        var newUser = UserDTO.builder().country("UK")
+                .email("newusertest@test.com")
+                .firstName("new")
+                .lastName("user")
+                .nickname("newuser")
+                .password("newpassword").build();
+
+        when(asyncUserService.saveUser(any(UserDTO.class)))
+                .thenReturn(CompletableFuture.failedFuture(new PasswordHashingRejectedException("too many password changes in progress, retry in 1s", 1)));
+
+        perform(mockMvc, post(URL_PATH).content(new ObjectMapper().writeValueAsString(newUser)).contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.description", is("too many password changes in progress, retry in 1s")));
+    }
+
+    @Test
+    public void should_return_service_unavailable_with_retry_after_when_mongo_executor_is_saturated() throws Exception {
+        when(asyncUserService.getUsers(any(UserFilter.class)))
+                .thenReturn(CompletableFuture.failedFuture(new ExecutorSaturatedException("too many mongo requests in progress, retry in 1s", 1)));
+
+        perform(mockMvc, get(URL_PATH))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string("Retry-After", "1"))
+                .andExpect(jsonPath("$.description", is("too many mongo requests in progress, retry in 1s")));
+    }
+
+    @Test
+    public void should_return_gateway_timeout_when_mongo_work_times_out() throws Exception {
+        when(asyncUserService.getByNickName("test_nick"))
+                .thenReturn(CompletableFuture.failedFuture(new TimeoutException("mongo work didn't complete within 5000ms")));
+
+        perform(mockMvc, get(URL_PATH + "/test_nick"))
+                .andExpect(status().isGatewayTimeout())
+                .andExpect(jsonPath("$.description", is("mongo work didn't complete within 5000ms")));
+    }
+
+    @Test
+    public void should_return_no_content_when_patching_user() throws Exception {
+        when(asyncUserService.patchUser(any(String.class), any(UserPatchDTO.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        perform(mockMvc, patch(URL_PATH + "/test_nick")
+                .content("{\"country\":\"BR\"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isNoContent());
+
+        verify(asyncUserService).patchUser("test_nick", UserPatchDTO.builder().country("BR").build());
+    }
+
+    @Test
+    public void should_return_bad_request_when_patching_user_with_invalid_fields() throws Exception {
+        perform(mockMvc, patch(URL_PATH + "/test_nick")
+                .content("{\"country\":\"BRA\",\"firstName\":\" \"}")
+                .contentType(MediaType.APPLICATION_JSON))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.description.country", is("country should have two characters")))
+                .andExpect(jsonPath("$.description.firstName", is("must not be blank")));
+    }
+
     @Test
     public void should_return_ok_when_get_users_with_filter() throws Exception {
 
@@ -162,9 +351,9 @@ public class UserControllerUnitTest {
 
         var pageableUser = new PageImpl<>(Collections.singletonList(user), pageable, 0);
 
-        when(userService.getUsers(any(UserFilter.class))).thenReturn(pageableUser);
+        when(asyncUserService.getUsers(any(UserFilter.class))).thenReturn(CompletableFuture.completedFuture(pageableUser));
 
-        mockMvc.perform(get(URL_PATH)
+        perform(mockMvc, get(URL_PATH)
                 .param("firstName", "test2")
                 .param("lastName", "testing2")
                 .param("nickname", "test_nick3")
@@ -176,4 +365,74 @@ public class UserControllerUnitTest {
                 .andExpect(jsonPath("$.content[0].email", is("test3@test.com")))
                 .andExpect(jsonPath("$.content[0].country", is("BR")));
     }
+
+    @Test
+    public void should_return_ok_with_next_cursor_when_get_users_with_cursor() throws Exception {
+        var user = UserDTO.builder().country("BR")
+                .email("test3@test.com")
+                .firstName("test2")
+                .lastName("testing2")
+                .nickname("test_nick3").build();
+
+        when(asyncUserService.getUsersByCursor(any(UserFilter.class))).thenReturn(CompletableFuture.completedFuture(new CursorPage<>(Collections.singletonList(user), "UH8ZHoEMGXKd6GDq")));
+
+        perform(mockMvc, get(URL_PATH)
+                .param("cursor", "")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].nickname", is("test_nick3")))
+                .andExpect(jsonPath("$.nextCursor", is("UH8ZHoEMGXKd6GDq")));
+    }
+
+    @Test
+    public void should_return_bad_request_when_get_users_with_invalid_cursor() throws Exception {
+        when(asyncUserService.getUsersByCursor(any(UserFilter.class))).thenReturn(CompletableFuture.failedFuture(new InvalidCursorException("invalid cursor abc")));
+
+        perform(mockMvc, get(URL_PATH).param("cursor", "abc"))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$.description", is("invalid cursor abc")));
+    }
+
+    @Test
+    public void should_return_ok_with_slice_when_get_users_without_count() throws Exception {
+        var user = UserDTO.builder().country("BR")
+                .email("test3@test.com")
+                .firstName("test2")
+                .lastName("testing2")
+                .nickname("test_nick3").build();
+
+        var slicedUser = new SliceImpl<>(Collections.singletonList(user), PageRequest.of(0, 1, Sort.unsorted()), true);
+
+        when(asyncUserService.getUsersWithoutCount(any(UserFilter.class))).thenReturn(CompletableFuture.completedFuture(slicedUser));
+
+        perform(mockMvc, get(URL_PATH)
+                .param("count", "none")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].nickname", is("test_nick3")))
+                .andExpect(jsonPath("$.last", is(false)))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+    }
+
+    @Test
+    public void should_return_slice_when_count_none_is_in_upper_case() throws Exception {
+        var user = UserDTO.builder().country("BR")
+                .email("test3@test.com")
+                .firstName("test2")
+                .lastName("testing2")
+                .nickname("test_nick3").build();
+
+        var slicedUser = new SliceImpl<>(Collections.singletonList(user), PageRequest.of(0, 1, Sort.unsorted()), true);
+
+        when(asyncUserService.getUsersWithoutCount(any(UserFilter.class))).thenReturn(CompletableFuture.completedFuture(slicedUser));
+
+        perform(mockMvc, get(URL_PATH)
+                .param("count", "NONE")
+                .param("limit", "1"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.content[0].nickname", is("test_nick3")))
+                .andExpect(jsonPath("$.totalElements").doesNotExist());
+
+        verify(asyncUserService, never()).getUsers(any(UserFilter.class));
+    }
 }
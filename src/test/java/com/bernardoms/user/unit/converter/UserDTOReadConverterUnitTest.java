@@ -0,0 +1,32 @@
+package com.bernardoms.user.unit.converter;
+
+import com.bernardoms.user.converter.UserDTOReadConverter;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UserDTOReadConverterUnitTest {
+
+    @Test
+    public void should_convert_public_fields_and_ignore_password() {
+        var document = new Document("_id", new ObjectId("507f191e810c19729de860ea"))
+                .append("nickname", "test_nick")
+                .append("firstName", "test")
+                .append("lastName", "testing")
+                .append("password", "hash")
+                .append("email", "test@test.com")
+                .append("country", "UK");
+
+        var userDTO = UserDTOReadConverter.INSTANCE.convert(document);
+
+        assertEquals("test_nick", userDTO.getNickname());
+        assertEquals("test", userDTO.getFirstName());
+        assertEquals("testing", userDTO.getLastName());
+        assertEquals("test@test.com", userDTO.getEmail());
+        assertEquals("UK", userDTO.getCountry());
+        assertNull(userDTO.getPassword());
+    }
+}
@@ -0,0 +1,77 @@
+package com.bernardoms.user.unit.mapper;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.CountMode;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.model.UserFilter;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.mapstruct.factory.Mappers;
+import org.modelmapper.ModelMapper;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class UserMapperUnitTest {
+
+    private final UserMapper userMapper = Mappers.getMapper(UserMapper.class);
+
+    private final ModelMapper modelMapper = new ModelMapper();
+
+    @Test
+    public void should_map_user_dto_to_user_field_for_field_like_model_mapper() {
+        var userDTO = UserDTO.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname("test")
+                .password("hash")
+                .build();
+
+        var user = userMapper.toUser(userDTO);
+
+        assertEquals(modelMapper.map(userDTO, User.class), user);
+        assertEquals("test", user.getNickname());
+        assertEquals("test", user.getFirstName());
+        assertEquals("unit", user.getLastName());
+        assertEquals("hash", user.getPassword());
+        assertEquals("test@test.com", user.getEmail());
+        assertEquals("UK", user.getCountry());
+        assertNull(user.getId());
+    }
+
+    @Test
+    public void should_map_partial_user_dto_to_user_keeping_nulls_like_model_mapper() {
+        var userDTO = UserDTO.builder().country("UK").password("hash").build();
+
+        assertEquals(modelMapper.map(userDTO, User.class), userMapper.toUser(userDTO));
+    }
+
+    @Test
+    public void should_map_user_filter_to_user_like_model_mapper() {
+        var userFilter = UserFilter.builder().country("BR")
+                .firstName("test2")
+                .nickname("test_nick3")
+                .offset(1)
+                .limit(10)
+                .count(CountMode.NONE)
+                .build();
+
+        assertEquals(modelMapper.map(userFilter, User.class), userMapper.toUser(userFilter));
+    }
+
+    @Test
+    public void should_map_user_to_user_dto_field_for_field_like_model_mapper() {
+        var user = User.builder().country("UK")
+                .id(new ObjectId("507f191e810c19729de860ea"))
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname("test")
+                .password("hash")
+                .build();
+
+        assertEquals(modelMapper.map(user, UserDTO.class), userMapper.toUserDTO(user));
+    }
+}
@@ -0,0 +1,135 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.service.AsyncUserService;
+import com.bernardoms.user.service.BoundedExecutor;
+import com.bernardoms.user.service.PasswordHashingService;
+import com.bernardoms.user.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+public class AsyncUserServiceUnitTest {
+    private final UserService userService = mock(UserService.class);
+    private final PasswordHashingService passwordHashingService = mock(PasswordHashingService.class);
+    private final UserCache userCache = mock(UserCache.class);
+    private final UserNotFoundCache userNotFoundCache = new UserNotFoundCache(30, 100, new SimpleMeterRegistry());
+    private final BoundedExecutor mongoExecutor = new BoundedExecutor("mongo", 2, 10, 5_000, 1, new SimpleMeterRegistry());
+    private final AsyncUserService asyncUserService = new AsyncUserService(userService, passwordHashingService, userCache,
+            userNotFoundCache, mongoExecutor, 5_000);
+
+    @AfterEach
+    public void tearDown() {
+        mongoExecutor.shutdown();
+    }
+
+    @Test
+    public void should_return_cached_user_when_find_by_existing_nickname() throws Exception {
+        var user = UserDTO.builder().nickname("test").build();
+        when(userCache.getAsync("test")).thenReturn(CompletableFuture.completedFuture(user));
+
+        assertEquals(user, asyncUserService.getByNickName("test").get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_fail_with_user_not_found_when_user_not_found() {
+        when(userCache.getAsync("test")).thenReturn(CompletableFuture.completedFuture(null));
+
+        var exception = assertThrows(ExecutionException.class, () -> asyncUserService.getByNickName("test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof UserNotFoundException);
+    }
+
+    @Test
+    public void should_time_out_when_the_user_takes_too_long_to_load() {
+        var asyncUserService = new AsyncUserService(userService, passwordHashingService, userCache,
+                userNotFoundCache, mongoExecutor, 50);
+        when(userCache.getAsync("test")).thenReturn(new CompletableFuture<>());
+
+        var exception = assertThrows(ExecutionException.class, () -> asyncUserService.getByNickName("test").get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        assertEquals("user lookup didn't complete within 50ms", exception.getCause().getMessage());
+    }
+
+    @Test
+    public void should_save_user_with_the_password_hashed_off_the_caller_thread() throws Exception {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userService.saveUser(userDTO, "encoded")).thenReturn("test");
+
+        assertEquals("test", asyncUserService.saveUser(userDTO).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_not_save_when_password_hashing_is_rejected() throws Exception {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+        when(passwordHashingService.encodeAsync("newpassword"))
+                .thenReturn(CompletableFuture.failedFuture(new PasswordHashingRejectedException("too many password changes in progress, retry in 1s", 1)));
+
+        var exception = assertThrows(ExecutionException.class, () -> asyncUserService.saveUser(userDTO).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof PasswordHashingRejectedException);
+        verify(userService, never()).saveUser(any(UserDTO.class), anyString());
+    }
+
+    @Test
+    public void should_fail_with_nick_name_already_exist_when_saving_a_user_with_existing_nick() throws Exception {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userService.saveUser(userDTO, "encoded")).thenThrow(new NicknameAlreadyExistException("user with nick name test already exist!"));
+
+        var exception = assertThrows(ExecutionException.class, () -> asyncUserService.saveUser(userDTO).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof NicknameAlreadyExistException);
+    }
+
+    @Test
+    public void should_update_with_the_password_hashed_without_looking_the_user_up_first() throws Exception {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+
+        asyncUserService.updateUser("test", userDTO).get(5, TimeUnit.SECONDS);
+
+        verify(userService).updateUser("test", userDTO, "encoded");
+        verify(userCache, never()).getAsync(anyString());
+    }
+
+    @Test
+    public void should_not_hash_nor_write_when_updating_a_nick_name_known_to_be_missing() throws Exception {
+        var userDTO = UserDTO.builder().nickname("unknown").password("newpassword").build();
+        userNotFoundCache.find("unknown", nickname -> Optional.empty());
+
+        asyncUserService.updateUser("unknown", userDTO).get(5, TimeUnit.SECONDS);
+
+        verify(passwordHashingService, never()).encodeAsync(anyString());
+        verify(userService, never()).updateUser(anyString(), any(UserDTO.class), anyString());
+    }
+
+    @Test
+    public void should_patch_without_hashing_when_password_is_absent() throws Exception {
+        var userPatchDTO = UserPatchDTO.builder().country("BR").build();
+
+        asyncUserService.patchUser("test", userPatchDTO).get(5, TimeUnit.SECONDS);
+
+        verify(passwordHashingService, never()).encodeAsync(anyString());
+        verify(userService).patchUser("test", userPatchDTO, null);
+    }
+}
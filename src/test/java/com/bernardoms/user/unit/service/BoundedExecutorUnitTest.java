@@ -0,0 +1,122 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.config.VirtualThreads;
+import com.bernardoms.user.exception.ExecutorSaturatedException;
+import com.bernardoms.user.service.BoundedExecutor;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class BoundedExecutorUnitTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BoundedExecutor boundedExecutor = new BoundedExecutor("test", 1, 1, 200, 2, meterRegistry);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    public void tearDown() {
+        release.countDown();
+        boundedExecutor.shutdown();
+        MDC.clear();
+    }
+
+    @Test
+    public void should_run_with_the_submitter_mdc_and_leave_the_worker_clean() throws Exception {
+        MDC.put("path", "/v1/users/test");
+
+        assertEquals("/v1/users/test", boundedExecutor.submit(() -> MDC.get("path")).get(5, TimeUnit.SECONDS));
+
+        MDC.clear();
+        assertNull(boundedExecutor.submit(() -> MDC.get("path")).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void should_fail_with_the_task_exception() {
+        var exception = assertThrows(ExecutionException.class,
+                () -> boundedExecutor.submit(() -> {
+                    throw new IllegalStateException("failed");
+                }).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof IllegalStateException);
+    }
+
+    @Test
+    public void should_reject_with_retry_after_when_queue_is_full() throws Exception {
+        var running = new CountDownLatch(1);
+        boundedExecutor.submit(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        boundedExecutor.submit(() -> true);
+
+        var exception = assertThrows(ExecutionException.class, () -> boundedExecutor.submit(() -> true).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof ExecutorSaturatedException);
+        assertEquals(2, ((ExecutorSaturatedException) exception.getCause()).getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("user.executor.rejected").tag("name", "test").counter().count());
+        assertEquals(1, meterRegistry.get("executor.queued").tag("name", "test").gauge().value());
+    }
+
+    @Test
+    public void should_time_out_and_skip_work_still_queued() throws Exception {
+        var running = new CountDownLatch(1);
+        var blocked = boundedExecutor.submit(() -> {
+            running.countDown();
+            return release.await(5, TimeUnit.SECONDS);
+        });
+        running.await(5, TimeUnit.SECONDS);
+        var ran = new AtomicBoolean();
+
+        var exception = assertThrows(ExecutionException.class, () -> boundedExecutor.submit(() -> ran.getAndSet(true)).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        assertEquals("test work didn't complete within 200ms", exception.getCause().getMessage());
+        assertThrows(ExecutionException.class, () -> blocked.get(5, TimeUnit.SECONDS));
+        assertEquals(2, meterRegistry.get("user.executor.timeouts").tag("name", "test").counter().count());
+
+        release.countDown();
+        while (meterRegistry.get("executor.completed").tag("name", "test").functionCounter().count() < 2) {
+            Thread.onSpinWait();
+        }
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void should_run_each_task_on_a_virtual_thread_and_reject_past_the_in_flight_limit() throws Exception {
+        assumeTrue(VirtualThreads.isSupported());
+        var virtualExecutor = BoundedExecutor.virtual("virtual", 1, 200, 2, meterRegistry);
+        try {
+            var running = new CountDownLatch(1);
+            var first = virtualExecutor.submit(() -> {
+                running.countDown();
+                release.await(5, TimeUnit.SECONDS);
+                return Thread.class.getMethod("isVirtual").invoke(Thread.currentThread());
+            });
+            running.await(5, TimeUnit.SECONDS);
+
+            var exception = assertThrows(ExecutionException.class, () -> virtualExecutor.submit(() -> true).get(5, TimeUnit.SECONDS));
+
+            assertTrue(exception.getCause() instanceof ExecutorSaturatedException);
+            assertEquals(1, meterRegistry.get("user.executor.in.flight").tag("name", "virtual").gauge().value());
+            release.countDown();
+            assertEquals(true, first.get(5, TimeUnit.SECONDS));
+            assertTrue(virtualExecutor.submit(() -> true).get(5, TimeUnit.SECONDS));
+        } finally {
+            virtualExecutor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.service.PasswordHashingService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PasswordHashingServiceUnitTest {
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+    private final PasswordHashingService passwordHashingService = new PasswordHashingService(passwordEncoder, meterRegistry, 1, 1, 2);
+
+    @AfterEach
+    public void tearDown() {
+        passwordHashingService.shutdown();
+    }
+
+    @Test
+    public void should_return_encoded_password_and_record_hash_time() throws Exception {
+        when(passwordEncoder.encode("password")).thenReturn("encoded");
+
+        assertEquals("encoded", passwordHashingService.encode("password"));
+        assertEquals(1, meterRegistry.get("user.password.hashing").timer().count());
+    }
+
+    @Test
+    public void should_reject_with_retry_after_when_queue_is_full() throws Exception {
+        var hashing = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(passwordEncoder.encode("slow")).thenAnswer(invocation -> {
+            hashing.countDown();
+            release.await();
+            return "encoded";
+        });
+
+        var running = CompletableFuture.supplyAsync(() -> encodeUnchecked("slow"));
+        hashing.await(5, TimeUnit.SECONDS);
+        var queued = CompletableFuture.supplyAsync(() -> encodeUnchecked("slow"));
+        while (meterRegistry.get("user.password.hashing.queue.depth").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        var exception = assertThrows(PasswordHashingRejectedException.class, () -> passwordHashingService.encode("slow"));
+        assertEquals(2, exception.getRetryAfterSeconds());
+        assertEquals(1, meterRegistry.get("user.password.hashing.rejected").counter().count());
+
+        release.countDown();
+        assertEquals("encoded", running.get(5, TimeUnit.SECONDS));
+        assertEquals("encoded", queued.get(5, TimeUnit.SECONDS));
+    }
+
+    private String encodeUnchecked(String rawPassword) {
+        try {
+            return passwordHashingService.encode(rawPassword);
+        } catch (PasswordHashingRejectedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
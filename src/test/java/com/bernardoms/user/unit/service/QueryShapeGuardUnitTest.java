@@ -0,0 +1,143 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.exception.UnindexedQueryException;
+import com.bernardoms.user.service.QueryShapeGuard;
+import com.mongodb.MongoExecutionTimeoutException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.UncategorizedMongoDbException;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class QueryShapeGuardUnitTest {
+    private static final Document INDEX_SCAN = plan(new Document("stage", "FETCH")
+            .append("inputStage", new Document("stage", "IXSCAN").append("indexName", "country_last_name_first_name")));
+    private static final Document COLLECTION_SCAN = plan(new Document("stage", "COLLSCAN"));
+
+    private final MongoOperations mongoOperations = mock(MongoOperations.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void should_explain_each_shape_once() throws Exception {
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(INDEX_SCAN);
+        var queryShapeGuard = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.REJECT, 2_000);
+
+        queryShapeGuard.check(new Query(Criteria.where("country").is("UK").and("lastName").is("test")));
+        var shape = queryShapeGuard.check(new Query(Criteria.where("lastName").is("other").and("country").is("BR")));
+
+        verify(mongoOperations, times(1)).executeCommand(any(Document.class));
+        assertEquals("[country, lastName]", shape.getShape());
+        assertEquals("FETCH <- IXSCAN(country_last_name_first_name)", shape.getPlan());
+        assertFalse(shape.isCollectionScan());
+    }
+
+    @Test
+    public void should_explain_without_locking_the_shapes() throws Exception {
+        var explaining = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        when(mongoOperations.executeCommand(any(Document.class))).thenAnswer(invocation -> {
+            explaining.countDown();
+            release.await();
+            return INDEX_SCAN;
+        });
+        var queryShapeGuard = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.REJECT, 2_000);
+
+        var check = CompletableFuture.runAsync(() -> {
+            try {
+                queryShapeGuard.check(new Query(Criteria.where("country").is("UK")));
+            } catch (UnindexedQueryException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        explaining.await();
+
+        try {
+            CompletableFuture.runAsync(queryShapeGuard::forgetShapes).get(1, TimeUnit.SECONDS);
+        } finally {
+            release.countDown();
+        }
+        check.get(1, TimeUnit.SECONDS);
+        assertEquals(1, queryShapeGuard.getShapes().size());
+    }
+
+    @Test
+    public void should_reject_a_filter_that_scans_the_collection() {
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(COLLECTION_SCAN);
+        var queryShapeGuard = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.REJECT, 2_000);
+
+        var exception = assertThrows(UnindexedQueryException.class,
+                () -> queryShapeGuard.check(new Query(Criteria.where("country").is("UK"))));
+
+        assertEquals("filtering users on [country] is not supported by an index, add the nickname or email to the filter", exception.getMessage());
+        assertEquals(1, meterRegistry.get("user.query.shape.rejected").tag("shape", "[country]").counter().count());
+    }
+
+    @Test
+    public void should_neither_reject_nor_cap_an_unfiltered_listing() throws Exception {
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(COLLECTION_SCAN);
+        var rejecting = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.REJECT, 2_000);
+        var capping = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.MAX_TIME, 2_000);
+        var query = new Query();
+
+        rejecting.check(query);
+        capping.check(query);
+
+        assertNull(query.getMeta().getMaxTimeMsec());
+    }
+
+    @Test
+    public void should_cap_the_time_of_a_collection_scan_and_time_out_when_mongo_stops_it() throws Exception {
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(COLLECTION_SCAN, INDEX_SCAN);
+        var queryShapeGuard = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.MAX_TIME, 2_000);
+        var query = new Query(Criteria.where("country").is("UK"));
+        var indexedQuery = new Query(Criteria.where("nickname").is("test"));
+
+        var shape = queryShapeGuard.check(query);
+        queryShapeGuard.check(indexedQuery);
+
+        assertEquals(2_000L, query.getMeta().getMaxTimeMsec());
+        assertNull(indexedQuery.getMeta().getMaxTimeMsec());
+        var exception = assertThrows(TimeoutException.class, () -> queryShapeGuard.read(shape, () -> {
+            throw new UncategorizedMongoDbException("operation exceeded time limit",
+                    new MongoExecutionTimeoutException(50, "operation exceeded time limit"));
+        }));
+        assertEquals("users query on [country] didn't complete within 2000ms", exception.getMessage());
+    }
+
+    @Test
+    public void should_time_reads_by_shape() throws Exception {
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(INDEX_SCAN);
+        var queryShapeGuard = new QueryShapeGuard(mongoOperations, meterRegistry, QueryShapeGuard.Policy.REJECT, 2_000);
+        var shape = queryShapeGuard.check(new Query(Criteria.where("country").is("UK")).with(Sort.by("_id")));
+
+        assertEquals(List.of("user"), queryShapeGuard.read(shape, () -> List.of("user")));
+
+        assertEquals("[country] sort [_id]", shape.getShape());
+        assertEquals(1, meterRegistry.get("user.query.shape").tag("shape", "[country] sort [_id]").timer().count());
+        assertTrue(queryShapeGuard.getShapes().contains(shape));
+    }
+
+    private static Document plan(Document winningPlan) {
+        return new Document("queryPlanner", new Document("winningPlan", winningPlan));
+    }
+}
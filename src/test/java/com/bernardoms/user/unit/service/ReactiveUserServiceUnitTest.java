@@ -0,0 +1,238 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
+import com.bernardoms.user.exception.NicknameAlreadyExistException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.service.PasswordHashingService;
+import com.bernardoms.user.service.ReactiveUserQueryService;
+import com.bernardoms.user.service.ReactiveUserService;
+import com.bernardoms.user.service.UserOutboxService;
+import com.mongodb.client.result.DeleteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveUserServiceUnitTest {
+
+    @Mock
+    private ReactiveMongoOperations reactiveMongoOperations;
+    @Mock
+    private ReactiveUserQueryService reactiveUserQueryService;
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private PasswordHashingService passwordHashingService;
+    @Mock
+    private UserOutboxService userOutboxService;
+    @Spy
+    private UserNotFoundCache userNotFoundCache = new UserNotFoundCache(30, 100, new SimpleMeterRegistry());
+    @Mock
+    private UserCache userCache;
+    @InjectMocks
+    private ReactiveUserService reactiveUserService;
+
+    @Test
+    public void should_return_user_when_find_by_existing_nickname() {
+        var user = UserDTO.builder().nickname("test").country("UK").build();
+
+        when(userCache.getAsync("test")).thenReturn(CompletableFuture.completedFuture(user));
+
+        assertEquals(user, reactiveUserService.getByNickName("test").block());
+    }
+
+    @Test
+    public void should_fail_with_user_not_found_when_user_not_found() {
+        when(userCache.getAsync("test")).thenReturn(CompletableFuture.completedFuture(null));
+
+        var exception = assertThrows(ExecutionException.class, () -> reactiveUserService.getByNickName("test").toFuture().get());
+
+        assertTrue(exception.getCause() instanceof UserNotFoundException);
+    }
+
+    @Test
+    public void should_save_user_with_hashed_password_and_cache_it() {
+        var userDTO = UserDTO.builder().nickname("test").email("test@test.com").password("newpassword").build();
+        var user = User.builder().nickname("test").email("test@test.com").password("encoded").build();
+        var publicUserDTO = UserDTO.builder().nickname("test").email("test@test.com").build();
+
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(reactiveMongoOperations.insert(user)).thenReturn(Mono.just(user));
+        when(userMapper.toPublicUserDTO(user)).thenReturn(publicUserDTO);
+
+        assertEquals("test", reactiveUserService.saveUser(userDTO).block());
+        assertEquals("encoded", userDTO.getPassword());
+        verify(userNotFoundCache, times(1)).invalidate("test");
+        verify(userCache, times(1)).put(publicUserDTO);
+    }
+
+    @Test
+    public void should_fail_with_nick_name_already_exist_when_saving_a_user_with_existing_nick() {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+        var user = User.builder().nickname("test").build();
+
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(reactiveMongoOperations.insert(user)).thenReturn(Mono.error(new DuplicateKeyException(
+                "E11000 duplicate key error collection: test.users index: nickname dup key: { nickname: \"test\" }")));
+
+        var exception = assertThrows(ExecutionException.class, () -> reactiveUserService.saveUser(userDTO).toFuture().get());
+
+        assertTrue(exception.getCause() instanceof NicknameAlreadyExistException);
+        assertEquals("user with nick name test already exist!", exception.getCause().getMessage());
+        verify(userCache, never()).put(any());
+    }
+
+    @Test
+    public void should_not_write_when_password_hashing_is_rejected() {
+        var userDTO = UserDTO.builder().nickname("test").password("newpassword").build();
+
+        when(passwordHashingService.encodeAsync("newpassword"))
+                .thenReturn(CompletableFuture.failedFuture(new PasswordHashingRejectedException("password hashing is saturated", 1)));
+
+        var exception = assertThrows(ExecutionException.class, () -> reactiveUserService.saveUser(userDTO).toFuture().get());
+
+        assertTrue(exception.getCause() instanceof PasswordHashingRejectedException);
+        verify(reactiveMongoOperations, never()).insert(any(User.class));
+    }
+
+    @Test
+    public void should_delete_an_user_by_nickname_and_evict_it() {
+        when(reactiveMongoOperations.remove(any(Query.class), eq(User.class))).thenReturn(Mono.just(DeleteResult.acknowledged(1)));
+
+        reactiveUserService.deleteUser("test").block();
+
+        verify(userCache, times(1)).invalidate("test");
+    }
+
+    @Test
+    public void should_update_user_in_a_single_write_and_cache_the_new_nickname() {
+        var userDTO = UserDTO.builder().nickname("testnewnick").password("newpassword").build();
+        var user = User.builder().nickname("testnewnick").password("encoded").build();
+        var savedUser = User.builder().nickname("testnewnick").version(2L).build();
+        var publicUserDTO = UserDTO.builder().nickname("testnewnick").version(2L).build();
+
+        when(userCache.getIfPresent("test")).thenReturn(Optional.of(UserDTO.builder().nickname("test").version(1L).build()));
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(reactiveMongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.just(savedUser));
+        when(userMapper.toPublicUserDTO(savedUser)).thenReturn(publicUserDTO);
+
+        reactiveUserService.updateUser("test", userDTO).block();
+
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(reactiveMongoOperations, times(1)).findAndModify(queryCaptor.capture(), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals("test", queryCaptor.getValue().getQueryObject().get("nickname"));
+        assertEquals(1L, queryCaptor.getValue().getQueryObject().get("version"));
+        var update = updateCaptor.getValue().getUpdateObject();
+        assertEquals("encoded", update.get("$set", Document.class).get("password"));
+        assertEquals(1, update.get("$inc", Document.class).get("version"));
+        verify(reactiveUserQueryService, never()).findPublicUserByNickname(anyString());
+        verify(userCache, times(1)).invalidate("test");
+        verify(userCache, times(1)).put(publicUserDTO);
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(UserDTO.builder().nickname("testnewnick").build()));
+    }
+
+    @Test
+    public void should_read_an_uncached_user_and_retry_the_update_when_another_write_got_in_first() {
+        var userDTO = UserDTO.builder().nickname("test").country("BR").password("newpassword").build();
+        var savedUser = User.builder().nickname("test").country("BR").version(3L).build();
+
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userMapper.toUser(userDTO)).thenReturn(User.builder().nickname("test").country("BR").password("encoded").build());
+        when(reactiveUserQueryService.findPublicUserByNickname("test"))
+                .thenReturn(Mono.just(UserDTO.builder().nickname("test").country("UK").version(1L).build()))
+                .thenReturn(Mono.just(UserDTO.builder().nickname("test").country("BR").version(2L).build()));
+        when(reactiveMongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.empty())
+                .thenReturn(Mono.just(savedUser));
+
+        reactiveUserService.updateUser("test", userDTO).block();
+
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(reactiveMongoOperations, times(2)).findAndModify(queryCaptor.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(1L, queryCaptor.getAllValues().get(0).getQueryObject().get("version"));
+        assertEquals(2L, queryCaptor.getAllValues().get(1).getQueryObject().get("version"));
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(UserDTO.builder().country("BR").build()));
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(new UserDTO()));
+    }
+
+    @Test
+    public void should_not_write_but_remember_a_nick_name_the_update_did_not_find() {
+        var userDTO = UserDTO.builder().nickname("unknown").password("newpassword").build();
+
+        when(passwordHashingService.encodeAsync("newpassword")).thenReturn(CompletableFuture.completedFuture("encoded"));
+        when(userMapper.toUser(userDTO)).thenReturn(User.builder().nickname("unknown").build());
+        when(reactiveUserQueryService.findPublicUserByNickname("unknown")).thenReturn(Mono.empty());
+
+        reactiveUserService.updateUser("unknown", userDTO).block();
+
+        verify(reactiveMongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(userCache, never()).put(any());
+        assertTrue(userNotFoundCache.isMissing("unknown"));
+    }
+
+    @Test
+    public void should_not_hash_nor_write_when_updating_a_nick_name_known_to_be_missing() {
+        userNotFoundCache.find("unknown", nickname -> Optional.empty());
+
+        reactiveUserService.updateUser("unknown", UserDTO.builder().nickname("unknown").password("newpassword").build()).block();
+
+        verify(passwordHashingService, never()).encodeAsync(anyString());
+        verify(reactiveMongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+    }
+
+    @Test
+    public void should_set_only_patched_fields_without_hashing_when_password_is_absent() {
+        var savedUser = User.builder().nickname("test").country("BR").build();
+
+        when(reactiveMongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(Mono.just(savedUser));
+
+        reactiveUserService.patchUser("test", UserPatchDTO.builder().country("BR").build()).block();
+
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(reactiveMongoOperations).findAndModify(any(Query.class), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(new Document("country", "BR"), updateCaptor.getValue().getUpdateObject().get("$set", Document.class));
+        verify(passwordHashingService, never()).encodeAsync(anyString());
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(UserDTO.builder().country("BR").build()));
+    }
+
+    @Test
+    public void should_not_write_when_patch_is_empty() {
+        reactiveUserService.patchUser("test", new UserPatchDTO()).block();
+
+        verify(reactiveMongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(userOutboxService, never()).queue(any(Update.class), anyString(), any(UserDTO.class));
+    }
+}
@@ -0,0 +1,77 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.service.ReactiveUserStore;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.UpdateResult;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import org.bson.BsonDocument;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.ReactiveMongoOperations;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import reactor.core.publisher.Mono;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class ReactiveUserStoreUnitTest {
+
+    @Mock
+    private ReactiveMongoOperations reactiveMongoOperations;
+    @Mock
+    private MongoCollection<Document> collection;
+    @Mock
+    private MongoConverter mongoConverter;
+    @InjectMocks
+    private ReactiveUserStore reactiveUserStore;
+
+    @Test
+    public void should_report_users_refused_by_a_unique_index_like_a_bulk_insert() {
+        when(reactiveMongoOperations.getCollectionName(User.class)).thenReturn("user");
+        when(reactiveMongoOperations.getCollection("user")).thenReturn(Mono.just(collection));
+        when(reactiveMongoOperations.getConverter()).thenReturn(mongoConverter);
+        when(collection.insertMany(anyList(), any(InsertManyOptions.class))).thenReturn(Mono.error(new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(1, 0, 0, 0, new ArrayList<>(), new ArrayList<>()),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key error index: email", new BsonDocument(), 1)),
+                null, new ServerAddress())));
+
+        var exception = assertThrows(BulkOperationException.class, () -> reactiveUserStore.insertUnordered(
+                List.of(User.builder().nickname("first").build(), User.builder().nickname("second").build())));
+
+        assertEquals(1, exception.getErrors().size());
+        assertEquals(1, exception.getErrors().get(0).getIndex());
+        var options = ArgumentCaptor.forClass(InsertManyOptions.class);
+        verify(collection).insertMany(anyList(), options.capture());
+        assertFalse(options.getValue().isOrdered());
+    }
+
+    @Test
+    public void should_return_how_many_users_an_update_modified() {
+        var query = new Query();
+        var update = new Update().set("country", "BR");
+        when(reactiveMongoOperations.updateMulti(query, update, User.class)).thenReturn(Mono.just(UpdateResult.acknowledged(2, 2L, null)));
+
+        assertEquals(2, reactiveUserStore.updateMulti(query, update));
+    }
+}
@@ -0,0 +1,175 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.BatchItemStatus;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.exception.PasswordHashingRejectedException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.service.PasswordHashingService;
+import com.bernardoms.user.service.UserBatchService;
+import com.bernardoms.user.service.UserStore;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.validation.Validation;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserBatchServiceUnitTest {
+
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private UserStore userStore;
+    @Mock
+    private UserNotFoundCache userNotFoundCache;
+
+    private PasswordHashingService passwordHashingService;
+    private UserBatchService userBatchService;
+
+    @BeforeEach
+    public void setUp() {
+        passwordHashingService = new PasswordHashingService(passwordEncoder, new SimpleMeterRegistry(), 2, 64, 1);
+        userBatchService = userBatchService(passwordHashingService);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        passwordHashingService.shutdown();
+    }
+
+    @Test
+    public void should_create_valid_users_and_report_invalid_and_conflicting_ones() throws Exception {
+        var created = user("created");
+        var invalid = UserDTO.builder().nickname("invalid").email("not an email").build();
+        var existing = user("existing");
+
+        when(userStore.findExistingNicknames(List.of("created", "existing"))).thenReturn(Set.of("existing"));
+        when(userMapper.toUser(created)).thenReturn(User.builder().nickname("created").build());
+        when(passwordEncoder.encode("password")).thenReturn("hash");
+
+        var results = userBatchService.saveUsers(List.of(created, invalid, existing));
+
+        assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemStatus.INVALID, results.get(1).getStatus());
+        assertEquals("email: must be a well-formed email address, firstName: must not be blank, lastName: must not be blank, password: must not be blank",
+                results.get(1).getDescription());
+        assertEquals(BatchItemStatus.CONFLICT, results.get(2).getStatus());
+        assertEquals("user with nick name existing already exist!", results.get(2).getDescription());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<User>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(userStore).insertUnordered(inserted.capture());
+        assertEquals(1, inserted.getValue().size());
+        assertEquals("hash", inserted.getValue().get(0).getPassword());
+        assertEquals(0L, inserted.getValue().get(0).getVersion());
+        verify(userNotFoundCache).invalidate("created");
+    }
+
+    @Test
+    public void should_report_conflict_for_nickname_repeated_in_batch() throws Exception {
+        var first = user("repeated");
+        var second = user("repeated");
+        second.setEmail("other@test.com");
+
+        when(userStore.findExistingNicknames(List.of("repeated"))).thenReturn(Set.of());
+        when(userMapper.toUser(first)).thenReturn(User.builder().nickname("repeated").build());
+
+        var results = userBatchService.saveUsers(List.of(first, second));
+
+        assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemStatus.CONFLICT, results.get(1).getStatus());
+        assertEquals("nick name repeated repeated in batch", results.get(1).getDescription());
+    }
+
+    @Test
+    public void should_report_conflict_for_users_rejected_by_a_unique_index() throws Exception {
+        var first = user("first");
+        var second = user("second");
+
+        when(userStore.findExistingNicknames(any())).thenReturn(Set.of());
+        when(userMapper.toUser(any(UserDTO.class))).thenAnswer(invocation -> User.builder()
+                .nickname(invocation.<UserDTO>getArgument(0).getNickname()).build());
+        doThrow(new BulkOperationException("bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(1, 0, 0, 0, new ArrayList<>(), new ArrayList<>()),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key error index: email", new BsonDocument(), 1)),
+                null, new ServerAddress()))).when(userStore).insertUnordered(anyList());
+
+        var results = userBatchService.saveUsers(List.of(first, second));
+
+        assertEquals(BatchItemStatus.CREATED, results.get(0).getStatus());
+        assertEquals(BatchItemStatus.CONFLICT, results.get(1).getStatus());
+        assertEquals("E11000 duplicate key error index: email", results.get(1).getDescription());
+        verify(userNotFoundCache, never()).invalidate("second");
+    }
+
+    @Test
+    public void should_reject_batch_larger_than_max_size() {
+        var exception = assertThrows(InvalidBatchException.class,
+                () -> userBatchService.saveUsers(List.of(user("a"), user("b"), user("c"), user("d"))));
+
+        assertEquals("batch should have between 1 and 3 users", exception.getMessage());
+        verify(userStore, never()).findExistingNicknames(any());
+        verify(passwordEncoder, never()).encode(anyString());
+    }
+
+    @Test
+    public void should_refuse_the_whole_batch_when_password_hashing_is_saturated() {
+        var saturated = mock(PasswordHashingService.class);
+        when(saturated.getThreads()).thenReturn(2);
+        when(saturated.encodeAsync("password"))
+                .thenReturn(CompletableFuture.failedFuture(new PasswordHashingRejectedException("too many password changes in progress, retry in 1s", 1)));
+        when(userStore.findExistingNicknames(any())).thenReturn(Set.of());
+        when(userMapper.toUser(any(UserDTO.class))).thenAnswer(invocation -> User.builder()
+                .nickname(invocation.<UserDTO>getArgument(0).getNickname()).build());
+
+        var exception = assertThrows(PasswordHashingRejectedException.class,
+                () -> userBatchService(saturated).saveUsers(List.of(user("first"), user("second"), user("third"))));
+
+        assertEquals(1, exception.getRetryAfterSeconds());
+        verify(saturated, times(2)).encodeAsync("password");
+        verify(userStore, never()).insertUnordered(anyList());
+    }
+
+    private UserBatchService userBatchService(PasswordHashingService passwordHashingService) {
+        return new UserBatchService(userMapper, passwordHashingService, userStore, userNotFoundCache,
+                Validation.buildDefaultValidatorFactory().getValidator(), 3);
+    }
+
+    private UserDTO user(String nickname) {
+        return UserDTO.builder().country("UK")
+                .email(nickname + "@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname(nickname)
+                .password("password")
+                .build();
+    }
+}
@@ -0,0 +1,48 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.bernardoms.user.service.UserChangeEventEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import org.junit.jupiter.api.Test;
+
+import java.util.Base64;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UserChangeEventEncoderUnitTest {
+    private final UserChangeEvent event = new UserChangeEvent(UserChangeEvent.SCHEMA_VERSION, "1", "test",
+            Map.of("country", "BR"), 1_600_000_000_000L);
+
+    @Test
+    public void should_encode_event_as_json_by_name() throws Exception {
+        var encoder = new UserChangeEventEncoder("json");
+
+        var message = encoder.encodeToMessage(event);
+
+        assertEquals("{\"schemaVersion\":1,\"eventId\":\"1\",\"nickname\":\"test\",\"changes\":{\"country\":\"BR\"},\"timestamp\":1600000000000}",
+                message);
+        assertEquals("application/json", encoder.getFormat().getContentType());
+    }
+
+    @Test
+    public void should_encode_event_as_base64_cbor_array_in_schema_order() throws Exception {
+        var encoder = new UserChangeEventEncoder("cbor");
+
+        var decoded = new ObjectMapper(new CBORFactory()).readTree(Base64.getDecoder().decode(encoder.encodeToMessage(event)));
+
+        assertTrue(decoded.isArray());
+        assertEquals(UserChangeEvent.SCHEMA_VERSION, decoded.get(0).asInt());
+        assertEquals("1", decoded.get(1).asText());
+        assertEquals("test", decoded.get(2).asText());
+        assertEquals("BR", decoded.get(3).get("country").asText());
+        assertEquals(1_600_000_000_000L, decoded.get(4).asLong());
+        assertEquals("application/cbor", encoder.getFormat().getContentType());
+    }
+
+    @Test
+    public void should_reject_unknown_format() {
+        assertThrows(IllegalArgumentException.class, () -> new UserChangeEventEncoder("xml"));
+    }
+}
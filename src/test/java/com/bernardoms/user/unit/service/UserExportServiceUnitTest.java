@@ -0,0 +1,68 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.UserFilter;
+import com.bernardoms.user.service.UserExportService;
+import com.bernardoms.user.service.UserQueryService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.when;
+
+@ExtendWith(MockitoExtension.class)
+public class UserExportServiceUnitTest {
+
+    @Mock
+    private UserQueryService userQueryService;
+
+    private UserExportService userExportService;
+
+    @BeforeEach
+    public void setUp() {
+        userExportService = new UserExportService(userQueryService, new ObjectMapper(), 2, 3_600_000);
+    }
+
+    @Test
+    public void should_write_one_json_line_per_user_and_close_the_cursor() throws IOException {
+        var userFilter = UserFilter.builder().country("UK").build();
+        var user = UserDTO.builder().nickname("test").firstName("test").lastName("unit").email("test@test.com").country("UK").build();
+        var closed = new AtomicBoolean();
+
+        when(userQueryService.streamPublicUsers(userFilter, 2)).thenReturn(Stream.of(user, user, user).onClose(() -> closed.set(true)));
+
+        var outputStream = new ByteArrayOutputStream();
+        var exported = userExportService.export(userFilter, outputStream);
+
+        var lines = outputStream.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, exported);
+        assertEquals(3, lines.length);
+        for (var line : lines) {
+            assertEquals("{\"nickname\":\"test\",\"firstName\":\"test\",\"lastName\":\"unit\",\"email\":\"test@test.com\",\"country\":\"UK\"}", line);
+        }
+        assertTrue(closed.get());
+    }
+
+    @Test
+    public void should_write_nothing_when_no_user_matches() throws IOException {
+        var userFilter = UserFilter.builder().country("XX").build();
+
+        when(userQueryService.streamPublicUsers(userFilter, 2)).thenReturn(Stream.empty());
+
+        var outputStream = new ByteArrayOutputStream();
+
+        assertEquals(0, userExportService.export(userFilter, outputStream));
+        assertEquals(0, outputStream.size());
+    }
+}
@@ -0,0 +1,258 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.cache.UserNotFoundCache;
+import com.bernardoms.user.dto.ImportJobStatus;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.ImportJobNotFoundException;
+import com.bernardoms.user.exception.ImportRejectedException;
+import com.bernardoms.user.mapper.UserMapper;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.service.PasswordHashingService;
+import com.bernardoms.user.service.UserImportService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.validation.Validation;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserImportServiceUnitTest {
+
+    @Mock
+    private UserMapper userMapper;
+    @Mock
+    private PasswordEncoder passwordEncoder;
+    @Mock
+    private MongoOperations mongoOperations;
+    @Mock
+    private BulkOperations bulkOperations;
+    @Mock
+    private UserNotFoundCache userNotFoundCache;
+
+    private PasswordHashingService passwordHashingService;
+
+    @AfterEach
+    public void tearDown() {
+        if (passwordHashingService != null) {
+            passwordHashingService.shutdown();
+        }
+    }
+
+    @Test
+    public void should_insert_valid_lines_and_report_invalid_ones_by_line_number() throws Exception {
+        var userImportService = userImportService(2, 1);
+        mockBulkInsert();
+
+        var body = user("first") + "\n"
+                + "\n"
+                + "{not json\n"
+                + "{\"nickname\":\"invalid\",\"email\":\"not an email\"}\n"
+                + user("second") + "\r\n"
+                + "{\"nickname\":\"" + "x".repeat(300) + "\"}\n"
+                + user("third");
+
+        var status = await(userImportService, userImportService.importUsers(stream(body)).getId());
+
+        assertEquals(ImportJobStatus.State.COMPLETED, status.getState());
+        assertEquals(6, status.getLinesRead());
+        assertEquals(3, status.getCreated());
+        assertEquals(3, status.getFailed());
+        assertEquals(3, status.getErrors().get(0).getLine());
+        assertEquals(4, status.getErrors().get(1).getLine());
+        assertEquals("email: must be a well-formed email address, firstName: must not be blank, lastName: must not be blank, password: must not be blank",
+                status.getErrors().get(1).getDescription());
+        assertEquals(6, status.getErrors().get(2).getLine());
+        assertEquals("line longer than 256 bytes", status.getErrors().get(2).getDescription());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<List<User>> inserted = ArgumentCaptor.forClass(List.class);
+        verify(bulkOperations, atLeastOnce()).insert(inserted.capture());
+        var users = new ArrayList<User>();
+        inserted.getAllValues().forEach(users::addAll);
+        assertEquals(3, users.size());
+        users.forEach(user -> assertEquals("hash", user.getPassword()));
+        verify(userNotFoundCache).invalidate("second");
+    }
+
+    @Test
+    public void should_report_lines_that_are_not_a_json_object() throws Exception {
+        var userImportService = userImportService(1, 1);
+        mockBulkInsert();
+
+        var body = "null\n"
+                + "[]\n"
+                + "42\n"
+                + user("first") + "\n";
+
+        var status = await(userImportService, userImportService.importUsers(stream(body)).getId());
+
+        assertEquals(ImportJobStatus.State.COMPLETED, status.getState());
+        assertEquals(4, status.getLinesRead());
+        assertEquals(1, status.getCreated());
+        assertEquals(3, status.getFailed());
+        assertEquals(1, status.getErrors().get(0).getLine());
+        assertEquals("user is required", status.getErrors().get(0).getDescription());
+        assertEquals(2, status.getErrors().get(1).getLine());
+        assertTrue(status.getErrors().get(1).getDescription().startsWith("invalid json: "));
+        assertEquals(3, status.getErrors().get(2).getLine());
+        assertTrue(status.getErrors().get(2).getDescription().startsWith("invalid json: "));
+    }
+
+    @Test
+    public void should_report_lines_rejected_by_a_unique_index() throws Exception {
+        var userImportService = userImportService(1, 1);
+        mockBulkInsert();
+        when(bulkOperations.execute()).thenThrow(new BulkOperationException("bulk write failed", new MongoBulkWriteException(
+                BulkWriteResult.acknowledged(1, 0, 0, 0, new ArrayList<>(), new ArrayList<>()),
+                List.of(new BulkWriteError(11000, "E11000 duplicate key error index: nickname", new BsonDocument(), 0)),
+                null, new ServerAddress()))).thenReturn(null);
+
+        var status = await(userImportService, userImportService.importUsers(stream(user("first") + "\n" + user("second") + "\n")).getId());
+
+        assertEquals(ImportJobStatus.State.COMPLETED, status.getState());
+        assertEquals(1, status.getCreated());
+        assertEquals(1, status.getFailed());
+        assertEquals(1, status.getErrors().get(0).getLine());
+        assertEquals("E11000 duplicate key error index: nickname", status.getErrors().get(0).getDescription());
+    }
+
+    @Test
+    public void should_wait_for_room_in_the_hashing_queue_instead_of_hashing_elsewhere() throws Exception {
+        var userImportService = userImportService(1, 1, 1);
+        mockBulkInsert();
+        var release = new CountDownLatch(1);
+        when(passwordEncoder.encode("busy")).thenAnswer(invocation -> {
+            release.await();
+            return "busy hash";
+        });
+        var running = passwordHashingService.encodeAsync("busy");
+        var queued = passwordHashingService.encodeAsync("busy");
+
+        var id = userImportService.importUsers(stream(user("first") + "\n" + user("second") + "\n")).getId();
+        Thread.sleep(300);
+
+        assertEquals(ImportJobStatus.State.RUNNING, userImportService.getJob(id).getState());
+        verify(passwordEncoder, never()).encode("password");
+
+        release.countDown();
+        var status = await(userImportService, id);
+
+        assertEquals(ImportJobStatus.State.COMPLETED, status.getState());
+        assertEquals(2, status.getCreated());
+        assertEquals("busy hash", running.get());
+        assertEquals("busy hash", queued.get());
+    }
+
+    @Test
+    public void should_keep_a_running_job_past_its_retention() throws Exception {
+        var userImportService = userImportService(1, 64, 1, 0);
+        mockBulkInsert();
+        var release = new CountDownLatch(1);
+        when(passwordEncoder.encode("password")).thenAnswer(invocation -> {
+            release.await();
+            return "hash";
+        });
+
+        var id = userImportService.importUsers(stream(user("first") + "\n")).getId();
+        Thread.sleep(300);
+
+        assertEquals(ImportJobStatus.State.RUNNING, userImportService.getJob(id).getState());
+
+        release.countDown();
+        for (int i = 0; i < 100; i++) {
+            try {
+                userImportService.getJob(id);
+                Thread.sleep(50);
+            } catch (ImportJobNotFoundException e) {
+                verify(bulkOperations).execute();
+                return;
+            }
+        }
+        throw new AssertionError("import job " + id + " was kept past its retention once finished");
+    }
+
+    @Test
+    public void should_reject_import_when_too_many_are_running() {
+        var userImportService = userImportService(1, 0);
+
+        assertThrows(ImportRejectedException.class, () -> userImportService.importUsers(stream(user("first"))));
+    }
+
+    @Test
+    public void should_throw_import_job_not_found_for_unknown_id() {
+        var userImportService = userImportService(1, 1);
+
+        var exception = assertThrows(ImportJobNotFoundException.class, () -> userImportService.getJob("unknown"));
+
+        assertEquals("import job unknown not found!", exception.getMessage());
+    }
+
+    private UserImportService userImportService(int hashingThreads, int maxConcurrentJobs) {
+        return userImportService(hashingThreads, 64, maxConcurrentJobs);
+    }
+
+    private UserImportService userImportService(int hashingThreads, int hashingQueueCapacity, int maxConcurrentJobs) {
+        return userImportService(hashingThreads, hashingQueueCapacity, maxConcurrentJobs, 60);
+    }
+
+    private UserImportService userImportService(int hashingThreads, int hashingQueueCapacity, int maxConcurrentJobs,
+                                                long retentionMinutes) {
+        passwordHashingService = new PasswordHashingService(passwordEncoder, new SimpleMeterRegistry(), hashingThreads, hashingQueueCapacity, 1);
+        return new UserImportService(new ObjectMapper(), Validation.buildDefaultValidatorFactory().getValidator(), userMapper,
+                passwordHashingService, mongoOperations, userNotFoundCache, 2, 2, 256, 10, maxConcurrentJobs, retentionMinutes);
+    }
+
+    private void mockBulkInsert() {
+        when(userMapper.toUser(any(UserDTO.class))).thenAnswer(invocation -> User.builder()
+                .nickname(invocation.<UserDTO>getArgument(0).getNickname()).build());
+        when(passwordEncoder.encode("password")).thenReturn("hash");
+        when(mongoOperations.bulkOps(BulkOperations.BulkMode.UNORDERED, User.class)).thenReturn(bulkOperations);
+        when(bulkOperations.insert(anyList())).thenReturn(bulkOperations);
+    }
+
+    private ImportJobStatus await(UserImportService userImportService, String id) throws Exception {
+        for (int i = 0; i < 100; i++) {
+            var status = userImportService.getJob(id);
+            if (status.getState() != ImportJobStatus.State.RUNNING) {
+                return status;
+            }
+            Thread.sleep(50);
+        }
+        throw new AssertionError("import job " + id + " did not finish");
+    }
+
+    private String user(String nickname) {
+        return "{\"nickname\":\"" + nickname + "\",\"firstName\":\"test\",\"lastName\":\"unit\",\"password\":\"password\","
+                + "\"email\":\"" + nickname + "@test.com\",\"country\":\"UK\"}";
+    }
+
+    private ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
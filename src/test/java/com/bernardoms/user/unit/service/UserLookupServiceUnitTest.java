@@ -0,0 +1,78 @@
+package com.bernardoms.user.unit.service;
+
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidBatchException;
+import com.bernardoms.user.service.UserLookupService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserLookupServiceUnitTest {
+    @Mock
+    private UserCache userCache;
+
+    private UserLookupService userLookupService;
+
+    @BeforeEach
+    public void setUp() {
+        userLookupService = new UserLookupService(userCache, 3, 50);
+    }
+
+    @Test
+    public void should_look_up_each_nick_name_once_in_the_cache() throws Exception {
+        var user = UserDTO.builder().nickname("test").build();
+        when(userCache.getAll(Set.of("test", "unknown"))).thenReturn(Map.of("test", user));
+
+        var users = userLookupService.getByNickNames(List.of("test", "unknown", "test"));
+
+        assertEquals(Map.of("test", user), users);
+    }
+
+    @Test
+    public void should_reject_lookup_that_is_empty_or_too_large() {
+        var exception = assertThrows(InvalidBatchException.class, () -> userLookupService.getByNickNames(List.of()));
+        assertEquals("lookup should have between 1 and 3 nick names", exception.getMessage());
+        assertThrows(InvalidBatchException.class, () -> userLookupService.getByNickNames(List.of("a", "b", "c", "d")));
+        verify(userCache, never()).getAll(any());
+    }
+
+    @Test
+    public void should_reject_blank_nick_names() {
+        assertThrows(InvalidBatchException.class, () -> userLookupService.getByNickNames(Arrays.asList("test", null)));
+        assertThrows(InvalidBatchException.class, () -> userLookupService.getByNickNames(List.of("test", " ")));
+        verify(userCache, never()).getAll(any());
+    }
+
+    @Test
+    public void should_time_out_an_async_lookup_without_failing_the_shared_load() throws Exception {
+        var load = new CompletableFuture<Map<String, UserDTO>>();
+        when(userCache.getAllAsync(Set.of("test"))).thenReturn(load);
+
+        var exception = assertThrows(ExecutionException.class,
+                () -> userLookupService.getByNickNamesAsync(List.of("test")).get(5, TimeUnit.SECONDS));
+
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        assertEquals("users lookup didn't complete within 50ms", exception.getCause().getMessage());
+        assertFalse(load.isDone());
+    }
+}
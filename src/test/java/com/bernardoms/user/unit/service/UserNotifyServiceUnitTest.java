@@ -1,18 +1,35 @@
 package com.bernardoms.user.unit.service;
 
+import com.amazonaws.handlers.AsyncHandler;
 import com.amazonaws.services.sns.AmazonSNSAsync;
 import com.amazonaws.services.sns.model.PublishRequest;
+import com.amazonaws.services.sns.model.PublishResult;
 import com.bernardoms.user.config.UserQueueConfig;
-import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.bernardoms.user.service.NotificationCircuitBreaker;
+import com.bernardoms.user.service.UserChangeEventEncoder;
 import com.bernardoms.user.service.UserNotifyServiceImpl;
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.*;
 
@@ -22,16 +39,228 @@ public class UserNotifyServiceUnitTest {
     private UserQueueConfig userQueueConfig;
     @Mock
     private AmazonSNSAsync amazonSNSAsync;
-    @Mock
-    private ObjectMapper objectMapper;
-    @InjectMocks
+
+    @TempDir
+    Path spillDir;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final BlockingQueue<Publish> publishes = new LinkedBlockingQueue<>();
     private UserNotifyServiceImpl userNotifyServiceImpl;
 
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setUp() {
+        lenient().when(userQueueConfig.getTopic()).thenReturn("test");
+        lenient().when(amazonSNSAsync.publishAsync(any(PublishRequest.class), any())).thenAnswer(invocation -> {
+            publishes.add(new Publish(invocation.getArgument(0), invocation.getArgument(1)));
+            return null;
+        });
+    }
+
+    @AfterEach
+    public void tearDown() {
+        userNotifyServiceImpl.shutdown();
+    }
+
+    @Test
+    public void should_send_message_with_user_to_sns() throws Exception {
+        userNotifyServiceImpl = newService(10, 10);
+
+        var event = event("1", Map.of("country", "BR"));
+        var future = userNotifyServiceImpl.publish("user1", event);
+        var publish = nextPublish();
+        assertEquals("test", publish.request.getTopicArn());
+        assertEquals(event, objectMapper.readValue(publish.request.getMessage(), UserChangeEvent.class));
+        assertEquals("1", publish.request.getMessageAttributes().get("schemaVersion").getStringValue());
+        assertEquals("application/json", publish.request.getMessageAttributes().get("contentType").getStringValue());
+
+        var result = new PublishResult().withMessageId("1");
+        publish.succeed(result);
+        assertSame(result, future.get(5, TimeUnit.SECONDS));
+        assertEquals(1, meterRegistry.get("user.notify.published").counter().count());
+        assertEquals(1, meterRegistry.get("user.notify.publish").timer().count());
+    }
+
+    @Test
+    public void should_merge_notifications_waiting_for_the_same_user() throws Exception {
+        userNotifyServiceImpl = newService(10, 10);
+
+        var first = userNotifyServiceImpl.publish("user1", event("1", Map.of("country", "UK")));
+        var inFlight = nextPublish();
+        var second = userNotifyServiceImpl.publish("user1", event("2", Map.of("country", "BR", "lastName", "old")));
+        var third = userNotifyServiceImpl.publish("user1", event("3", Map.of("lastName", "new")));
+
+        assertSame(second, third);
+        assertNull(publishes.poll(100, TimeUnit.MILLISECONDS));
+        inFlight.succeed(new PublishResult());
+        first.get(5, TimeUnit.SECONDS);
+
+        var merged = nextPublish();
+        assertEquals(event("3", Map.of("country", "BR", "lastName", "new")),
+                objectMapper.readValue(merged.request.getMessage(), UserChangeEvent.class));
+        merged.succeed(new PublishResult());
+        third.get(5, TimeUnit.SECONDS);
+        assertEquals(2, meterRegistry.get("user.notify.published").counter().count());
+        assertEquals(1, meterRegistry.get("user.notify.coalesced").counter().count());
+    }
+
     @Test
-    public void should_send_message_with_user_to_sns() throws JsonProcessingException {
-        when(userQueueConfig.getTopic()).thenReturn("test");
-        when(objectMapper.writeValueAsString(any())).thenReturn("");
-        userNotifyServiceImpl.publish(UserDTO.builder().build());
-        verify(amazonSNSAsync, times(1)).publish(new PublishRequest("test", ""));
+    public void should_keep_publishes_in_flight_under_the_limit() throws Exception {
+        userNotifyServiceImpl = newService(10, 1);
+
+        userNotifyServiceImpl.publish("user1", event("1", Map.of()));
+        var second = userNotifyServiceImpl.publish("user2", event("2", Map.of()));
+        var inFlight = nextPublish();
+
+        assertNull(publishes.poll(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, meterRegistry.get("user.notify.queue.depth").gauge().value());
+
+        inFlight.succeed(new PublishResult());
+        nextPublish().fail(new IllegalStateException("sns down"));
+        var exception = assertThrows(ExecutionException.class, () -> second.get(5, TimeUnit.SECONDS));
+        assertEquals("sns down", exception.getCause().getMessage());
+        assertEquals(1, meterRegistry.get("user.notify.failed").counter().count());
+    }
+
+    @Test
+    public void should_reject_notification_for_another_user_when_queue_is_full() throws Exception {
+        userNotifyServiceImpl = newService(1, 10);
+
+        userNotifyServiceImpl.publish("user1", event("1", Map.of()));
+        nextPublish();
+        userNotifyServiceImpl.publish("user1", event("1", Map.of()));
+
+        var rejected = userNotifyServiceImpl.publish("user2", event("2", Map.of()));
+
+        var exception = assertThrows(ExecutionException.class, () -> rejected.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof RejectedExecutionException);
+        assertEquals(1, meterRegistry.get("user.notify.rejected").counter().count());
+    }
+
+    @Test
+    public void should_fail_publish_that_is_not_acknowledged_within_the_budget() throws Exception {
+        userNotifyServiceImpl = newService(10, 1, 50, 5, 60_000);
+
+        var future = userNotifyServiceImpl.publish("user1", event("1", Map.of()));
+        nextPublish();
+
+        var exception = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof TimeoutException);
+        userNotifyServiceImpl.publish("user2", event("2", Map.of()));
+        nextPublish();
+    }
+
+    @Test
+    public void should_spill_notifications_while_breaker_is_open_and_replay_them_once_closed() throws Exception {
+        userNotifyServiceImpl = newService(10, 10, 1000, 2, 100);
+
+        for (int i = 0; i < 2; i++) {
+            var failing = userNotifyServiceImpl.publish("user" + i, event(String.valueOf(i), Map.of()));
+            nextPublish().fail(new IllegalStateException("sns down"));
+            assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(NotificationCircuitBreaker.State.OPEN, userNotifyServiceImpl.getCircuitBreakerState());
+
+        var spilled = event("3", Map.of("country", "BR"));
+        userNotifyServiceImpl.publish("user3", spilled).get(5, TimeUnit.SECONDS);
+        assertNull(publishes.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(1, userNotifyServiceImpl.getSpillSize());
+        assertEquals(1, meterRegistry.get("user.notify.spilled").counter().count());
+
+        Thread.sleep(150);
+        userNotifyServiceImpl.publish("user4", event("4", Map.of()));
+        nextPublish().succeed(new PublishResult());
+        while (userNotifyServiceImpl.getCircuitBreakerState() != NotificationCircuitBreaker.State.CLOSED) {
+            Thread.onSpinWait();
+        }
+
+        var replay = CompletableFuture.runAsync(userNotifyServiceImpl::replaySpill);
+        var replayed = nextPublish();
+        assertEquals(spilled, objectMapper.readValue(replayed.request.getMessage(), UserChangeEvent.class));
+        replayed.succeed(new PublishResult());
+        replay.get(5, TimeUnit.SECONDS);
+        assertEquals(0, userNotifyServiceImpl.getSpillSize());
+    }
+
+    @Test
+    public void should_fail_notifications_while_breaker_is_open_when_no_spill_is_configured() throws Exception {
+        userNotifyServiceImpl = newService(10, 10, 1000, 1, 60_000, "");
+
+        var failing = userNotifyServiceImpl.publish("user1", event("1", Map.of()));
+        nextPublish().fail(new IllegalStateException("sns down"));
+        assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+
+        var refused = assertThrows(ExecutionException.class,
+                () -> userNotifyServiceImpl.publish("user2", event("2", Map.of())).get(5, TimeUnit.SECONDS));
+
+        assertTrue(refused.getCause() instanceof RejectedExecutionException);
+        assertNull(publishes.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(0, userNotifyServiceImpl.getSpillSize());
+    }
+
+    @Test
+    public void should_replay_a_single_spilled_notification_as_the_half_open_trial_and_keep_the_spill_when_it_fails() throws Exception {
+        userNotifyServiceImpl = newService(10, 10, 1000, 1, 100);
+
+        var failing = userNotifyServiceImpl.publish("user0", event("0", Map.of()));
+        nextPublish().fail(new IllegalStateException("sns down"));
+        assertThrows(ExecutionException.class, () -> failing.get(5, TimeUnit.SECONDS));
+        for (int i = 1; i <= 3; i++) {
+            userNotifyServiceImpl.publish("user" + i, event(String.valueOf(i), Map.of())).get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(3, userNotifyServiceImpl.getSpillSize());
+
+        Thread.sleep(150);
+        var replay = CompletableFuture.runAsync(userNotifyServiceImpl::replaySpill);
+        nextPublish().fail(new IllegalStateException("sns still down"));
+        replay.get(5, TimeUnit.SECONDS);
+
+        assertNull(publishes.poll(50, TimeUnit.MILLISECONDS));
+        assertEquals(3, userNotifyServiceImpl.getSpillSize());
+        assertEquals(3, meterRegistry.get("user.notify.spilled").counter().count());
+        assertEquals(NotificationCircuitBreaker.State.OPEN, userNotifyServiceImpl.getCircuitBreakerState());
+    }
+
+    private UserNotifyServiceImpl newService(int queueCapacity, int maxInFlight) {
+        return newService(queueCapacity, maxInFlight, 60_000, 5, 60_000);
+    }
+
+    private UserNotifyServiceImpl newService(int queueCapacity, int maxInFlight, long publishTimeoutMillis, int failureThreshold, long openMillis) {
+        return newService(queueCapacity, maxInFlight, publishTimeoutMillis, failureThreshold, openMillis, spillDir.resolve("spill.ndjson").toString());
+    }
+
+    private UserNotifyServiceImpl newService(int queueCapacity, int maxInFlight, long publishTimeoutMillis, int failureThreshold, long openMillis,
+                                             String spillPath) {
+        return new UserNotifyServiceImpl(userQueueConfig, amazonSNSAsync, new UserChangeEventEncoder("json"), objectMapper, meterRegistry, queueCapacity, maxInFlight,
+                publishTimeoutMillis, failureThreshold, openMillis, spillPath, 500);
+    }
+
+    private static UserChangeEvent event(String eventId, Map<String, String> changes) {
+        return new UserChangeEvent(UserChangeEvent.SCHEMA_VERSION, eventId, "test", changes, 1_600_000_000_000L);
+    }
+
+    private Publish nextPublish() throws InterruptedException {
+        var publish = publishes.poll(5, TimeUnit.SECONDS);
+        assertNotNull(publish, "nothing published in 5s");
+        return publish;
+    }
+
+    private static class Publish {
+        private final PublishRequest request;
+        private final AsyncHandler<PublishRequest, PublishResult> handler;
+
+        private Publish(PublishRequest request, AsyncHandler<PublishRequest, PublishResult> handler) {
+            this.request = request;
+            this.handler = handler;
+        }
+
+        private void succeed(PublishResult result) {
+            handler.onSuccess(request, result);
+        }
+
+        private void fail(Exception exception) {
+            handler.onError(exception);
+        }
     }
 }
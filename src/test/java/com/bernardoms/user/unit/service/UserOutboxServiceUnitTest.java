@@ -0,0 +1,211 @@
+package com.bernardoms.user.unit.service;
+
+import com.amazonaws.services.sns.model.PublishResult;
+import com.bernardoms.user.dto.UserChangeEvent;
+import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.model.OutboxEvent;
+import com.bernardoms.user.model.User;
+import com.bernardoms.user.service.MongoUserStore;
+import com.bernardoms.user.service.UserNotifyService;
+import com.bernardoms.user.service.UserOutboxService;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+public class UserOutboxServiceUnitTest {
+    @Mock
+    private MongoOperations mongoOperations;
+    @Mock
+    private UserNotifyService userNotifyService;
+
+    private UserOutboxService userOutboxService;
+
+    private final ObjectId userId = new ObjectId("507f191e810c19729de860ea");
+
+    @BeforeEach
+    public void setUp() {
+        userOutboxService = new UserOutboxService(new MongoUserStore(mongoOperations), userNotifyService, 2, 1000, 30000, 3);
+    }
+
+    @Test
+    public void should_record_set_fields_but_not_the_password_in_new_event() {
+        var event = userOutboxService.newEvent("test", UserDTO.builder().nickname("test").country("BR").password("hash").build());
+
+        assertEquals("test", event.getNickname());
+        assertEquals(Map.of("country", "BR"), event.getChanges());
+        assertNotNull(event.getEventId());
+        assertNotNull(event.getCreatedAt());
+    }
+
+    @Test
+    public void should_record_a_new_nickname_under_the_old_one() {
+        var event = userOutboxService.newEvent("test", UserDTO.builder().nickname("renamed").build());
+
+        assertEquals("test", event.getNickname());
+        assertEquals(Map.of("nickname", "renamed"), event.getChanges());
+    }
+
+    @Test
+    public void should_keep_only_the_newest_events_when_queueing() {
+        var update = new Update();
+
+        userOutboxService.queue(update, "test", UserDTO.builder().country("BR").build());
+
+        var push = (Update.Modifiers) update.getUpdateObject().get("$push", Document.class).get("outbox");
+        var modifiers = push.getModifiers().stream().collect(Collectors.toMap(Update.Modifier::getKey, Update.Modifier::getValue));
+        assertEquals(-3, modifiers.get("$slice"));
+        assertEquals(1, ((Object[]) modifiers.get("$each")).length);
+    }
+
+    @Test
+    public void should_pull_published_events_from_outbox_and_release_the_claim() {
+        claimable(userWithOutbox(event("1", "first")));
+        when(userNotifyService.publish(eq(userId.toHexString()), any(UserChangeEvent.class)))
+                .thenReturn(CompletableFuture.completedFuture(new PublishResult()));
+
+        userOutboxService.drain();
+
+        var eventCaptor = ArgumentCaptor.forClass(UserChangeEvent.class);
+        verify(userNotifyService).publish(eq(userId.toHexString()), eventCaptor.capture());
+        assertEquals(new UserChangeEvent(UserChangeEvent.SCHEMA_VERSION, "1", "first", Map.of("country", "BR"), 1_600_000_000_000L),
+                eventCaptor.getValue());
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, times(1)).updateFirst(any(Query.class), updateCaptor.capture(), eq(User.class));
+        var pull = updateCaptor.getValue().getUpdateObject().get("$pull", Document.class);
+        assertEquals(new Document("eventId", new Document("$in", List.of("1"))), pull.get("outbox"));
+        assertTrue(updateCaptor.getValue().getUpdateObject().get("$unset", Document.class).containsKey("outboxClaimedBy"));
+    }
+
+    @Test
+    public void should_keep_failed_events_and_count_the_attempt() {
+        claimable(userWithOutbox(event("1", "first"), event("2", "second")));
+        when(userNotifyService.publish(eq(userId.toHexString()), argThat(event -> "1".equals(event.getEventId()))))
+                .thenReturn(CompletableFuture.completedFuture(new PublishResult()));
+        when(userNotifyService.publish(eq(userId.toHexString()), argThat(event -> "2".equals(event.getEventId())))).thenReturn(CompletableFuture.failedFuture(new IllegalStateException("sns down")));
+
+        userOutboxService.drain();
+
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, times(2)).updateFirst(queryCaptor.capture(), updateCaptor.capture(), eq(User.class));
+        assertEquals("2", queryCaptor.getAllValues().get(0).getQueryObject().get("outbox.eventId"));
+        assertNotNull(queryCaptor.getAllValues().get(0).getQueryObject().get("outboxClaimedBy"));
+        assertEquals(1, updateCaptor.getAllValues().get(0).getUpdateObject().get("$inc", Document.class).get("outbox.$.attempts"));
+        assertEquals(new Document("eventId", new Document("$in", List.of("1"))),
+                updateCaptor.getAllValues().get(1).getUpdateObject().get("$pull", Document.class).get("outbox"));
+        verify(mongoOperations, times(2)).find(any(Query.class), eq(User.class));
+    }
+
+    @Test
+    public void should_keep_draining_while_batches_are_full() {
+        var firstBatch = userWithOutbox(event("1", "first"), event("2", "second"));
+        var secondBatch = userWithOutbox(event("3", "third"));
+        when(mongoOperations.find(any(Query.class), eq(User.class)))
+                .thenReturn(List.of(firstBatch)).thenReturn(List.of(firstBatch))
+                .thenReturn(List.of(secondBatch)).thenReturn(List.of(secondBatch));
+        when(mongoOperations.updateMulti(any(Query.class), any(Update.class), eq(User.class))).thenReturn(UpdateResult.acknowledged(1, 1L, null));
+        when(userNotifyService.publish(any(), any())).thenReturn(CompletableFuture.completedFuture(new PublishResult()));
+
+        userOutboxService.drain();
+
+        verify(userNotifyService, times(3)).publish(any(), any());
+        verify(mongoOperations, times(2)).updateMulti(any(Query.class), any(Update.class), eq(User.class));
+    }
+
+    @Test
+    public void should_not_draw_more_when_nothing_is_pending() {
+        when(mongoOperations.find(any(Query.class), eq(User.class))).thenReturn(List.of());
+
+        userOutboxService.drain();
+
+        verify(mongoOperations, never()).updateMulti(any(Query.class), any(Update.class), eq(User.class));
+        verify(userNotifyService, never()).publish(any(), any());
+    }
+
+    @Test
+    public void should_publish_each_event_once_when_two_relays_drain_at_the_same_time() throws Exception {
+        var otherReplica = new UserOutboxService(new MongoUserStore(mongoOperations), userNotifyService, 2, 1000, 30000, 3);
+        var user = userWithOutbox(event("1", "first"));
+        var bothPicked = new CyclicBarrier(2);
+        var owner = new AtomicReference<String>();
+        when(mongoOperations.find(any(Query.class), eq(User.class))).thenAnswer(invocation -> {
+            var claim = invocation.getArgument(0, Query.class).getQueryObject().get("outboxClaimedBy");
+            if (claim == null) {
+                bothPicked.await(5, TimeUnit.SECONDS);
+                return List.of(user);
+            }
+            return claim.equals(owner.get()) ? List.of(user) : List.of();
+        });
+        when(mongoOperations.updateMulti(any(Query.class), any(Update.class), eq(User.class))).thenAnswer(invocation -> {
+            var claim = invocation.getArgument(1, Update.class).getUpdateObject().get("$set", Document.class).getString("outboxClaimedBy");
+            var claimed = owner.compareAndSet(null, claim);
+            return UpdateResult.acknowledged(claimed ? 1 : 0, claimed ? 1L : 0L, null);
+        });
+        when(userNotifyService.publish(any(), any())).thenReturn(CompletableFuture.completedFuture(new PublishResult()));
+
+        var relays = Executors.newFixedThreadPool(2);
+        try {
+            var first = relays.submit(userOutboxService::drain);
+            var second = relays.submit(otherReplica::drain);
+            first.get(5, TimeUnit.SECONDS);
+            second.get(5, TimeUnit.SECONDS);
+        } finally {
+            relays.shutdownNow();
+        }
+
+        verify(userNotifyService, times(1)).publish(any(), any());
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations, times(1)).updateFirst(queryCaptor.capture(), any(Update.class), eq(User.class));
+        assertEquals(owner.get(), queryCaptor.getValue().getQueryObject().get("outboxClaimedBy"));
+    }
+
+    /**
+     * Stubs one batch in which every pending user is claimed.
+     */
+    private void claimable(User... users) {
+        when(mongoOperations.find(any(Query.class), eq(User.class))).thenReturn(List.of(users));
+        when(mongoOperations.updateMulti(any(Query.class), any(Update.class), eq(User.class)))
+                .thenReturn(UpdateResult.acknowledged(users.length, (long) users.length, null));
+    }
+
+    private User userWithOutbox(OutboxEvent... events) {
+        return User.builder().id(userId).outbox(List.of(events)).build();
+    }
+
+    private static OutboxEvent event(String eventId, String nickname) {
+        return OutboxEvent.builder()
+                .eventId(eventId)
+                .nickname(nickname)
+                .changes(Map.of("country", "BR"))
+                .createdAt(Instant.ofEpochMilli(1_600_000_000_000L))
+                .build();
+    }
+}
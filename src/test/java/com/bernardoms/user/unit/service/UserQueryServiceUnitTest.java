@@ -1,23 +1,35 @@
 package com.bernardoms.user.unit.service;
 
 import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.exception.InvalidCursorException;
+import com.bernardoms.user.model.CountMode;
 import com.bernardoms.user.model.User;
 import com.bernardoms.user.model.UserFilter;
+import com.bernardoms.user.service.QueryShapeGuard;
 import com.bernardoms.user.service.UserQueryService;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.CountOptions;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.Document;
 import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
 import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.CollectionCallback;
 import org.springframework.data.mongodb.core.MongoOperations;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 
 import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -25,14 +37,25 @@ public class UserQueryServiceUnitTest {
     @Mock
     private MongoOperations mongoOperations;
 
-    @InjectMocks
     private UserQueryService userQueryService;
 
+    @Mock
+    private MongoCollection<Document> mongoCollection;
+
     @Captor
     private ArgumentCaptor<Query> queryArgumentCaptor;
 
+    @BeforeEach
+    public void setUp() {
+        var indexScan = new Document("queryPlanner", new Document("winningPlan", new Document("stage", "FETCH")
+                .append("inputStage", new Document("stage", "IXSCAN").append("indexName", "country_last_name_first_name"))));
+        lenient().when(mongoOperations.executeCommand(any(Document.class))).thenReturn(indexScan);
+        userQueryService = new UserQueryService(mongoOperations,
+                new QueryShapeGuard(mongoOperations, new SimpleMeterRegistry(), QueryShapeGuard.Policy.REJECT, 2_000));
+    }
+
     @Test
-    public void should_filter_by_every_field() {
+    public void should_filter_by_every_field() throws Exception {
         var filter = UserFilter.builder().email("test@test.com")
                 .country("UK")
                 .firstName("firstname")
@@ -42,46 +65,246 @@ public class UserQueryServiceUnitTest {
                 .nickname("nick")
                 .build();
 
-        var user = User.builder().country("UK")
-                .id(new ObjectId("507f191e810c19729de860ea"))
-                .email("test@test.com")
-                .firstName("firstname")
-                .lastName("lastname")
-                .nickname("nick")
-                .build();
+        var user = new Document("nickname", "nick")
+                .append("firstName", "firstname")
+                .append("lastName", "lastname")
+                .append("email", "test@test.com")
+                .append("country", "UK");
 
 
-        when(mongoOperations.find(any(), any())).thenReturn(Collections.singletonList(user));
+        when(mongoOperations.find(any(), any(), any())).thenReturn(Collections.singletonList(user));
 
         userQueryService.returnPageableFilteredUser(filter);
 
-        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any());
+        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any(), any());
 
-        assertEquals("Query: { \"firstName\" : \"firstname\", \"lastName\" : \"lastname\", \"country\" : \"UK\", \"nickname\" : \"nick\", \"email\" : \"test@test.com\"}, Fields: {}, Sort: {}", queryArgumentCaptor.getValue().toString());
+        assertEquals("Query: { \"firstName\" : \"firstname\", \"lastName\" : \"lastname\", \"country\" : \"UK\", \"nickname\" : \"nick\", \"email\" : \"test@test.com\"}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: {}", queryArgumentCaptor.getValue().toString());
     }
 
     @Test
-    public void should_not_filter() {
+    public void should_not_filter() throws Exception {
         var filter = UserFilter.builder()
                 .offset(0)
                 .limit(100)
                 .build();
 
-        var user = User.builder().country("UK")
-                .id(new ObjectId("507f191e810c19729de860ea"))
-                .email("test@test.com")
-                .firstName("firstname")
-                .lastName("lastname")
-                .nickname("nick")
+        var user = new Document("nickname", "nick")
+                .append("firstName", "firstname")
+                .append("lastName", "lastname")
+                .append("email", "test@test.com")
+                .append("country", "UK");
+
+
+        when(mongoOperations.find(any(), any(), any())).thenReturn(Collections.singletonList(user));
+
+        userQueryService.returnPageableFilteredUser(filter);
+
+        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any(), any());
+
+        assertEquals("Query: {}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: {}", queryArgumentCaptor.getValue().toString());
+    }
+
+    @Test
+    public void should_return_first_page_and_next_cursor_when_cursor_is_empty() throws Exception {
+        var filter = UserFilter.builder()
+                .limit(1)
+                .cursor("")
+                .build();
+
+        var user = new Document("_id", new ObjectId("507f191e810c19729de860ea")).append("nickname", "nick");
+        var user2 = new Document("_id", new ObjectId("507f191e810c19729de860eb")).append("nickname", "nick2");
+
+        when(mongoOperations.find(any(), eq(Document.class), any())).thenReturn(List.of(user, user2));
+
+        var page = userQueryService.returnCursorFilteredUser(filter);
+
+        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any(), any());
+        verify(mongoOperations, never()).count(any(), any(Class.class));
+
+        assertEquals("Query: {}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: { \"_id\" : 1}", queryArgumentCaptor.getValue().toString());
+        assertEquals(2, queryArgumentCaptor.getValue().getLimit());
+        assertEquals(1, page.getContent().size());
+        assertEquals("nick", page.getContent().get(0).getNickname());
+        assertEquals("UH8ZHoEMGXKd6GDq", page.getNextCursor());
+    }
+
+    @Test
+    public void should_seek_after_cursor_and_return_no_next_cursor_on_last_page() throws Exception {
+        var filter = UserFilter.builder()
+                .country("UK")
+                .limit(1)
+                .cursor("UH8ZHoEMGXKd6GDq")
+                .build();
+
+        var user = new Document("_id", new ObjectId("507f191e810c19729de860eb")).append("nickname", "nick2");
+
+        when(mongoOperations.find(any(), eq(Document.class), any())).thenReturn(List.of(user));
+
+        var page = userQueryService.returnCursorFilteredUser(filter);
+
+        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any(), any());
+
+        assertEquals("Query: { \"country\" : \"UK\", \"_id\" : { \"$gt\" : { \"$oid\" : \"507f191e810c19729de860ea\"}}}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: { \"_id\" : 1}", queryArgumentCaptor.getValue().toString());
+        assertEquals(1, page.getContent().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    public void should_throw_invalid_cursor_exception_when_cursor_is_malformed() {
+        var filter = UserFilter.builder()
+                .limit(1)
+                .cursor("not-a-cursor")
+                .build();
+
+        var exception = assertThrows(InvalidCursorException.class, () -> userQueryService.returnCursorFilteredUser(filter));
+
+        assertEquals("invalid cursor not-a-cursor", exception.getMessage());
+        verify(mongoOperations, never()).find(any(), any(), any());
+    }
+
+    @Test
+    public void should_throw_invalid_cursor_exception_when_limit_is_below_one() {
+        var zero = UserFilter.builder().limit(0).cursor("").build();
+        var negative = UserFilter.builder().limit(-1).cursor("").build();
+
+        var exception = assertThrows(InvalidCursorException.class, () -> userQueryService.returnCursorFilteredUser(zero));
+        assertThrows(InvalidCursorException.class, () -> userQueryService.returnCursorFilteredUser(negative));
+
+        assertEquals("invalid limit 0, it must be at least 1", exception.getMessage());
+        verify(mongoOperations, never()).find(any(), any(), any());
+    }
+
+    @Test
+    public void should_use_estimated_document_count_when_estimated_count_without_filter() throws Exception {
+        var filter = UserFilter.builder()
+                .offset(0)
+                .limit(100)
+                .count(CountMode.ESTIMATED)
                 .build();
 
+        when(mongoOperations.getCollectionName(User.class)).thenReturn("users");
+        when(mongoOperations.getCollection("users")).thenReturn(mongoCollection);
+        when(mongoCollection.estimatedDocumentCount()).thenReturn(3_000_000L);
 
-        when(mongoOperations.find(any(), any())).thenReturn(Collections.singletonList(user));
+        var users = userQueryService.returnPageableFilteredUser(filter);
+
+        verify(mongoOperations, never()).count(any(), any(Class.class));
+        assertEquals(3_000_000L, users.getTotalElements());
+    }
+
+    @Test
+    public void should_reuse_cached_count_when_estimated_count_with_filter() throws Exception {
+        var filter = UserFilter.builder()
+                .country("BR")
+                .offset(0)
+                .limit(100)
+                .count(CountMode.ESTIMATED)
+                .build();
+
+        when(mongoOperations.count(any(), eq(User.class))).thenReturn(150L);
 
         userQueryService.returnPageableFilteredUser(filter);
+        var users = userQueryService.returnPageableFilteredUser(filter);
+
+        verify(mongoOperations, times(1)).count(any(), eq(User.class));
+        verify(mongoOperations, times(2)).find(any(), any(), any());
+        assertEquals(150L, users.getTotalElements());
+    }
+
+    @Test
+    public void should_fetch_one_extra_row_and_not_count_when_count_is_none() throws Exception {
+        var filter = UserFilter.builder()
+                .offset(1)
+                .limit(1)
+                .count(CountMode.NONE)
+                .build();
+
+        var user = new Document("nickname", "nick2");
+        var user2 = new Document("nickname", "nick3");
+
+        when(mongoOperations.find(any(), any(), any())).thenReturn(List.of(user, user2));
+
+        var users = userQueryService.returnSlicedFilteredUser(filter);
+
+        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any(), any());
+        verify(mongoOperations, never()).count(any(), any(Class.class));
+
+        assertEquals(1, queryArgumentCaptor.getValue().getSkip());
+        assertEquals(2, queryArgumentCaptor.getValue().getLimit());
+        assertEquals(1, users.getNumberOfElements());
+        assertTrue(users.hasNext());
+    }
+
+    @Test
+    public void should_find_public_user_by_nickname_with_projection() {
+        var user = new Document("nickname", "nick").append("country", "UK");
+
+        when(mongoOperations.findOne(any(), eq(Document.class), any())).thenReturn(user);
+
+        var userDTO = userQueryService.findPublicUserByNickname("nick");
+
+        verify(mongoOperations, times(1)).findOne(queryArgumentCaptor.capture(), eq(Document.class), any());
+
+        assertEquals("Query: { \"nickname\" : \"nick\"}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: {}", queryArgumentCaptor.getValue().toString());
+        assertEquals(UserDTO.builder().nickname("nick").country("UK").build(), userDTO.orElseThrow());
+    }
+
+    @Test
+    public void should_stream_public_users_in_cursor_batches_and_close_cursor() {
+        var closed = new boolean[1];
+        var documents = List.of(new Document("nickname", "nick").append("country", "UK")).iterator();
+        CloseableIterator<Document> cursor = new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return documents.hasNext();
+            }
+
+            @Override
+            public Document next() {
+                return documents.next();
+            }
+
+            @Override
+            public void close() {
+                closed[0] = true;
+            }
+        };
+        var userFilter = UserFilter.builder().country("UK").build();
+
+        when(mongoOperations.getCollectionName(User.class)).thenReturn("users");
+        when(mongoOperations.stream(any(), eq(Document.class), eq("users"))).thenReturn(cursor);
+
+        try (var users = userQueryService.streamPublicUsers(userFilter, 500)) {
+            assertEquals(List.of(UserDTO.builder().nickname("nick").country("UK").build()), users.collect(Collectors.toList()));
+        }
+
+        verify(mongoOperations, times(1)).stream(queryArgumentCaptor.capture(), eq(Document.class), eq("users"));
+        assertEquals(500, queryArgumentCaptor.getValue().getMeta().getCursorBatchSize());
+        assertEquals("Query: { \"country\" : \"UK\"}, Fields: { \"firstName\" : 1, \"lastName\" : 1, \"country\" : 1, \"nickname\" : 1, \"version\" : 1, \"email\" : 1}, Sort: {}", queryArgumentCaptor.getValue().toString());
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void should_cap_the_time_of_a_count_that_scans_the_collection() throws Exception {
+        var filter = UserFilter.builder()
+                .country("UK")
+                .offset(0)
+                .limit(100)
+                .build();
+        var collectionScan = new Document("queryPlanner", new Document("winningPlan", new Document("stage", "COLLSCAN")));
+        var countOptions = ArgumentCaptor.forClass(CountOptions.class);
+        userQueryService = new UserQueryService(mongoOperations,
+                new QueryShapeGuard(mongoOperations, new SimpleMeterRegistry(), QueryShapeGuard.Policy.MAX_TIME, 2_000));
+
+        when(mongoOperations.executeCommand(any(Document.class))).thenReturn(collectionScan);
+        when(mongoOperations.execute(eq(User.class), any(CollectionCallback.class)))
+                .thenAnswer(invocation -> invocation.<CollectionCallback<Long>>getArgument(1).doInCollection(mongoCollection));
+        when(mongoCollection.countDocuments(eq(new Document("country", "UK")), countOptions.capture())).thenReturn(1L);
 
-        verify(mongoOperations, times(1)).find(queryArgumentCaptor.capture(), any());
+        var users = userQueryService.returnPageableFilteredUser(filter);
 
-        assertEquals("Query: {}, Fields: {}, Sort: {}", queryArgumentCaptor.getValue().toString());
+        verify(mongoOperations, never()).count(any(), any(Class.class));
+        assertEquals(2_000L, countOptions.getValue().getMaxTime(TimeUnit.MILLISECONDS));
+        assertEquals(1L, users.getTotalElements());
     }
 }
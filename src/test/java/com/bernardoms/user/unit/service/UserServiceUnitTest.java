@@ -1,34 +1,53 @@
 package com.bernardoms.user.unit.service;
 
+import com.bernardoms.user.cache.UserCache;
+import com.bernardoms.user.cache.UserNotFoundCache;
 import com.bernardoms.user.dto.UserDTO;
+import com.bernardoms.user.dto.UserPatchDTO;
 import com.bernardoms.user.exception.NicknameAlreadyExistException;
 import com.bernardoms.user.exception.UserNotFoundException;
+import com.bernardoms.user.mapper.UserMapper;
 import com.bernardoms.user.model.User;
 import com.bernardoms.user.model.UserFilter;
 import com.bernardoms.user.repository.UserRepository;
-import com.bernardoms.user.service.UserNotifyService;
-import com.bernardoms.user.service.UserNotifyServiceImpl;
+import com.bernardoms.user.service.PasswordHashingService;
+import com.bernardoms.user.service.UserOutboxService;
 import com.bernardoms.user.service.UserQueryService;
 import com.bernardoms.user.service.UserService;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.mongodb.MongoCommandException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteError;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
-import org.modelmapper.ModelMapper;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageImpl;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoOperations;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
 
 import java.util.Collections;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -39,41 +58,42 @@ public class UserServiceUnitTest {
     @Mock
     private UserQueryService userQueryService;
     @Mock
-    private ModelMapper modelMapper;
+    private UserMapper userMapper;
     @Mock
-    private PasswordEncoder passwordEncoder;
+    private PasswordHashingService passwordHashingService;
     @Mock
-    private UserNotifyService userNotifyService;
+    private UserOutboxService userOutboxService;
+    @Spy
+    private UserNotFoundCache userNotFoundCache = new UserNotFoundCache(30, 100, new SimpleMeterRegistry());
+    @Mock
+    private UserCache userCache;
+    @Mock
+    private MongoOperations mongoOperations;
     @InjectMocks
     private UserService userService;
 
     @Test
     public void should_return_user_when_find_by_existing_nickname() throws UserNotFoundException {
-        var user = User.builder().country("UK")
+        var user = UserDTO.builder().country("UK")
                 .email("test@test.com")
                 .firstName("test")
                 .lastName("unit")
                 .nickname("test")
                 .build();
 
-        when(modelMapper.map(user, UserDTO.class)).thenReturn(UserDTO.builder().country("UK")
-                .email("test@test.com")
-                .firstName("test")
-                .lastName("unit")
-                .nickname("test")
-                .build());
-
-        when(userRepository.findByNickname("test_nickname")).thenReturn(Optional.of(user));
+        when(userCache.get("test_nickname")).thenReturn(Optional.of(user));
         var userDTO = userService.getByNickName("test_nickname");
         assertEquals(user.getNickname(), userDTO.getNickname());
         assertEquals(user.getCountry(), userDTO.getCountry());
         assertEquals(user.getEmail(), userDTO.getEmail());
         assertEquals(user.getFirstName(), userDTO.getFirstName());
         assertEquals(user.getLastName(), userDTO.getLastName());
+        verify(userRepository, never()).findByNickname(anyString());
     }
 
     @Test
     public void should_throw_user_not_found_exception_when_user_not_found() {
+        when(userCache.get("test_nickname")).thenReturn(Optional.empty());
         var exception = assertThrows(UserNotFoundException.class, () -> {
             userService.getByNickName("test_nickname");
         });
@@ -81,7 +101,37 @@ public class UserServiceUnitTest {
     }
 
     @Test
-    public void should_return_list_of_users_filtered_by_parameter() {
+    public void should_find_user_saved_after_a_not_found_lookup() throws Exception {
+        var userDTO = UserDTO.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname("test")
+                .password("newpassword")
+                .build();
+
+        var user = User.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname("test")
+                .build();
+
+        when(userQueryService.findPublicUserByNickname("test")).thenReturn(Optional.empty());
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(userRepository.save(user)).thenReturn(user);
+
+        assertTrue(userNotFoundCache.find("test", userQueryService::findPublicUserByNickname).isEmpty());
+        userService.saveUser(userDTO);
+
+        verify(userNotFoundCache, times(1)).invalidate("test");
+        verify(userCache, times(1)).put(any());
+        when(userQueryService.findPublicUserByNickname("test")).thenReturn(Optional.of(userDTO));
+        assertEquals("test", userNotFoundCache.find("test", userQueryService::findPublicUserByNickname).get().getNickname());
+    }
+
+    @Test
+    public void should_return_list_of_users_filtered_by_parameter() throws Exception {
         var userFilter = UserFilter.builder().country("UK")
                 .email("test@test.com")
                 .firstName("first name")
@@ -89,7 +139,7 @@ public class UserServiceUnitTest {
                 .nickname("nick name")
                 .build();
 
-        var user = User.builder().country("UK")
+        var user = UserDTO.builder().country("UK")
                 .email("test@test.com")
                 .firstName("first name")
                 .lastName("last name")
@@ -109,7 +159,7 @@ public class UserServiceUnitTest {
     }
 
     @Test
-    public void should_save_user_and_return_nickname_of_saved_user() throws NicknameAlreadyExistException {
+    public void should_save_user_and_return_nickname_of_saved_user() throws Exception {
         var userDTO = UserDTO.builder().country("UK")
                 .email("test@test.com")
                 .firstName("test")
@@ -127,11 +177,11 @@ public class UserServiceUnitTest {
 
         when(userRepository.save(user)).thenReturn(user);
 
-        when(modelMapper.map(userDTO, User.class)).thenReturn(user);
+        when(userMapper.toUser(userDTO)).thenReturn(user);
 
         String nickname = userService.saveUser(userDTO);
 
-        verify(passwordEncoder, times(1)).encode("newpassword");
+        verify(passwordHashingService, times(1)).encode("newpassword");
 
         assertEquals("test", nickname);
     }
@@ -153,43 +203,42 @@ public class UserServiceUnitTest {
                 .nickname("test")
                 .build();
 
-        when(userRepository.findByNickname("test")).thenReturn(Optional.of(user));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(userRepository.save(user)).thenThrow(new DuplicateKeyException(
+                "E11000 duplicate key error collection: test.users index: nickname dup key: { nickname: \"test\" }"));
 
-        Exception exception = assertThrows(NicknameAlreadyExistException.class, () -> {
-            userService.saveUser(userDTO);
-            verify(passwordEncoder, never()).encode("newpassword");
-            verify(modelMapper, never()).map(userDTO, User.class);
-        });
+        Exception exception = assertThrows(NicknameAlreadyExistException.class, () -> userService.saveUser(userDTO));
 
         assertEquals("user with nick name test already exist!", exception.getMessage());
+        verify(userRepository, never()).findByNickname(anyString());
+        verify(userCache, never()).put(any());
     }
 
     @Test
-    public void should_delete_an_user_if_user_exists() {
-        var user = User.builder().country("UK")
-                .id(new ObjectId("507f191e810c19729de860ea"))
-                .email("test@test.com")
-                .firstName("test")
-                .lastName("unit")
-                .nickname("test")
-                .build();
+    public void should_not_report_nick_name_conflict_when_saving_a_user_with_existing_email() {
+        var userDTO = UserDTO.builder().nickname("test").email("test@test.com").password("newpassword").build();
+        var user = User.builder().nickname("test").email("test@test.com").build();
 
-        when(userRepository.findByNickname("test")).thenReturn(Optional.of(user));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(userRepository.save(user)).thenThrow(new DuplicateKeyException(
+                "E11000 duplicate key error collection: test.users index: email dup key: { email: \"test@test.com\" }"));
 
-        userService.deleteUser("test");
-
-        verify(userRepository, times(1)).deleteById(new ObjectId("507f191e810c19729de860ea"));
+        assertThrows(DuplicateKeyException.class, () -> userService.saveUser(userDTO));
     }
 
     @Test
-    public void should_not_call_repository_to_delete_when_user_not_exist() {
+    public void should_delete_an_user_by_nickname_in_a_single_call() {
+        when(userRepository.deleteByNickname("test")).thenReturn(1L);
+
         userService.deleteUser("test");
 
-        verify(userRepository, never()).deleteById(any(ObjectId.class));
+        verify(userRepository, times(1)).deleteByNickname("test");
+        verify(userRepository, never()).findByNickname(anyString());
+        verify(userCache, times(1)).invalidate("test");
     }
 
     @Test
-    public void should_update_user_and_notify_if_user_already_exist() throws JsonProcessingException {
+    public void should_update_user_and_notify_if_user_already_exist() throws Exception {
         var userDTO = UserDTO.builder().country("UK")
                 .email("test@test.com")
                 .firstName("test")
@@ -199,26 +248,101 @@ public class UserServiceUnitTest {
                 .build();
 
         var user = User.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("unit")
+                .nickname("testnewnick")
+                .password("encoded")
+                .build();
+
+        var savedUser = User.builder().country("UK")
                 .id(new ObjectId("507f191e810c19729de860ea"))
                 .email("test@test.com")
                 .firstName("test")
                 .lastName("unit")
-                .nickname("test")
+                .nickname("testnewnick")
+                .version(2L)
                 .build();
 
-        when(userRepository.findByNickname("test")).thenReturn(Optional.of(user));
+        var publicUserDTO = UserDTO.builder().nickname("testnewnick").version(2L).build();
+
+        when(userCache.getIfPresent("test")).thenReturn(Optional.of(UserDTO.builder().country("UK")
+                .email("test@test.com")
+                .firstName("test")
+                .lastName("old")
+                .nickname("test")
+                .version(1L)
+                .build()));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(savedUser);
+        when(userMapper.toPublicUserDTO(savedUser)).thenReturn(publicUserDTO);
 
-        when(modelMapper.map(userDTO, User.class)).thenReturn(user);
+        userService.updateUser("test", userDTO);
+
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations, times(1)).findAndModify(queryCaptor.capture(), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals("test", queryCaptor.getValue().getQueryObject().get("nickname"));
+        assertEquals(1L, queryCaptor.getValue().getQueryObject().get("version"));
+        var update = updateCaptor.getValue().getUpdateObject();
+        assertEquals("testnewnick", update.get("$set", Document.class).get("nickname"));
+        assertEquals("encoded", update.get("$set", Document.class).get("password"));
+        assertEquals(1, update.get("$inc", Document.class).get("version"));
+        verify(passwordHashingService, times(1)).encode("newpassword");
+        verify(userRepository, never()).findByNickname(anyString());
+        verify(userQueryService, never()).findPublicUserByNickname(anyString());
+        verify(userCache, times(1)).invalidate("test");
+        verify(userCache, times(1)).put(publicUserDTO);
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"),
+                eq(UserDTO.builder().nickname("testnewnick").lastName("unit").build()));
+    }
+
+    @Test
+    public void should_read_an_uncached_user_and_retry_the_update_when_another_write_got_in_first() throws Exception {
+        var userDTO = UserDTO.builder().nickname("test").country("BR").password("newpassword").build();
+        var user = User.builder().nickname("test").country("BR").password("encoded").build();
+        var savedUser = User.builder().nickname("test").country("BR").version(3L).build();
+
+        when(passwordHashingService.encode("newpassword")).thenReturn("encoded");
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(userQueryService.findPublicUserByNickname("test"))
+                .thenReturn(Optional.of(UserDTO.builder().nickname("test").country("UK").version(1L).build()))
+                .thenReturn(Optional.of(UserDTO.builder().nickname("test").country("BR").version(2L).build()));
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(null)
+                .thenReturn(savedUser);
 
         userService.updateUser("test", userDTO);
 
-        verify(passwordEncoder, times(1)).encode("newpassword");
-        verify(userRepository, times(1)).save(user);
-        verify(userNotifyService, times(1)).publish(userDTO);
+        var queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(mongoOperations, times(2)).findAndModify(queryCaptor.capture(), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(1L, queryCaptor.getAllValues().get(0).getQueryObject().get("version"));
+        assertEquals(2L, queryCaptor.getAllValues().get(1).getQueryObject().get("version"));
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(UserDTO.builder().country("BR").build()));
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(new UserDTO()));
     }
 
     @Test
-    public void should_not_notify_nor_update_if_user_not_exist() throws JsonProcessingException {
+    public void should_unset_fields_missing_from_the_replacement_user() throws Exception {
+        var userDTO = UserDTO.builder().country("UK").email("test@test.com").password("newpassword").build();
+        var user = User.builder().country("UK").email("test@test.com").password("encoded").build();
+
+        when(userCache.getIfPresent("test")).thenReturn(Optional.of(UserDTO.builder().nickname("test").version(1L).build()));
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+
+        userService.updateUser("test", userDTO);
+
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations).findAndModify(any(Query.class), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        var unset = updateCaptor.getValue().getUpdateObject().get("$unset", Document.class);
+        assertTrue(unset.containsKey("nickname"));
+        assertTrue(unset.containsKey("firstName"));
+        assertTrue(unset.containsKey("lastName"));
+    }
+
+    @Test
+    public void should_not_write_but_remember_the_miss_if_user_not_exist() throws Exception {
         var userDTO = UserDTO.builder().country("UK")
                 .email("test@test.com")
                 .firstName("test")
@@ -227,10 +351,120 @@ public class UserServiceUnitTest {
                 .password("newpassword")
                 .build();
 
+        when(userMapper.toUser(userDTO)).thenReturn(User.builder().nickname("testnewnick").build());
+
+        userService.updateUser("test", userDTO);
+
+        verify(userQueryService, times(1)).findPublicUserByNickname("test");
+        verify(mongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(userCache, never()).put(any());
+        assertTrue(userNotFoundCache.isMissing("test"));
+    }
+
+    @Test
+    public void should_not_hash_nor_write_when_updating_a_nick_name_known_to_be_missing() throws Exception {
+        var userDTO = UserDTO.builder().nickname("testnewnick").password("newpassword").build();
+        userNotFoundCache.find("test", nickname -> Optional.empty());
+
         userService.updateUser("test", userDTO);
 
-        verify(passwordEncoder, never()).encode(anyString());
-        verify(userRepository, never()).save(any(User.class));
-        verify(userNotifyService, never()).publish(any(UserDTO.class));
+        verify(passwordHashingService, never()).encode(anyString());
+        verify(mongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(userCache, never()).put(any());
+    }
+
+    @Test
+    public void should_set_only_patched_fields_without_hashing_when_password_is_absent() throws Exception {
+        var savedUser = User.builder().nickname("test").country("BR").version(3L).build();
+        var publicUserDTO = UserDTO.builder().nickname("test").country("BR").version(3L).build();
+
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenReturn(savedUser);
+        when(userMapper.toPublicUserDTO(savedUser)).thenReturn(publicUserDTO);
+
+        userService.patchUser("test", UserPatchDTO.builder().country("BR").build());
+
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations).findAndModify(any(Query.class), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        var update = updateCaptor.getValue().getUpdateObject();
+        assertEquals(new Document("country", "BR"), update.get("$set", Document.class));
+        assertEquals(1, update.get("$inc", Document.class).get("version"));
+        assertFalse(update.containsKey("$unset"));
+        verify(passwordHashingService, never()).encode(anyString());
+        verify(userCache, times(1)).put(publicUserDTO);
+        verify(userOutboxService, times(1)).queue(any(Update.class), eq("test"), eq(UserDTO.builder().country("BR").build()));
+    }
+
+    @Test
+    public void should_hash_password_when_patch_contains_one() throws Exception {
+        when(passwordHashingService.encode("newpassword")).thenReturn("encoded");
+
+        userService.patchUser("test", UserPatchDTO.builder().password("newpassword").build());
+
+        var updateCaptor = ArgumentCaptor.forClass(Update.class);
+        verify(mongoOperations).findAndModify(any(Query.class), updateCaptor.capture(), any(FindAndModifyOptions.class), eq(User.class));
+        assertEquals(new Document("password", "encoded"), updateCaptor.getValue().getUpdateObject().get("$set", Document.class));
+    }
+
+    @Test
+    public void should_not_hash_a_patched_password_for_a_nick_name_known_to_be_missing() throws Exception {
+        userNotFoundCache.find("unknown", nickname -> Optional.empty());
+
+        userService.patchUser("unknown", UserPatchDTO.builder().password("newpassword").build());
+
+        verify(passwordHashingService, never()).encode(anyString());
+        verify(mongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+    }
+
+    @Test
+    public void should_not_write_when_patch_is_empty() throws Exception {
+        userService.patchUser("test", new UserPatchDTO());
+
+        verify(mongoOperations, never()).findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class));
+        verify(userOutboxService, never()).queue(any(Update.class), anyString(), any(UserDTO.class));
+    }
+
+    @Test
+    public void should_throw_nick_name_already_exist_when_patching_to_an_existing_nick() {
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenThrow(new DuplicateKeyException(
+                        "E11000 duplicate key error collection: test.users index: nickname dup key: { nickname: \"taken\" }"));
+
+        var exception = assertThrows(NicknameAlreadyExistException.class,
+                () -> userService.patchUser("test", UserPatchDTO.builder().nickname("taken").build()));
+
+        assertEquals("user with nick name taken already exist!", exception.getMessage());
+    }
+
+    @Test
+    public void should_tell_the_clashing_index_from_the_key_pattern_of_the_error() {
+        var nicknameClash = new BsonDocument("ok", new BsonInt32(0)).append("code", new BsonInt32(11000))
+                .append("errmsg", new BsonString("E11000 duplicate key error collection: test.users index: custom_name dup key"))
+                .append("keyPattern", new BsonDocument("nickname", new BsonInt32(1)));
+        var emailClash = nicknameClash.clone().append("keyPattern", new BsonDocument("email", new BsonInt32(1)));
+
+        when(mongoOperations.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(User.class)))
+                .thenThrow(new DuplicateKeyException("duplicate key", new MongoCommandException(nicknameClash, new ServerAddress())))
+                .thenThrow(new DuplicateKeyException("index: nickname dup key", new MongoCommandException(emailClash, new ServerAddress())));
+
+        assertThrows(NicknameAlreadyExistException.class,
+                () -> userService.patchUser("test", UserPatchDTO.builder().nickname("taken").build()));
+        assertThrows(DuplicateKeyException.class,
+                () -> userService.patchUser("test", UserPatchDTO.builder().email("taken@test.com").build()));
+    }
+
+    @Test
+    public void should_tell_the_clashing_index_from_a_write_error_without_key_pattern() {
+        var userDTO = UserDTO.builder().nickname("test").email("test@test.com").password("newpassword").build();
+        var user = User.builder().nickname("test").email("test@test.com").build();
+        var writeError = new WriteError(11000,
+                "E11000 duplicate key error collection: test.users index: nickname_history dup key: { nickname_history: \"test\" }",
+                new BsonDocument());
+
+        when(userMapper.toUser(userDTO)).thenReturn(user);
+        when(userRepository.save(user)).thenThrow(new DuplicateKeyException("index: nickname dup key",
+                new MongoWriteException(writeError, new ServerAddress())));
+
+        assertThrows(DuplicateKeyException.class, () -> userService.saveUser(userDTO, "encoded"));
     }
 }